@@ -1,11 +1,27 @@
 package com.neptunedreams.framework.data;
 
-import java.util.HashMap;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import com.google.common.base.Suppliers;
 import org.checkerframework.checker.initialization.qual.UnderInitialization;
 
 /**
+ * Holds the Daos, by entity class. Daos may be registered lazily, with a Supplier, so none of them get built until
+ * they're needed, or until {@link #warmUp()} builds and prepares them all in parallel on background threads. Looking
+ * up a Dao goes through a {@link ClassValue}, so after the first lookup it's a constant-time read with no locking.
  * <p>Created by IntelliJ IDEA.
  * <p>Date: 11/12/17
  * <p>Time: 11:50 AM
@@ -13,16 +29,101 @@ import org.checkerframework.checker.initialization.qual.UnderInitialization;
  * @author Miguel Mu\u00f1oz
  */
 public class AbstractDaoFactory {
-  private final Map<Class<?>, Dao<?, ?, ?>> daoMap = new HashMap<>();
+  private final Map<Class<?>, Supplier<? extends Dao<?, ?, ?>>> supplierMap = new ConcurrentHashMap<>();
+  private final ClassValue<Dao<?, ?, ?>> daoCache = new ClassValue<Dao<?, ?, ?>>() {
+    @Override
+    protected Dao<?, ?, ?> computeValue(Class<?> type) {
+      // Throwing here leaves nothing in the cache, so a Dao registered later will still be found.
+      Supplier<? extends Dao<?, ?, ?>> supplier
+          = Objects.requireNonNull(supplierMap.get(type), () -> String.format("No Dao for %s", type));
+      return supplier.get();
+    }
+  };
 
   @SuppressWarnings("JavaDoc")
   protected final <T, PK, F extends DBField> void addDao(@UnderInitialization AbstractDaoFactory this, Class<T> tClass, Dao<T, PK, F> tDao) {
-    daoMap.put(tClass, tDao);
+    supplierMap.put(tClass, () -> tDao);
+    daoCache.remove(tClass);
+  }
+
+  /**
+   * Register a Dao that won't be built until it's first needed, or until the factory is warmed up.
+   * @param tClass The entity class
+   * @param daoSupplier Builds the Dao. This gets called at most once.
+   * @param <T> The entity type
+   * @param <PK> The primary key type
+   * @param <F> The field type
+   */
+  protected final <T, PK, F extends DBField> void addDao(
+      @UnderInitialization AbstractDaoFactory this,
+      Class<T> tClass,
+      Supplier<? extends Dao<T, PK, F>> daoSupplier
+  ) {
+    // ClassValue may compute a value more than once when threads race, so memoize to build only one Dao.
+    supplierMap.put(tClass, Suppliers.memoize(daoSupplier::get)::get);
+    daoCache.remove(tClass);
   }
 
   @SuppressWarnings("JavaDoc")
   public <T, PK, F extends DBField> Dao<T, PK, F> getDao(Class<T> tClass) {
     //noinspection unchecked
-    return Objects.requireNonNull((Dao<T, PK, F>) daoMap.get(tClass));
-  } 
+    return (Dao<T, PK, F>) daoCache.get(tClass);
+  }
+
+  /**
+   * @return The entity classes of all the registered Daos
+   */
+  public Set<Class<?>> getRegisteredClasses() {
+    return Collections.unmodifiableSet(supplierMap.keySet());
+  }
+
+  /**
+   * Build and warm up every registered Dao in parallel, each on its own background thread. The threads are
+   * discarded when they're done. The application may show its window while this runs, since any Dao that's needed
+   * sooner just gets built on the thread that needs it.
+   * @return A future that completes when every Dao is warmed up, or completes exceptionally with the first failure.
+   * @see Dao#warmUp()
+   */
+  public CompletableFuture<Void> warmUp() {
+    int count = Math.max(supplierMap.size(), 1);
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(count, r -> {
+      Thread thread = new Thread(r, "Dao warm-up " + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletableFuture<Void> future = warmUp(executor);
+    future.whenComplete((v, t) -> executor.shutdown());
+    return future;
+  }
+
+  /**
+   * Build and warm up every registered Dao in parallel, using the specified executor.
+   * @param executor The executor. It should not be the event dispatch thread.
+   * @return A future that completes when every Dao is warmed up, or completes exceptionally with the first failure.
+   * @see Dao#warmUp()
+   */
+  public CompletableFuture<Void> warmUp(Executor executor) {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (Class<?> entityClass : supplierMap.keySet()) {
+      futures.add(CompletableFuture.runAsync(() -> {
+        try {
+          warmUp(entityClass);
+        } catch (SQLException e) {
+          throw new CompletionException(e);
+        }
+      }, executor));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Build and warm up one Dao, on the calling thread.
+   * @param entityClass The entity class of a registered Dao
+   * @throws SQLException If the Dao can't be warmed up
+   * @see Dao#warmUp()
+   */
+  public void warmUp(Class<?> entityClass) throws SQLException {
+    daoCache.get(entityClass).warmUp();
+  }
 }
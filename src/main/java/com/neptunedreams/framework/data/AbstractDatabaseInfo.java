@@ -1,6 +1,13 @@
 package com.neptunedreams.framework.data;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -17,10 +24,18 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  *
  * @author Miguel Mu\u00f1oz
  */
-@SuppressWarnings("RedundantSuppression")
+@SuppressWarnings({"RedundantSuppression", "HardCodedStringLiteral"})
 public abstract class AbstractDatabaseInfo implements DatabaseInfo {
+  private static final String CHANGE_STAMP_FILE = "changeStamp";
+  private static final long UNREAD = -1L;
+
   private @Nullable ConnectionSource connectionSource;
   private final String homeDirectory;
+  private final Object changeStampLock = new Object();
+  private long changeStamp = UNREAD; // guarded by changeStampLock
+  private long savedStamp = UNREAD; // The stamp in the file. guarded by changeStampLock
+  // True if the saved stamp may have been handed out, in this run or an earlier one. guarded by changeStampLock
+  private boolean savedStampIssued = true;
 
   /**
    * Construct a new AbstractDatabaseInfo using the specified directory. The directory may be an empty string, but
@@ -43,6 +58,33 @@ public abstract class AbstractDatabaseInfo implements DatabaseInfo {
     }
   }
 
+  /**
+   * Returns the Dao built by {@link #createDao(Class, ConnectionSource)}, wrapped so each successful insert, update or
+   * delete {@linkplain #markChanged() marks} the data as changed.
+   * @param entityClass The entity class
+   * @param source The connection source
+   * @param <T> The entity type
+   * @param <PK> The primary key type
+   * @param <F> The field type
+   * @return The Dao
+   */
+  @Override
+  public final <T, PK, F extends DBField> Dao<T, PK, F> getDao(Class<T> entityClass, ConnectionSource source) {
+    Dao<T, PK, F> dao = createDao(entityClass, source);
+    return homeDirectory.isEmpty() ? dao : trackChanges(dao);
+  }
+
+  /**
+   * Build the Dao for an entity class. This is called by {@link #getDao(Class, ConnectionSource)}.
+   * @param entityClass The entity class
+   * @param source The connection source
+   * @param <T> The entity type
+   * @param <PK> The primary key type
+   * @param <F> The field type
+   * @return The Dao
+   */
+  protected abstract <T, PK, F extends DBField> Dao<T, PK, F> createDao(Class<T> entityClass, ConnectionSource source);
+
   @Override
   public ConnectionSource getConnectionSource() {
     if (connectionSource == null) {
@@ -56,20 +98,52 @@ public abstract class AbstractDatabaseInfo implements DatabaseInfo {
 //    //noinspection UseOfSystemOutOrSystemErr,HardCodedStringLiteral
 //    System.out.printf("Connection URL: %s%n", connectionUrl);
 
+    if (isResilient()) {
+      //noinspection CallToDriverManagerGetConnection
+      return new ResilientConnectionSource(() -> DriverManager.getConnection(connectionUrl));
+    }
     //noinspection CallToDriverManagerGetConnection,JDBCResourceOpenedButNotSafelyClosed
     Connection connection = DriverManager.getConnection(connectionUrl);
     return () -> connection;
   }
 
+  /**
+   * Returns true if the connection should be checked in the background, and replaced if it breaks. This is useful
+   * for network databases and embedded databases that may lose their file lock. The default returns false, which
+   * hands out the same connection forever. Subclasses that override this should call {@code super.shutdown()} from
+   * their {@code shutdown()} method, to stop the health checks.
+   * @return true to use a {@link ResilientConnectionSource}, false otherwise
+   */
+  protected boolean isResilient() {
+    return false;
+  }
+
   @Override
   public final String getHomeDir() {
     return homeDirectory;
   }
 
-  @SuppressWarnings({"JavaDoc", "HardCodedStringLiteral"})
+  /**
+   * Opens the connection, unless it's already open.
+   * @throws SQLException If the connection can't be opened
+   */
+  @SuppressWarnings("HardCodedStringLiteral")
   @EnsuresNonNull("connectionSource")
   protected void initialize() throws SQLException {
-    connectionSource = connect();
+    if (connectionSource == null) {
+      connectionSource = connect();
+    }
+  }
+
+  /**
+   * Opens the connection with {@link #initialize()}. Subclasses that override this to do more work should call
+   * {@code super.init()}.
+   * @throws SQLException If the connection can't be opened
+   * @throws IOException Never, but subclasses may throw it
+   */
+  @Override
+  public void init() throws IOException, SQLException {
+    initialize();
   }
 
   @SuppressWarnings("HardCodedStringLiteral")
@@ -93,7 +167,130 @@ public abstract class AbstractDatabaseInfo implements DatabaseInfo {
 //    String connectionUrl = String.format("jdbc:derby:%s:jobs", dataDir.getAbsolutePath());
   }
 
-  @SuppressWarnings("NoopMethodInAbstractClass")
+  /**
+   * Returns a counter that's moved on each time the data is {@linkplain #markChanged() changed}. The counter is kept
+   * in a small file in the home directory, so it survives a restart. It starts from the current time when the file
+   * is first created, or if it's lost, so an old snapshot won't match it. Returns zero for an in-memory database, or
+   * if the counter couldn't be saved.
+   * <p>
+   * The counter is moved on in memory. It's saved when it's read here, on the first change after that, and on
+   * {@link #shutdown()}. So the file never holds a stamp that was handed out before the data changed, even after a
+   * crash, and most writes don't touch the file.
+   * @return The change stamp, or zero if it's unknown
+   */
+  @Override
+  public long getChangeStamp() {
+    if (homeDirectory.isEmpty()) {
+      return 0L;
+    }
+    synchronized (changeStampLock) {
+      loadChangeStamp();
+      if ((changeStamp != 0L) && (changeStamp != savedStamp)) {
+        writeChangeStamp(changeStamp);
+      }
+      savedStampIssued = true;
+      return changeStamp;
+    }
+  }
+
+  /**
+   * Move the change stamp on. The Daos from {@link #getDao(Class, ConnectionSource)} call this after every write.
+   * Anything else that changes the data, such as a direct SQL statement, should call it too.
+   */
   @Override
-  public void shutdown() { }
+  public void markChanged() {
+    if (homeDirectory.isEmpty()) {
+      return;
+    }
+    synchronized (changeStampLock) {
+      loadChangeStamp();
+      if (changeStamp != 0L) {
+        ++changeStamp;
+        if (savedStampIssued) {
+          // Someone may hold the saved stamp, so it must not survive a crash.
+          writeChangeStamp(changeStamp);
+          savedStampIssued = false;
+        }
+      }
+    }
+  }
+
+  private void loadChangeStamp() {
+    if (changeStamp == UNREAD) {
+      changeStamp = readChangeStamp();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T, PK, F extends DBField> Dao<T, PK, F> trackChanges(Dao<T, PK, F> dao) {
+    return (Dao<T, PK, F>) Proxy.newProxyInstance(
+        Dao.class.getClassLoader(),
+        new Class<?>[]{Dao.class},
+        (proxy, method, arguments) -> {
+          final Object result;
+          try {
+            result = method.invoke(dao, arguments);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+          String name = method.getName();
+          if (name.startsWith("insert") || name.startsWith("update") || name.startsWith("delete")) {
+            markChanged();
+          }
+          return result;
+        }
+    );
+  }
+
+  private Path getChangeStampPath() {
+    return Paths.get(homeDirectory, CHANGE_STAMP_FILE);
+  }
+
+  private long readChangeStamp() {
+    try {
+      byte[] bytes = Files.readAllBytes(getChangeStampPath());
+      if (bytes.length == Long.BYTES) {
+        long stamp = ByteBuffer.wrap(bytes).getLong();
+        if (stamp > 0L) {
+          savedStamp = stamp;
+          return stamp;
+        }
+      }
+    } catch (IOException ignored) {
+      // A missing or damaged file gets a new stamp.
+    }
+    writeChangeStamp(System.currentTimeMillis());
+    return changeStamp;
+  }
+
+  /**
+   * Save the stamp. If it can't be saved, the stamp becomes zero until the application restarts, so no snapshot
+   * written meanwhile can be mistaken for a current one.
+   */
+  private void writeChangeStamp(long stamp) {
+    try {
+      Files.write(getChangeStampPath(), ByteBuffer.allocate(Long.BYTES).putLong(stamp).array());
+      changeStamp = stamp;
+      savedStamp = stamp;
+    } catch (IOException e) {
+      //noinspection UseOfSystemOutOrSystemErr
+      System.err.printf("Can't save the change stamp: %s%n", e);
+      changeStamp = 0L;
+    }
+  }
+
+  /**
+   * Saves the change stamp, and closes the connection source if it's a {@link ResilientConnectionSource}.
+   */
+  @Override
+  public void shutdown() {
+    synchronized (changeStampLock) {
+      if ((changeStamp != UNREAD) && (changeStamp != 0L) && (changeStamp != savedStamp)) {
+        writeChangeStamp(changeStamp);
+      }
+    }
+    if (connectionSource instanceof ResilientConnectionSource) {
+      ((ResilientConnectionSource) connectionSource).close();
+    }
+  }
 }
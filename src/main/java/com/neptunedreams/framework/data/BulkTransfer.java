@@ -0,0 +1,795 @@
+package com.neptunedreams.framework.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Streams records between a Dao or a ResultSet and a file. This is intended for backups and migrations of large
+ * tables, so memory use is bounded: Records are encoded through a fixed-size direct buffer and written to a
+ * FileChannel as they arrive, and on import, a reader Thread decodes records into a bounded queue while the calling
+ * Thread inserts them into the Dao, committing after each batch.
+ * <p>
+ * Two formats are supported. The binary format starts with a header holding a magic number, a version and the
+ * column names. Each record follows as a four-byte length, then each value as a variable-length length (zero for
+ * null, otherwise the length + 1), followed by its UTF-8 bytes. The CSV format follows RFC 4180, with a header row
+ * of column names. In CSV, an empty unquoted value is read as null, and an empty String is written as {@code ""}.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 11:12 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public enum BulkTransfer {
+  ;
+
+  private static final int MAGIC = 0x54414E47; // "TANG"
+  private static final short VERSION = 1;
+  private static final int MIN_HEADER_SIZE = Integer.BYTES + Short.BYTES + 1 + Integer.BYTES;
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final int PROGRESS_INTERVAL = 1000;
+  private static final Object END_OF_DATA = new Object();
+
+  /**
+   * The file format.
+   */
+  public enum Format {
+    /**
+     * Compact, length-prefixed binary format
+     */
+    BINARY,
+    /**
+     * Comma-separated values, with a header row
+     */
+    CSV
+  }
+
+  /**
+   * Receives progress reports during a transfer.
+   */
+  @FunctionalInterface
+  public interface Progress {
+    /**
+     * Reports progress so far. This is called periodically, and once more when the transfer is done.
+     * @param records The number of records transferred so far
+     * @param bytes The number of bytes written or read so far
+     */
+    void update(long records, long bytes);
+  }
+
+  /**
+   * Export every record in the Dao to a file. The Dao's {@code getAll()} method decides how much of the table gets
+   * held in memory at once.
+   * @param dao The Dao
+   * @param codec Converts each record into a row of values
+   * @param path The file to write
+   * @param format The file format
+   * @param progress Optional progress listener
+   * @param <E> The record type
+   * @return The number of records written
+   * @throws IOException If the file can't be written
+   * @throws SQLException If the records can't be read
+   */
+  public static <E> long exportAll(Dao<E, ?, ?> dao, RecordCodec<E> codec, Path path, Format format,
+                                   @Nullable Progress progress) throws IOException, SQLException {
+    return exportRecords(dao.getAll(null), codec, path, format, progress);
+  }
+
+  /**
+   * Export records to a file.
+   * @param records The records to export
+   * @param codec Converts each record into a row of values
+   * @param path The file to write
+   * @param format The file format
+   * @param progress Optional progress listener
+   * @param <E> The record type
+   * @return The number of records written
+   * @throws IOException If the file can't be written
+   */
+  public static <E> long exportRecords(Iterable<? extends E> records, RecordCodec<E> codec, Path path, Format format,
+                                       @Nullable Progress progress) throws IOException {
+    String[] columns = codec.getColumnNames();
+    @Nullable String[] row = new String[columns.length];
+    try (RowWriter writer = openWriter(path, format, columns)) {
+      long count = 0;
+      for (E record : records) {
+        codec.flatten(record, row);
+        writer.write(row);
+        count++;
+        reportPeriodically(progress, count, writer);
+      }
+      writer.flush();
+      report(progress, count, writer.getBytes());
+      return count;
+    }
+  }
+
+  /**
+   * Export a ResultSet to a file, one row at a time, without going through any Dao or record class. This is the
+   * fastest way to back up a large table, since only one row is in memory at a time. Column values are read with
+   * {@code getString()}.
+   * @param resultSet The ResultSet, positioned before the first row
+   * @param path The file to write
+   * @param format The file format
+   * @param progress Optional progress listener
+   * @return The number of rows written
+   * @throws IOException If the file can't be written
+   * @throws SQLException If the rows can't be read
+   */
+  public static long exportResultSet(ResultSet resultSet, Path path, Format format, @Nullable Progress progress)
+      throws IOException, SQLException {
+    ResultSetMetaData metaData = resultSet.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    String[] columns = new String[columnCount];
+    for (int i = 0; i < columnCount; ++i) {
+      columns[i] = metaData.getColumnName(i + 1);
+    }
+    @Nullable String[] row = new String[columnCount];
+    try (RowWriter writer = openWriter(path, format, columns)) {
+      long count = 0;
+      while (resultSet.next()) {
+        for (int i = 0; i < columnCount; ++i) {
+          row[i] = resultSet.getString(i + 1);
+        }
+        writer.write(row);
+        count++;
+        reportPeriodically(progress, count, writer);
+      }
+      writer.flush();
+      report(progress, count, writer.getBytes());
+      return count;
+    }
+  }
+
+  /**
+   * Import records from a file into a Dao. Records are decoded on a separate Thread, and handed to the calling Thread
+   * through a bounded queue, so the whole file is never in memory. The calling Thread inserts them a batch at a time,
+   * with {@link Dao#insertAll(Collection)}. If a ConnectionSource is provided, auto-commit is turned off for the
+   * duration of the import, and the connection is committed after each batch. If the import fails, the current batch
+   * is rolled back. The columns in the file must match the codec's columns.
+   * @param path The file to read
+   * @param codec Builds the records from each row of values
+   * @param dao The Dao to receive the records, which get added with {@code insertAll()}
+   * @param format The file format
+   * @param batchSize The number of records to insert at once, between commits and progress reports
+   * @param commitSource The source of the Dao's connection, to commit batches, or null to leave commits to the Dao
+   * @param progress Optional progress listener
+   * @param <E> The record type
+   * @return The number of records imported
+   * @throws IOException If the file can't be read, or is not in the specified format
+   * @throws SQLException If a record can't be inserted
+   */
+  @SuppressWarnings({"OverlyLongMethod", "unchecked"})
+  public static <E> long importRecords(Path path, RecordCodec<E> codec, Dao<E, ?, ?> dao, Format format,
+                                       int batchSize, @Nullable ConnectionSource commitSource,
+                                       @Nullable Progress progress) throws IOException, SQLException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException(String.format("batchSize: %d", batchSize));
+    }
+    BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    AtomicReference<@Nullable Throwable> failure = new AtomicReference<>(null);
+    AtomicLong bytesRead = new AtomicLong(0L);
+    Thread readerThread = new Thread(() -> readLoop(path, format, codec, queue, failure, bytesRead),
+        "BulkTransfer Reader Thread");
+    readerThread.setDaemon(true);
+    readerThread.start();
+
+    @Nullable Connection connection = (commitSource == null) ? null : commitSource.getConnection();
+    boolean priorAutoCommit = (connection == null) || connection.getAutoCommit();
+    long count = 0;
+    @Nullable Throwable importFailure = null;
+    try {
+      if (connection != null) {
+        connection.setAutoCommit(false);
+      }
+      List<E> batch = new ArrayList<>(batchSize);
+      while (true) {
+        Object item = queue.take();
+        if (item == END_OF_DATA) {
+          break;
+        }
+        batch.add((E) item);
+        if (batch.size() == batchSize) {
+          dao.insertAll(batch);
+          count += batch.size();
+          batch.clear();
+          if (connection != null) {
+            connection.commit();
+          }
+          report(progress, count, bytesRead.get());
+        }
+      }
+      Throwable readFailure = failure.get();
+      if (readFailure != null) {
+        throw readFailure;
+      }
+      if (!batch.isEmpty()) {
+        dao.insertAll(batch);
+        count += batch.size();
+      }
+      if (connection != null) {
+        connection.commit();
+      }
+      report(progress, count, bytesRead.get());
+      return count;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      IOException interrupted = new IOException("Import interrupted", e);
+      importFailure = interrupted;
+      throw interrupted;
+    } catch (IOException | SQLException | RuntimeException | Error e) {
+      importFailure = e;
+      throw e;
+    } catch (Throwable t) {
+      IOException wrapped = new IOException(t);
+      importFailure = wrapped;
+      throw wrapped;
+    } finally {
+      readerThread.interrupt();
+      if (connection != null) {
+        restoreConnection(connection, priorAutoCommit, importFailure);
+      }
+    }
+  }
+
+  /**
+   * Roll back a failed import, and restore the connection's auto-commit setting. If the import failed, any exception
+   * thrown here is added to the import's exception as a suppressed exception, so it doesn't hide the real error.
+   * @param connection The connection
+   * @param priorAutoCommit The auto-commit setting from before the import
+   * @param importFailure The exception that ended the import, or null if it succeeded
+   * @throws SQLException If the import succeeded, but auto-commit couldn't be restored
+   */
+  private static void restoreConnection(Connection connection, boolean priorAutoCommit,
+                                        @Nullable Throwable importFailure) throws SQLException {
+    if (importFailure != null) {
+      try {
+        connection.rollback();
+      } catch (SQLException | RuntimeException e) {
+        importFailure.addSuppressed(e);
+      }
+    }
+    try {
+      connection.setAutoCommit(priorAutoCommit);
+    } catch (SQLException | RuntimeException e) {
+      if (importFailure == null) {
+        throw e;
+      }
+      importFailure.addSuppressed(e);
+    }
+  }
+
+  private static <E> void readLoop(Path path, Format format, RecordCodec<E> codec, BlockingQueue<Object> queue,
+                                   AtomicReference<@Nullable Throwable> failure, AtomicLong bytesRead) {
+    try {
+      try (RowReader reader = openReader(path, format)) {
+        String[] columns = codec.getColumnNames();
+        String[] fileColumns = reader.getColumnNames();
+        if (columns.length != fileColumns.length) {
+          throw new IOException(String.format("File has %d columns. Expected %d", fileColumns.length, columns.length));
+        }
+        @Nullable String[] row = new String[columns.length];
+        while (reader.read(row)) {
+          queue.put(codec.restore(row));
+          bytesRead.set(reader.getBytes());
+        }
+        bytesRead.set(reader.getBytes());
+      }
+    } catch (InterruptedException e) {
+      return; // The importing thread has given up.
+    } catch (Throwable t) {
+      failure.set(t);
+    }
+    try {
+      queue.put(END_OF_DATA);
+    } catch (InterruptedException ignored) { }
+  }
+
+  private static void reportPeriodically(@Nullable Progress progress, long count, RowWriter writer) {
+    if ((progress != null) && ((count % PROGRESS_INTERVAL) == 0)) {
+      progress.update(count, writer.getBytes());
+    }
+  }
+
+  private static void report(@Nullable Progress progress, long count, long bytes) {
+    if (progress != null) {
+      progress.update(count, bytes);
+    }
+  }
+
+  private static RowWriter openWriter(Path path, Format format, String[] columns) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      return (format == Format.BINARY) ? new BinaryRowWriter(channel, columns) : new CsvRowWriter(channel, columns);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static RowReader openReader(Path path, Format format) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return (format == Format.BINARY) ? new BinaryRowReader(channel) : new CsvRowReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private interface RowWriter extends AutoCloseable {
+    void write(@Nullable String[] row) throws IOException;
+
+    void flush() throws IOException;
+
+    long getBytes();
+
+    @Override
+    void close() throws IOException;
+  }
+
+  private interface RowReader extends AutoCloseable {
+    String[] getColumnNames();
+
+    /**
+     * Reads the next row into the array.
+     * @return false if there are no more rows
+     */
+    boolean read(@Nullable String[] row) throws IOException;
+
+    long getBytes();
+
+    @Override
+    void close() throws IOException;
+  }
+
+  private static final class BinaryRowWriter implements RowWriter {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final List<byte @Nullable []> encoded = new ArrayList<>();
+
+    BinaryRowWriter(FileChannel channel, String[] columns) throws IOException {
+      this.channel = channel;
+      buffer.putInt(MAGIC);
+      buffer.putShort(VERSION);
+      putVarInt(buffer, columns.length);
+      write(columns);
+    }
+
+    @Override
+    public void write(@Nullable String[] row) throws IOException {
+      encoded.clear();
+      int length = 0;
+      for (String value : row) {
+        byte @Nullable [] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+        encoded.add(bytes);
+        int size = (bytes == null) ? 0 : (bytes.length + 1);
+        length += varIntSize(size) + ((bytes == null) ? 0 : bytes.length);
+      }
+      ByteBuffer target = buffer;
+      if ((length + Integer.BYTES) > buffer.remaining()) {
+        flush();
+        if ((length + Integer.BYTES) > buffer.capacity()) {
+          target = ByteBuffer.allocate(length + Integer.BYTES); // A single huge record. This should be rare.
+        }
+      }
+      target.putInt(length);
+      for (byte @Nullable [] bytes : encoded) {
+        if (bytes == null) {
+          putVarInt(target, 0);
+        } else {
+          putVarInt(target, bytes.length + 1);
+          target.put(bytes);
+        }
+      }
+      if (target != buffer) {
+        drain(target);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain(buffer);
+    }
+
+    private void drain(ByteBuffer source) throws IOException {
+      source.flip();
+      while (source.hasRemaining()) {
+        channel.write(source);
+      }
+      source.clear();
+    }
+
+    @Override
+    public long getBytes() {
+      try {
+        return channel.position() + buffer.position();
+      } catch (IOException e) {
+        return buffer.position();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  private static final class BinaryRowReader implements RowReader {
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private byte[] scratch = new byte[256];
+    private final String[] columnNames;
+
+    BinaryRowReader(FileChannel channel) throws IOException {
+      this.channel = channel;
+      buffer.limit(0);
+      // The header is followed by at least five bytes: The column count and the length of the column names.
+      if (!fill(MIN_HEADER_SIZE) || (buffer.getInt() != MAGIC)) {
+        throw new IOException("Not a binary transfer file");
+      }
+      short version = buffer.getShort();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported version: %d", version));
+      }
+      int columnCount = getVarInt(buffer);
+      String[] names = new String[columnCount];
+      if (!read(names)) {
+        throw new EOFException("Missing column names");
+      }
+      columnNames = names;
+    }
+
+    private long position() throws IOException {
+      return channel.position() - buffer.remaining();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+      return columnNames;
+    }
+
+    @Override
+    public boolean read(@Nullable String[] row) throws IOException {
+      if (!fill(Integer.BYTES)) {
+        return false;
+      }
+      int length = buffer.getInt();
+      if (length < 0) {
+        throw new IOException(String.format("Corrupt record length: %d", length));
+      }
+      if (!fill(length)) {
+        throw new EOFException("Truncated record");
+      }
+      final int end = buffer.position() + length;
+      for (int i = 0; i < row.length; ++i) {
+        int size = (buffer.position() < end) ? getVarInt(buffer) : -1;
+        if (size == 0) {
+          row[i] = null;
+        } else {
+          int byteCount = size - 1;
+          if ((byteCount < 0) || (byteCount > (end - buffer.position()))) {
+            throw new IOException("Corrupt record: its values overrun its length");
+          }
+          if (scratch.length < byteCount) {
+            scratch = new byte[Math.max(byteCount, scratch.length * 2)];
+          }
+          buffer.get(scratch, 0, byteCount);
+          row[i] = new String(scratch, 0, byteCount, StandardCharsets.UTF_8);
+        }
+      }
+      if (buffer.position() != end) {
+        throw new IOException(String.format("Corrupt record: %d bytes long, but its values take %d",
+            length, length - (end - buffer.position())));
+      }
+      return true;
+    }
+
+    /**
+     * Make sure the buffer holds at least the specified number of bytes, reading more from the channel as needed.
+     * @return false if the end of the file was reached with no bytes remaining.
+     */
+    private boolean fill(int count) throws IOException {
+      if (buffer.remaining() >= count) {
+        return true;
+      }
+      if (count > buffer.capacity()) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(count);
+        larger.put(buffer);
+        larger.flip();
+        buffer = larger;
+      }
+      buffer.compact();
+      while (buffer.position() < count) {
+        if (channel.read(buffer) < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      if (buffer.remaining() == 0) {
+        return false;
+      }
+      if (buffer.remaining() < count) {
+        throw new EOFException("Unexpected end of file");
+      }
+      return true;
+    }
+
+    @Override
+    public long getBytes() {
+      try {
+        return position();
+      } catch (IOException e) {
+        return 0L;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  private static final class CsvRowWriter implements RowWriter {
+    private final Writer writer;
+    private long bytes = 0L; // The UTF-8 size of everything written, including what's still buffered
+
+    CsvRowWriter(FileChannel channel, String[] columns) throws IOException {
+      writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+          BUFFER_SIZE);
+      write(columns);
+    }
+
+    @SuppressWarnings("MagicCharacter")
+    @Override
+    public void write(@Nullable String[] row) throws IOException {
+      for (int i = 0; i < row.length; ++i) {
+        if (i > 0) {
+          put(",");
+        }
+        String value = row[i];
+        if (value != null) {
+          if (value.isEmpty() || needsQuotes(value)) {
+            put("\"");
+            put(value.replace("\"", "\"\""));
+            put("\"");
+          } else {
+            put(value);
+          }
+        }
+      }
+      put("\r\n");
+    }
+
+    private void put(String text) throws IOException {
+      writer.write(text);
+      bytes += utf8Length(text);
+    }
+
+    private static int utf8Length(String text) {
+      int length = 0;
+      for (int i = 0; i < text.length(); ++i) {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+          length++;
+        } else if (c < 0x800) {
+          length += 2;
+        } else if (Character.isHighSurrogate(c)) {
+          length += 4; // The low surrogate that follows adds nothing.
+          i++;
+        } else {
+          length += 3;
+        }
+      }
+      return length;
+    }
+
+    @SuppressWarnings("MagicCharacter")
+    private static boolean needsQuotes(String value) {
+      for (int i = 0; i < value.length(); ++i) {
+        char c = value.charAt(i);
+        if ((c == ',') || (c == '"') || (c == '\r') || (c == '\n')) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writer.flush();
+    }
+
+    @Override
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+
+  private static final class CsvRowReader implements RowReader {
+    private final Reader reader;
+    private final StringBuilder value = new StringBuilder();
+    private final List<@Nullable String> values = new ArrayList<>();
+    private final String[] columnNames;
+    private long bytes = 0L; // The UTF-8 length of the characters parsed so far, not counting what's buffered
+
+    CsvRowReader(FileChannel channel) throws IOException {
+      reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE),
+          BUFFER_SIZE);
+      if (!readValues()) {
+        throw new EOFException("Missing header row");
+      }
+      String[] names = new String[values.size()];
+      for (int i = 0; i < names.length; ++i) {
+        String name = values.get(i);
+        names[i] = (name == null) ? "" : name;
+      }
+      columnNames = names;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+      return columnNames;
+    }
+
+    @Override
+    public boolean read(@Nullable String[] row) throws IOException {
+      if (!readValues()) {
+        return false;
+      }
+      if (values.size() != row.length) {
+        throw new IOException(String.format("Row has %d values. Expected %d", values.size(), row.length));
+      }
+      for (int i = 0; i < row.length; ++i) {
+        row[i] = values.get(i);
+      }
+      return true;
+    }
+
+    /**
+     * Reads a line of values into the values list.
+     * @return false if the end of the file was reached before any values
+     */
+    @SuppressWarnings({"MagicCharacter", "OverlyComplexMethod"})
+    private boolean readValues() throws IOException {
+      values.clear();
+      value.setLength(0);
+      boolean quoted = false;
+      boolean inQuotes = false;
+      int c = next();
+      if (c < 0) {
+        return false;
+      }
+      while (true) {
+        if (inQuotes) {
+          if (c < 0) {
+            throw new EOFException("Unterminated quoted value");
+          }
+          if (c == '"') {
+            reader.mark(1);
+            if (reader.read() == '"') {
+              bytes++;
+              value.append('"');
+            } else {
+              inQuotes = false;
+              reader.reset();
+            }
+          } else {
+            value.append((char) c);
+          }
+        } else if ((c == ',') || (c == '\n') || (c == '\r') || (c < 0)) {
+          values.add((quoted || (value.length() > 0)) ? value.toString() : null);
+          value.setLength(0);
+          quoted = false;
+          if (c == '\r') {
+            reader.mark(1);
+            if (reader.read() == '\n') {
+              bytes++;
+            } else {
+              reader.reset();
+            }
+          }
+          if (c != ',') {
+            return true;
+          }
+        } else if (c == '"') {
+          quoted = true;
+          inQuotes = true;
+        } else {
+          value.append((char) c);
+        }
+        c = next();
+      }
+    }
+
+    /**
+     * Read a character, and count its bytes.
+     */
+    private int next() throws IOException {
+      int c = reader.read();
+      if (c >= 0x800) {
+        // A surrogate pair is four bytes, so each half counts two.
+        bytes += Character.isSurrogate((char) c) ? 2 : 3;
+      } else if (c >= 0x80) {
+        bytes += 2;
+      } else if (c >= 0) {
+        bytes++;
+      }
+      return c;
+    }
+
+    @Override
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  private static void putVarInt(ByteBuffer buffer, int value) {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      buffer.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    buffer.put((byte) v);
+  }
+
+  private static int getVarInt(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed length");
+  }
+
+  private static int varIntSize(int value) {
+    int size = 1;
+    int v = value >>> 7;
+    while (v != 0) {
+      size++;
+      v >>>= 7;
+    }
+    return size;
+  }
+}
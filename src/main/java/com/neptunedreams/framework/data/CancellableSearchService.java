@@ -0,0 +1,307 @@
+package com.neptunedreams.framework.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Runs searches that can be cancelled in the database when a newer search replaces them. Each search runs in a
+ * <em>lane</em>, which is any object that identifies a source of searches, such as a search field. Starting a search
+ * in a lane supersedes the previous search in that lane, and so does calling {@link #cancel(Object)}. A superseded
+ * search has its statements cancelled with {@link Statement#cancel()}, so the database stops working on it right
+ * away, and it returns a superseded {@link SearchResult} instead of stale rows. A statement counts as part of the
+ * search from when it's executed until its ResultSet is closed, so reading the rows is cancelled, too.
+ * <p>
+ * This only works for statements created through the connections of {@link #getConnectionSource()}, so the Daos
+ * used for searching should be built with that source. Those statements also get a query timeout, if one was
+ * specified. Statements executed outside of a search are not affected, except for the timeout.
+ * <p>
+ * When searching with a {@link com.neptunedreams.framework.task.QueuedTask}, the previous search may still be
+ * running on a Debouncer worker thread when the user types again, so call {@link #cancel(Object)} when feeding new
+ * data to the task.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 7:40 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class CancellableSearchService {
+  private final ConnectionSource source;
+  private final int queryTimeoutSeconds;
+  private final Map<Object, Ticket> lanes = new ConcurrentHashMap<>();
+  private final ThreadLocal<@Nullable Ticket> currentTicket = new ThreadLocal<>();
+  private final ConnectionSource cancellableSource;
+  private @Nullable Connection lastConnection = null; // guarded by this
+  private @Nullable Connection lastProxy = null; // guarded by this
+
+  /**
+   * A search.
+   * @param <R> The result type
+   */
+  @FunctionalInterface
+  public interface Search<R> {
+    /**
+     * Run the search
+     * @return The result
+     * @throws SQLException If the search fails
+     */
+    R run() throws SQLException;
+  }
+
+  /**
+   * The result of a search, which is either the found data, or a marker that a newer search replaced it.
+   * @param <R> The result type
+   */
+  public static final class SearchResult<R> {
+    private static final SearchResult<?> SUPERSEDED = new SearchResult<>(null, true);
+    private final @Nullable R result;
+    private final boolean superseded;
+
+    private SearchResult(@Nullable R result, boolean superseded) {
+      this.result = result;
+      this.superseded = superseded;
+    }
+
+    /**
+     * Create a current result
+     * @param result The result
+     * @param <R> The result type
+     * @return The search result
+     */
+    public static <R> SearchResult<R> of(R result) {
+      return new SearchResult<>(result, false);
+    }
+
+    /**
+     * @return true if a newer search replaced this one, so there is no result.
+     */
+    public boolean isSuperseded() {
+      return superseded;
+    }
+
+    /**
+     * Get the result
+     * @return The result
+     * @throws IllegalStateException if the search was superseded
+     */
+    public R getResult() {
+      if (superseded) {
+        throw new IllegalStateException("Search was superseded");
+      }
+      //noinspection ConstantConditions
+      return result;
+    }
+
+    /**
+     * Pass the result to the consumer, unless the search was superseded.
+     * @param consumer The consumer
+     */
+    public void ifCurrent(Consumer<? super R> consumer) {
+      if (!superseded) {
+        consumer.accept(getResult());
+      }
+    }
+  }
+
+  private static final class Ticket {
+    private final Set<Statement> executing = ConcurrentHashMap.newKeySet();
+    private volatile boolean superseded = false;
+
+    void supersede() {
+      superseded = true;
+      for (Statement statement : executing) {
+        try {
+          statement.cancel();
+        } catch (SQLException ignored) { } // The statement may have just finished.
+      }
+    }
+  }
+
+  /**
+   * Create a service
+   * @param source The source of the real connections
+   * @param queryTimeoutSeconds The query timeout for every statement, or zero for no timeout
+   */
+  public CancellableSearchService(ConnectionSource source, int queryTimeoutSeconds) {
+    this.source = source;
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+    cancellableSource = this::getCancellableConnection;
+  }
+
+  /**
+   * Get the connection source for the Daos. Its statements can be cancelled.
+   * @return The connection source
+   */
+  public ConnectionSource getConnectionSource() {
+    return cancellableSource;
+  }
+
+  /**
+   * Run a search in a lane on the calling thread, superseding any search already running in the lane.
+   * @param lane Identifies the source of the search
+   * @param search The search
+   * @param <R> The result type
+   * @return The result, or a superseded result if a newer search replaced this one before it finished.
+   * @throws SQLException If the search fails for any reason other than being superseded
+   */
+  public <R> SearchResult<R> search(Object lane, Search<R> search) throws SQLException {
+    Ticket ticket = new Ticket();
+    Ticket prior = lanes.put(lane, ticket);
+    if (prior != null) {
+      prior.supersede();
+    }
+    Ticket outerTicket = currentTicket.get();
+    currentTicket.set(ticket);
+    try {
+      R result = search.run();
+      return ticket.superseded ? superseded() : SearchResult.of(result);
+    } catch (SQLException e) {
+      if (ticket.superseded) {
+        return superseded(); // The cancel() made the statement fail.
+      }
+      throw e;
+    } finally {
+      currentTicket.set(outerTicket);
+      lanes.remove(lane, ticket);
+      ticket.executing.clear(); // Statements left open can't be cancelled after the search ends.
+    }
+  }
+
+  /**
+   * Supersede the search running in the lane, if there is one. This may be called from any thread.
+   * @param lane The lane
+   */
+  public void cancel(Object lane) {
+    Ticket ticket = lanes.remove(lane);
+    if (ticket != null) {
+      ticket.supersede();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <R> SearchResult<R> superseded() {
+    return (SearchResult<R>) SearchResult.SUPERSEDED;
+  }
+
+  private synchronized Connection getCancellableConnection() {
+    Connection connection = source.getConnection();
+    if ((connection != lastConnection) || (lastProxy == null)) {
+      lastConnection = connection;
+      lastProxy = proxy(Connection.class, (proxy, method, args) -> {
+        Object value = invoke(connection, method, args);
+        if (value instanceof Statement) {
+          Statement statement = (Statement) value;
+          if (queryTimeoutSeconds > 0) {
+            statement.setQueryTimeout(queryTimeoutSeconds);
+          }
+          return wrapStatement(statement, method.getReturnType());
+        }
+        return value;
+      });
+    }
+    return lastProxy;
+  }
+
+  private Object wrapStatement(Statement statement, Class<?> type) {
+    Class<? extends Statement> statementType;
+    if (type == CallableStatement.class) {
+      statementType = CallableStatement.class;
+    } else if (type == PreparedStatement.class) {
+      statementType = PreparedStatement.class;
+    } else {
+      statementType = Statement.class;
+    }
+    return proxy(statementType, new StatementHandler(statement));
+  }
+
+  /**
+   * Registers its statement with the search that executes it, and keeps it registered until its ResultSet or the
+   * statement itself is closed, or the search ends. So a search that's superseded while it's still reading rows gets
+   * cancelled, too.
+   */
+  private final class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+    private volatile @Nullable Ticket owner = null;
+
+    StatementHandler(Statement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public @Nullable Object invoke(Object proxy, Method method, Object @Nullable [] args) throws Throwable {
+      final String name = method.getName();
+      if ("close".equals(name)) {
+        release();
+        return CancellableSearchService.invoke(statement, method, args);
+      }
+      Ticket ticket = currentTicket.get();
+      if ((ticket != null) && name.startsWith("execute")) {
+        release();
+        owner = ticket;
+        ticket.executing.add(statement);
+        if (ticket.superseded) {
+          release();
+          throw new SQLException("Search was superseded");
+        }
+        try {
+          return wrapResults(CancellableSearchService.invoke(statement, method, args), ticket);
+        } catch (Throwable t) {
+          release();
+          throw t;
+        }
+      }
+      Object value = CancellableSearchService.invoke(statement, method, args);
+      Ticket current = owner;
+      return (current == null) ? value : wrapResults(value, current); // getResultSet() after execute()
+    }
+
+    private @Nullable Object wrapResults(@Nullable Object value, Ticket ticket) {
+      if (!(value instanceof ResultSet)) {
+        return value;
+      }
+      ResultSet resultSet = (ResultSet) value;
+      return proxy(ResultSet.class, (proxy, method, args) -> {
+        final String name = method.getName();
+        if ("close".equals(name)) {
+          release();
+        } else if ("next".equals(name) && ticket.superseded) {
+          throw new SQLException("Search was superseded"); // In case the driver's cancel() doesn't stop a fetch
+        }
+        return CancellableSearchService.invoke(resultSet, method, args);
+      });
+    }
+
+    private void release() {
+      Ticket ticket = owner;
+      if (ticket != null) {
+        ticket.executing.remove(statement);
+        owner = null;
+      }
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static @Nullable Object invoke(Object target, Method method, Object @Nullable [] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
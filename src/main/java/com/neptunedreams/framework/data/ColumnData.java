@@ -0,0 +1,504 @@
+package com.neptunedreams.framework.data;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The contents of a ResultSet, stored by column in primitive arrays. This is meant for reports, aggregations and
+ * cache population, where building a full entity object for each row is wasted work. Integer columns are stored in
+ * {@code int[]} arrays, big integers and dates in {@code long[]} arrays, floating-point numbers in {@code double[]}
+ * arrays, and everything else as Strings, which are dictionary-encoded, so each distinct value is stored once, and
+ * each row holds only an {@code int} code. Each column also has a bitmap marking its null values. Reading a row
+ * doesn't allocate anything except for what the driver allocates itself.
+ * <p>
+ * Decimal columns are exact, so they're never stored as {@code double}. If their precision is at most
+ * {@value #MAX_LONG_DIGITS} digits, they're stored as unscaled {@code long} values, with the column's scale, so
+ * 12.34 in a column with a scale of 2 is stored as 1234. Wider decimal columns are stored as Strings.
+ * <p>
+ * Instances are built by {@link DataUtil#extractColumns(ResultSet)}.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 5:20 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ColumnData {
+  private static final int DEFAULT_CAPACITY = 1024;
+  /** The most decimal digits that always fit in a {@code long} */
+  public static final int MAX_LONG_DIGITS = 18;
+
+  /**
+   * How a column is stored
+   */
+  public enum Kind {
+    /** Stored as {@code int}. Used for integer, small integer and boolean columns. Booleans are 1 or 0. */
+    INT,
+    /** Stored as {@code long}. Used for big integers, and dates and times, which are stored as epoch milliseconds. */
+    LONG,
+    /** Stored as {@code double}. Used for floating-point columns. */
+    DOUBLE,
+    /**
+     * Stored as an unscaled {@code long}, with a scale for the whole column. Used for decimal columns with a precision
+     * of at most {@value #MAX_LONG_DIGITS} digits.
+     */
+    DECIMAL,
+    /** Dictionary-encoded Strings. Used for all other columns. */
+    STRING
+  }
+
+  private final String[] names;
+  private final Kind[] kinds;
+  private final int[] sqlTypes;
+  private final int[] scales;
+  private final int[][] ints;
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final long[][] nulls;
+  private final StringDictionary[] dictionaries;
+  private int rowCount = 0;
+  private int capacity;
+
+  private ColumnData(ResultSetMetaData metaData, int initialCapacity) throws SQLException {
+    int columnCount = metaData.getColumnCount();
+    capacity = Math.max(initialCapacity, 16);
+    names = new String[columnCount];
+    kinds = new Kind[columnCount];
+    sqlTypes = new int[columnCount];
+    scales = new int[columnCount];
+    ints = new int[columnCount][];
+    longs = new long[columnCount][];
+    doubles = new double[columnCount][];
+    nulls = new long[columnCount][];
+    dictionaries = new StringDictionary[columnCount];
+    for (int col = 0; col < columnCount; ++col) {
+      names[col] = metaData.getColumnName(col + 1);
+      sqlTypes[col] = metaData.getColumnType(col + 1);
+      Kind kind = kindOf(sqlTypes[col]);
+      if (kind == Kind.DECIMAL) {
+        int precision = metaData.getPrecision(col + 1);
+        scales[col] = metaData.getScale(col + 1);
+        if ((precision <= 0) || (precision > MAX_LONG_DIGITS) || (scales[col] < 0)) {
+          kind = Kind.STRING; // Too wide for a long, or the driver doesn't know.
+        }
+      }
+      kinds[col] = kind;
+      nulls[col] = new long[words(capacity)];
+      switch (kind) {
+        case INT:
+          ints[col] = new int[capacity];
+          break;
+        case LONG:
+        case DECIMAL:
+          longs[col] = new long[capacity];
+          break;
+        case DOUBLE:
+          doubles[col] = new double[capacity];
+          break;
+        case STRING:
+          ints[col] = new int[capacity];
+          dictionaries[col] = new StringDictionary();
+          break;
+        default:
+          throw new AssertionError(kind);
+      }
+    }
+  }
+
+  /**
+   * Read all the remaining rows of the result set.
+   * @param resultSet The result set
+   * @param expectedRows The expected number of rows, used to size the arrays, or zero if unknown.
+   * @return The column data
+   * @throws SQLException If the result set can't be read
+   */
+  static ColumnData extract(ResultSet resultSet, int expectedRows) throws SQLException {
+    int initialCapacity = expectedRows;
+    if (initialCapacity <= 0) {
+      if ((resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY) && resultSet.isBeforeFirst() && resultSet.last()) {
+        initialCapacity = resultSet.getRow();
+        resultSet.beforeFirst();
+      } else {
+        initialCapacity = (resultSet.getFetchSize() > 0) ? resultSet.getFetchSize() : DEFAULT_CAPACITY;
+      }
+    }
+    ColumnData data = new ColumnData(resultSet.getMetaData(), initialCapacity);
+    while (resultSet.next()) {
+      data.readRow(resultSet);
+    }
+    return data;
+  }
+
+  @SuppressWarnings("OverlyComplexMethod")
+  private static Kind kindOf(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return Kind.INT;
+      case Types.BIGINT:
+      case Types.DATE:
+      case Types.TIME:
+      case Types.TIMESTAMP:
+        return Kind.LONG;
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return Kind.DOUBLE;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return Kind.DECIMAL;
+      default:
+        return Kind.STRING;
+    }
+  }
+
+  private void readRow(ResultSet resultSet) throws SQLException {
+    if (rowCount == capacity) {
+      grow();
+    }
+    final int row = rowCount;
+    for (int col = 0; col < kinds.length; ++col) {
+      final int column = col + 1;
+      boolean isNull;
+      switch (kinds[col]) {
+        case INT:
+          ints[col][row] = readInt(resultSet, column, sqlTypes[col]);
+          isNull = resultSet.wasNull();
+          break;
+        case LONG:
+          longs[col][row] = readLong(resultSet, column, sqlTypes[col]);
+          isNull = resultSet.wasNull();
+          break;
+        case DOUBLE:
+          doubles[col][row] = resultSet.getDouble(column);
+          isNull = resultSet.wasNull();
+          break;
+        case DECIMAL:
+          BigDecimal decimal = resultSet.getBigDecimal(column);
+          isNull = decimal == null;
+          longs[col][row] = isNull ? 0L : unscaled(decimal, scales[col], names[col]);
+          break;
+        case STRING:
+          String value = resultSet.getString(column);
+          isNull = value == null;
+          ints[col][row] = isNull ? -1 : dictionaries[col].encode(value);
+          break;
+        default:
+          throw new AssertionError(kinds[col]);
+      }
+      if (isNull) {
+        nulls[col][row >>> 6] |= 1L << row;
+      }
+    }
+    rowCount++;
+  }
+
+  private static int readInt(ResultSet resultSet, int column, int sqlType) throws SQLException {
+    if ((sqlType == Types.BIT) || (sqlType == Types.BOOLEAN)) {
+      return resultSet.getBoolean(column) ? 1 : 0;
+    }
+    return resultSet.getInt(column);
+  }
+
+  private static long readLong(ResultSet resultSet, int column, int sqlType) throws SQLException {
+    if (sqlType == Types.BIGINT) {
+      return resultSet.getLong(column);
+    }
+    Timestamp timestamp = resultSet.getTimestamp(column);
+    return (timestamp == null) ? 0L : timestamp.getTime();
+  }
+
+  private static long unscaled(BigDecimal value, int scale, String name) throws SQLException {
+    try {
+      return value.setScale(scale).unscaledValue().longValueExact(); // setScale() won't round without a RoundingMode.
+    } catch (ArithmeticException e) {
+      throw new SQLDataException(String.format("%s doesn't fit column %s with a scale of %d", value, name, scale), e);
+    }
+  }
+
+  private void grow() {
+    int newCapacity = capacity * 2;
+    for (int col = 0; col < kinds.length; ++col) {
+      if (ints[col] != null) {
+        ints[col] = Arrays.copyOf(ints[col], newCapacity);
+      }
+      if (longs[col] != null) {
+        longs[col] = Arrays.copyOf(longs[col], newCapacity);
+      }
+      if (doubles[col] != null) {
+        doubles[col] = Arrays.copyOf(doubles[col], newCapacity);
+      }
+      nulls[col] = Arrays.copyOf(nulls[col], words(newCapacity));
+    }
+    capacity = newCapacity;
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  /**
+   * @return The number of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return The number of columns
+   */
+  public int getColumnCount() {
+    return kinds.length;
+  }
+
+  /**
+   * @param col The 0-based column index
+   * @return The name of the column
+   */
+  public String getColumnName(int col) {
+    return names[col];
+  }
+
+  /**
+   * Find a column by name, ignoring case
+   * @param name The column name
+   * @return The 0-based column index, or -1 if there's no such column
+   */
+  public int findColumn(String name) {
+    for (int col = 0; col < names.length; ++col) {
+      if (names[col].equalsIgnoreCase(name)) {
+        return col;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param col The 0-based column index
+   * @return How the column is stored.
+   */
+  public Kind getKind(int col) {
+    return kinds[col];
+  }
+
+  /**
+   * Determine if a value is null.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return true if the value is null
+   */
+  public boolean isNull(int col, int row) {
+    return (nulls[col][checkRow(row) >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * Get a value from an INT column. Null values are returned as zero.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The value
+   */
+  public int getInt(int col, int row) {
+    return column(ints, col, Kind.INT)[checkRow(row)];
+  }
+
+  /**
+   * Get a value from a LONG column. Null values are returned as zero.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The value
+   */
+  public long getLong(int col, int row) {
+    return column(longs, col, Kind.LONG)[checkRow(row)];
+  }
+
+  /**
+   * Get a value from a DOUBLE column. Null values are returned as zero.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The value
+   */
+  public double getDouble(int col, int row) {
+    return column(doubles, col, Kind.DOUBLE)[checkRow(row)];
+  }
+
+  /**
+   * Get the unscaled value from a DECIMAL column. The value is this times ten to the power of minus the column's
+   * {@linkplain #getScale(int) scale}. Null values are returned as zero.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The unscaled value
+   */
+  public long getUnscaled(int col, int row) {
+    return column(longs, col, Kind.DECIMAL)[checkRow(row)];
+  }
+
+  /**
+   * Get a value from a DECIMAL column.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The value, which may be null.
+   */
+  public @Nullable BigDecimal getDecimal(int col, int row) {
+    long unscaled = getUnscaled(col, row);
+    return isNull(col, row) ? null : BigDecimal.valueOf(unscaled, scales[col]);
+  }
+
+  /**
+   * Get the scale of a DECIMAL column, which is the number of digits after the decimal point.
+   * @param col The 0-based column index
+   * @return The scale
+   */
+  public int getScale(int col) {
+    column(longs, col, Kind.DECIMAL);
+    return scales[col];
+  }
+
+  /**
+   * Get the dictionary code of a value in a STRING column. Equal values have equal codes, so this may be used to
+   * group or count values without comparing Strings.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The code, which is an index into the column's dictionary, or -1 for a null value.
+   */
+  public int getCode(int col, int row) {
+    return column(ints, col, Kind.STRING)[checkRow(row)];
+  }
+
+  /**
+   * Get a value from a STRING column.
+   * @param col The 0-based column index
+   * @param row The 0-based row index
+   * @return The value, which may be null.
+   */
+  public @Nullable String getString(int col, int row) {
+    int code = getCode(col, row);
+    return (code < 0) ? null : dictionaries[col].values[code];
+  }
+
+  /**
+   * Get the dictionary of a STRING column.
+   * @param col The 0-based column index
+   * @return A copy of the distinct values in the column, indexed by their codes.
+   */
+  public String[] getDictionary(int col) {
+    column(ints, col, Kind.STRING);
+    StringDictionary dictionary = dictionaries[col];
+    return Arrays.copyOf(dictionary.values, dictionary.size);
+  }
+
+  /**
+   * Get a copy of an INT column, or of the codes of a STRING column.
+   * @param col The 0-based column index
+   * @return The values, one per row.
+   */
+  public int[] getInts(int col) {
+    if ((kinds[col] != Kind.INT) && (kinds[col] != Kind.STRING)) {
+      throw new IllegalArgumentException(String.format("Column %s is %s", names[col], kinds[col]));
+    }
+    return Arrays.copyOf(ints[col], rowCount);
+  }
+
+  /**
+   * Get a copy of a LONG column.
+   * @param col The 0-based column index
+   * @return The values, one per row.
+   */
+  public long[] getLongs(int col) {
+    return Arrays.copyOf(column(longs, col, Kind.LONG), rowCount);
+  }
+
+  /**
+   * Get a copy of the unscaled values of a DECIMAL column.
+   * @param col The 0-based column index
+   * @return The values, one per row.
+   * @see #getScale(int)
+   */
+  public long[] getUnscaledValues(int col) {
+    return Arrays.copyOf(column(longs, col, Kind.DECIMAL), rowCount);
+  }
+
+  /**
+   * Get a copy of a DOUBLE column.
+   * @param col The 0-based column index
+   * @return The values, one per row.
+   */
+  public double[] getDoubles(int col) {
+    return Arrays.copyOf(column(doubles, col, Kind.DOUBLE), rowCount);
+  }
+
+  private <A> A column(A[] arrays, int col, Kind kind) {
+    A array = arrays[col];
+    if ((kinds[col] != kind) || (array == null)) {
+      throw new IllegalArgumentException(String.format("Column %s is %s, not %s", names[col], kinds[col], kind));
+    }
+    return array;
+  }
+
+  private int checkRow(int row) {
+    if ((row < 0) || (row >= rowCount)) {
+      throw new IndexOutOfBoundsException(String.format("Row %d of %d", row, rowCount));
+    }
+    return row;
+  }
+
+  /**
+   * An open-addressing hash map from String to code, which avoids boxing the codes.
+   */
+  private static final class StringDictionary {
+    private String[] values = new String[16];
+    private int size = 0;
+    private int[] table = newTable(64); // holds code + 1, so zero is empty
+
+    private static int[] newTable(int length) {
+      return new int[length];
+    }
+
+    int encode(String value) {
+      int mask = table.length - 1;
+      int slot = IdIndex.mix(value.hashCode()) & mask;
+      while (true) {
+        int entry = table[slot];
+        if (entry == 0) {
+          break;
+        }
+        if (values[entry - 1].equals(value)) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      int code = size++;
+      if (code == values.length) {
+        values = Arrays.copyOf(values, code * 2);
+      }
+      values[code] = value;
+      table[slot] = code + 1;
+      if ((size * 2) > table.length) {
+        rehash();
+      }
+      return code;
+    }
+
+    private void rehash() {
+      int[] newTable = newTable(table.length * 2);
+      int mask = newTable.length - 1;
+      for (int code = 0; code < size; ++code) {
+        int slot = IdIndex.mix(values[code].hashCode()) & mask;
+        while (newTable[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        newTable[slot] = code + 1;
+      }
+      table = newTable;
+    }
+  }
+}
@@ -46,6 +46,45 @@ public interface Dao<E, PK, F extends DBField> {
   void insertOrUpdate(E entity) throws SQLException;
 
   void delete(E entity) throws SQLException;
+
+  /**
+   * Insert several entities. The default inserts them one at a time. Implementations that use JDBC should override
+   * this to send them as one batch, in one transaction, with {@link DataUtil#runInTransaction(java.sql.Connection,
+   * DataUtil.Transaction)}, so that either all of them are inserted, or none are.
+   * @param entities The entities to insert
+   * @throws SQLException If any of them can't be inserted
+   */
+  default void insertAll(Collection<? extends E> entities) throws SQLException {
+    for (E entity : entities) {
+      insert(entity);
+    }
+  }
+
+  /**
+   * Update several entities. The default updates them one at a time. Implementations that use JDBC should override
+   * this to send them as one batch, in one transaction.
+   * @param entities The entities to update
+   * @throws SQLException If any of them can't be updated
+   * @see #insertAll(Collection)
+   */
+  default void updateAll(Collection<? extends E> entities) throws SQLException {
+    for (E entity : entities) {
+      update(entity);
+    }
+  }
+
+  /**
+   * Delete several entities. The default deletes them one at a time. Implementations that use JDBC should override
+   * this to send them as one batch, in one transaction.
+   * @param entities The entities to delete
+   * @throws SQLException If any of them can't be deleted
+   * @see #insertAll(Collection)
+   */
+  default void deleteAll(Collection<? extends E> entities) throws SQLException {
+    for (E entity : entities) {
+      delete(entity);
+    }
+  }
   
   PK getNextId() throws SQLException;
   
@@ -54,6 +93,18 @@ public interface Dao<E, PK, F extends DBField> {
   int getTotal() throws SQLException;
 
   void setPrimaryKey(E entity, PK primaryKey);
+
+  /**
+   * Get the Dao ready for use, so the first real query doesn't pay for it. This is called on a background thread by
+   * {@link AbstractDaoFactory#warmUp()}. The default creates the table if needed, and reads the record count, which
+   * opens the connection and loads the driver's classes. Implementations may override this to prepare their common
+   * statements, or to read the first page of data.
+   * @throws SQLException If the table can't be created or read
+   */
+  default void warmUp() throws SQLException {
+    createTableIfNeeded();
+    getTotal();
+  }
   
 //  <T> Collection<T> getTableInfo() throws SQLException;
 }
@@ -1,12 +1,19 @@
 package com.neptunedreams.framework.data;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * <p>Created by IntelliJ IDEA.
@@ -18,6 +25,12 @@ import java.util.List;
 public enum DataUtil {
   ;
 
+  /**
+   * The number of rows used to calculate the column widths when the ResultSet can't be scrolled back to the start.
+   */
+  public static final int DEFAULT_SAMPLE_ROWS = 1000;
+  private static final String NEW_LINE = System.lineSeparator();
+
   /*
   public static <T> void printRecord(Collection<T> records, Function<T, String>... getter) throws SQLException {
     ResultSet resultSet = wrapCollection(records, getter);
@@ -30,32 +43,75 @@ public enum DataUtil {
    * @throws SQLException most likely only when the ResultSet is invalid, possibly due to later changes in the table.
    * (Just a guess)
    */
-  @SuppressWarnings({"UseOfSystemOutOrSystemErr", "MagicCharacter"})
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
   public static void printResultSet(final ResultSet resultSet) throws SQLException {
+    try {
+      printResultSet(resultSet, System.out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // PrintStream doesn't throw IOExceptions, so this never happens.
+    }
+  }
+
+  /**
+   * Print a well-formatted result set to a channel, encoded as UTF-8. The channel is not closed.
+   * @param resultSet The result set, positioned before the first row
+   * @param channel The destination
+   * @throws SQLException If the result set can't be read
+   * @throws IOException If the channel can't be written
+   */
+  public static void printResultSet(final ResultSet resultSet, WritableByteChannel channel)
+      throws SQLException, IOException {
+    Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+    printResultSet(resultSet, writer);
+    writer.flush();
+  }
+
+  /**
+   * Print a well-formatted result set. Rows are written as they are read, so the size of the result set doesn't
+   * matter. If the result set is scrollable, the column widths are calculated in a first pass over all the rows.
+   * Otherwise, they are calculated from the first {@link #DEFAULT_SAMPLE_ROWS} rows.
+   * @param resultSet The result set, positioned before the first row
+   * @param out The destination
+   * @throws SQLException If the result set can't be read
+   * @throws IOException If the destination can't be written
+   */
+  public static void printResultSet(final ResultSet resultSet, Appendable out) throws SQLException, IOException {
+    printResultSet(resultSet, out, DEFAULT_SAMPLE_ROWS);
+  }
+
+  /**
+   * Print a well-formatted result set, holding no more than the specified number of rows in memory. Rows are written
+   * as they are read. If the result set is scrollable, the column widths are calculated in a first pass over all the
+   * rows. Otherwise, they are calculated from the first {@code sampleRows} rows, and any wider value after that
+   * pushes the rest of its row to the right.
+   * @param resultSet The result set, positioned before the first row
+   * @param out The destination
+   * @param sampleRows The number of rows used to calculate the column widths, if the result set can't be scrolled.
+   * @throws SQLException If the result set can't be read
+   * @throws IOException If the destination can't be written
+   */
+  @SuppressWarnings("MagicCharacter")
+  public static void printResultSet(final ResultSet resultSet, Appendable out, int sampleRows)
+      throws SQLException, IOException {
     ResultSetMetaData metaData = resultSet.getMetaData();
     int columnCount = metaData.getColumnCount();
-    List<List<String>> results = new LinkedList<>();
 
     // maxWidth_1 is 1-based
     int[] maxWidth_1 = new int[columnCount + 1];
     Arrays.fill(maxWidth_1, 0);
+    List<String[]> sample = new ArrayList<>();
 
-    // Gather all the data and calculate the maximum column widths.
-    boolean hasNext = resultSet.next();
-    List<String> row = new ArrayList<>();
-    while (hasNext) {
-      row.clear();
-      for (int col = 1; col <= columnCount; ++col) {
-        String value = String.valueOf(resultSet.getString(col)); // I use String.valueOf() to turn null into "null"
-        // value is definitely not null here.
-        row.add(value);
-        int width = value.length();
-        if (maxWidth_1[col] < width) {
-          maxWidth_1[col] = width;
-        }
+    if (resultSet.getType() == ResultSet.TYPE_FORWARD_ONLY) {
+      // Gather the sample rows and calculate the maximum column widths.
+      while ((sample.size() < sampleRows) && resultSet.next()) {
+        sample.add(readRow(resultSet, columnCount, maxWidth_1));
+      }
+    } else {
+      // Calculate the column widths from every row, then start over.
+      while (resultSet.next()) {
+        readRow(resultSet, columnCount, maxWidth_1);
       }
-      results.add(row);
-      hasNext = resultSet.next();
+      resultSet.beforeFirst();
     }
 
     // Incorporate the header widths into the column widths.
@@ -79,31 +135,208 @@ public enum DataUtil {
     for (int ii = 1; ii <= columnCount; ++ii) {
       pack(line, metaData.getColumnName(ii), maxWidth_1[ii], spaces);
     }
-    System.out.println(line);
+    out.append(line).append(NEW_LINE);
 
     // Print out the underscores
-    line = new StringBuilder();
+    line.setLength(0);
     for (int ii = 1; ii <= columnCount; ++ii) {
       final int width = maxWidth_1[ii];
       //noinspection ObjectAllocationInLoop
-      char[] dashes = new char[width + 1];
-      Arrays.fill(dashes, '-');
-      dashes[width] = ' '; // column-separator space
+      char[] dashes = new char[width];
+      Arrays.fill(dashes, '-'); // pack() adds the column-separator space
       //noinspection ObjectAllocationInLoop
       pack(line, new String(dashes), width, spaces);
     }
-    System.out.println(line);
+    out.append(line).append(NEW_LINE);
 
-    // For each record, pack data into an empty line.
-    for (List<String> resultData : results) {
-      //noinspection ObjectAllocationInLoop
-      line = new StringBuilder();
+    // For each sampled record, pack data into an empty line.
+    for (String[] resultData : sample) {
+      printRow(out, line, resultData, maxWidth_1, spaces);
+    }
+
+    // Stream the rest of the records.
+    String[] row = new String[columnCount];
+    while (resultSet.next()) {
       for (int col = 0; col < columnCount; ++col) {
-        pack(line, resultData.get(col), maxWidth_1[col + 1], spaces);
+        row[col] = String.valueOf(resultSet.getString(col + 1));
+      }
+      printRow(out, line, row, maxWidth_1, spaces);
+    }
+    out.append("---").append(NEW_LINE);
+  }
+
+  /**
+   * Read the current row, widening the column widths as needed.
+   * @return The values in the row
+   */
+  private static String[] readRow(ResultSet resultSet, int columnCount, int[] maxWidth_1) throws SQLException {
+    String[] row = new String[columnCount];
+    for (int col = 1; col <= columnCount; ++col) {
+      String value = String.valueOf(resultSet.getString(col)); // I use String.valueOf() to turn null into "null"
+      // value is definitely not null here.
+      row[col - 1] = value;
+      int width = value.length();
+      if (maxWidth_1[col] < width) {
+        maxWidth_1[col] = width;
+      }
+    }
+    return row;
+  }
+
+  private static void printRow(Appendable out, StringBuilder line, String[] row, int[] maxWidth_1, String spaces)
+      throws IOException {
+    line.setLength(0);
+    for (int col = 0; col < row.length; ++col) {
+      pack(line, row[col], maxWidth_1[col + 1], spaces);
+    }
+    out.append(line).append(NEW_LINE);
+  }
+
+  /**
+   * Write a result set as comma-separated values, following RFC 4180, with a header row of column names. Values are
+   * quoted only when needed. Null values are written as empty, unquoted values.
+   * @param resultSet The result set, positioned before the first row
+   * @param out The destination
+   * @throws SQLException If the result set can't be read
+   * @throws IOException If the destination can't be written
+   */
+  @SuppressWarnings("MagicCharacter")
+  public static void writeCsv(final ResultSet resultSet, Appendable out) throws SQLException, IOException {
+    writeDelimited(resultSet, out, ',');
+  }
+
+  /**
+   * Write a result set as tab-separated values, with a header row of column names. Tabs, line breaks and backslashes
+   * within values are escaped as {@code \t}, {@code \n}, {@code \r} and {@code \\}. Null values are written as
+   * {@code \N}.
+   * @param resultSet The result set, positioned before the first row
+   * @param out The destination
+   * @throws SQLException If the result set can't be read
+   * @throws IOException If the destination can't be written
+   */
+  @SuppressWarnings("MagicCharacter")
+  public static void writeTsv(final ResultSet resultSet, Appendable out) throws SQLException, IOException {
+    writeDelimited(resultSet, out, '\t');
+  }
+
+  @SuppressWarnings("MagicCharacter")
+  private static void writeDelimited(final ResultSet resultSet, Appendable out, char delimiter)
+      throws SQLException, IOException {
+    ResultSetMetaData metaData = resultSet.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    for (int col = 1; col <= columnCount; ++col) {
+      if (col > 1) {
+        out.append(delimiter);
+      }
+      appendDelimited(out, metaData.getColumnName(col), delimiter);
+    }
+    out.append("\r\n");
+    while (resultSet.next()) {
+      for (int col = 1; col <= columnCount; ++col) {
+        if (col > 1) {
+          out.append(delimiter);
+        }
+        appendDelimited(out, resultSet.getString(col), delimiter);
+      }
+      out.append("\r\n");
+    }
+  }
+
+  @SuppressWarnings({"MagicCharacter", "HardcodedLineSeparator"})
+  private static void appendDelimited(Appendable out, @Nullable String value, char delimiter) throws IOException {
+    if (delimiter == '\t') {
+      if (value == null) {
+        out.append("\\N");
+        return;
+      }
+      for (int i = 0; i < value.length(); ++i) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '\t':
+            out.append("\\t");
+            break;
+          case '\n':
+            out.append("\\n");
+            break;
+          case '\r':
+            out.append("\\r");
+            break;
+          case '\\':
+            out.append("\\\\");
+            break;
+          default:
+            out.append(c);
+        }
+      }
+    } else if (value != null) {
+      boolean needsQuotes = value.isEmpty();
+      for (int i = 0; (i < value.length()) && !needsQuotes; ++i) {
+        char c = value.charAt(i);
+        needsQuotes = (c == delimiter) || (c == '"') || (c == '\n') || (c == '\r');
+      }
+      if (needsQuotes) {
+        out.append('"').append(value.replace("\"", "\"\"")).append('"');
+      } else {
+        out.append(value);
+      }
+    }
+  }
+
+  /**
+   * Read the remaining rows of a result set into primitive columns, without building an object for each row. If the
+   * result set is scrollable, it's scrolled to the end first to count the rows, so the columns are allocated once.
+   * Otherwise, they start at the fetch size and double as needed.
+   * @param resultSet The result set, positioned before the first row
+   * @return The columns
+   * @throws SQLException If the result set can't be read
+   * @see ColumnData
+   */
+  public static ColumnData extractColumns(final ResultSet resultSet) throws SQLException {
+    return ColumnData.extract(resultSet, 0);
+  }
+
+  /**
+   * Read the remaining rows of a result set into primitive columns, without building an object for each row.
+   * @param resultSet The result set
+   * @param expectedRows The expected number of rows, used to size the columns. They grow if there are more rows.
+   * @return The columns
+   * @throws SQLException If the result set can't be read
+   * @see ColumnData
+   */
+  public static ColumnData extractColumns(final ResultSet resultSet, int expectedRows) throws SQLException {
+    return ColumnData.extract(resultSet, Math.max(expectedRows, 1));
+  }
+
+  /**
+   * Work done by {@link #runInTransaction(Connection, Transaction)}
+   */
+  @FunctionalInterface
+  public interface Transaction {
+    void run() throws SQLException;
+  }
+
+  /**
+   * Run some work in one transaction, so either all of its changes are committed, or none of them are. The
+   * connection's auto-commit setting is restored afterwards. This is meant for bulk operations, which should add
+   * their statements to a batch, and execute the batch once.
+   * @param connection The connection used by the work
+   * @param transaction The work
+   * @throws SQLException If the work fails, after the transaction has been rolled back
+   */
+  public static void runInTransaction(Connection connection, Transaction transaction) throws SQLException {
+    boolean priorAutoCommit = connection.getAutoCommit();
+    boolean success = false;
+    try {
+      connection.setAutoCommit(false);
+      transaction.run();
+      connection.commit();
+      success = true;
+    } finally {
+      if (!success) {
+        connection.rollback();
       }
-      System.out.println(line);
+      connection.setAutoCommit(priorAutoCommit);
     }
-    System.out.println("---");
   }
 
   private static int max(int[] array) {
@@ -118,9 +351,10 @@ public enum DataUtil {
 
   private static void pack(StringBuilder line, final String value, final int width, String spaces) {
     line.append(value);
-    // Pad spaces at the end of the value, including a column-separator space.
+    // Pad spaces at the end of the value, including a column-separator space. A value from beyond the sample rows
+    // may be wider than its column, and only gets the separator space.
 //    line.append(spaces.substring(0, (width - value.length()) + 1));
-    line.append(spaces, 0, (width - value.length()) + 1);
+    line.append(spaces, 0, Math.max(width - value.length(), 0) + 1);
 //    line.append(spaces, value.length(), width+1); // alternate way, works too.
 //    line.append(spaces.substring((width - value.length()) + 1)); // probably works fine, too. Untested.
   }
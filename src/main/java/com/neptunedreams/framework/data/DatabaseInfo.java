@@ -25,4 +25,18 @@ public interface DatabaseInfo {
   ConnectionSource getConnectionSource();
   void shutdown();
 
+  /**
+   * Returns a value that changes whenever the data in the database changes. This is used to decide if a saved
+   * snapshot of the data is still current. The default implementation returns zero, which means the stamp is unknown.
+   * @return The change stamp, or zero if it's unknown.
+   * @see FoundSetSnapshot
+   */
+  default long getChangeStamp() { return 0L; }
+
+  /**
+   * Records that the data has changed, so the {@linkplain #getChangeStamp() change stamp} moves on. The default
+   * does nothing.
+   */
+  default void markChanged() { }
+
 }
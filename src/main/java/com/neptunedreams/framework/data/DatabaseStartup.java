@@ -0,0 +1,71 @@
+package com.neptunedreams.framework.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.neptunedreams.framework.task.StagedStartup;
+
+/**
+ * Builds the standard startup graph for a database. The stages are:
+ * <ol>
+ *   <li>{@link #INIT}: {@link DatabaseInfo#init()}, which opens the connection. {@link AbstractDatabaseInfo} opens it
+ *   with {@code initialize()}.</li>
+ *   <li>{@link #SCHEMA}: {@link DatabaseInfo#createSchema()}, if {@link DatabaseInfo#isCreateSchemaAllowed()}. This
+ *   needs the connection.</li>
+ *   <li>One stage for each registered Dao, named by {@link #tableStage(Class)}, which warms up the Dao, creating its
+ *   table if needed. These need the schema, but not each other, so they all run at the same time.</li>
+ *   <li>{@link #TABLES}, which does nothing, but finishes when every table is ready.</li>
+ * </ol>
+ * The ready signal opens after the tables are ready. Applications may add their own stages, such as loading caches
+ * and running the first query, that depend on these, and call {@link StagedStartup#setReadyAfter(String...)} to
+ * move the ready signal.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 6:40 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public enum DatabaseStartup {
+  ;
+
+  /** The name of the stage that initializes the database */
+  public static final String INIT = "init";
+  /** The name of the stage that creates the schema */
+  public static final String SCHEMA = "schema";
+  /** The name of the stage that finishes when every table is ready */
+  public static final String TABLES = "tables";
+
+  /**
+   * Create the standard startup stages for a database.
+   * @param info The database info
+   * @param daoFactory The factory holding the Daos. Every Dao must already be registered.
+   * @return The startup, which hasn't started yet.
+   */
+  public static StagedStartup create(DatabaseInfo info, AbstractDaoFactory daoFactory) {
+    StagedStartup startup = new StagedStartup();
+    startup.addStage(INIT, info::init);
+    startup.addStage(SCHEMA, () -> {
+      if (info.isCreateSchemaAllowed()) {
+        info.createSchema();
+      }
+    }, INIT);
+    List<String> tables = new ArrayList<>();
+    for (Class<?> entityClass : daoFactory.getRegisteredClasses()) {
+      String name = tableStage(entityClass);
+      startup.addStage(name, () -> daoFactory.warmUp(entityClass), SCHEMA);
+      tables.add(name);
+    }
+    startup.addStage(TABLES, () -> { }, tables.isEmpty() ? new String[]{SCHEMA} : tables.toArray(new String[0]));
+    startup.setReadyAfter(TABLES);
+    return startup;
+  }
+
+  /**
+   * Get the name of the stage that warms up the Dao of an entity class.
+   * @param entityClass The entity class
+   * @return The name of the stage
+   */
+  public static String tableStage(Class<?> entityClass) {
+    return "table " + entityClass.getName();
+  }
+}
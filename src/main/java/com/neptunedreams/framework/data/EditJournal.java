@@ -0,0 +1,366 @@
+package com.neptunedreams.framework.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An append-only journal of unsaved edits, so a crash doesn't lose what the user typed since the last save. Each
+ * entry holds a record id and the values of the fields that the user changed. Appending an entry is just a copy into
+ * a memory-mapped file, so it takes microseconds, and may be done after every pause in typing. Once the record is
+ * saved to the database, the journal gets truncated. When the application starts, any entries left in the journal
+ * are from a session that didn't save its last edits, and should be replayed into the Dao.
+ * <p>
+ * Records that have never been saved all have an id of zero, so each one also gets a draft number, which tells
+ * their edits apart. In the file, a draft is written with its draft number negated in place of the id.
+ * <p>
+ * The file starts with a header holding a magic number and a generation number. Each entry is framed by its length,
+ * a CRC-32 of its contents, and the generation. Truncating just increments the generation in the header, so older
+ * entries that are still in the file are ignored. Reading stops at the first entry with a bad CRC or an old
+ * generation, so an entry that was only partly written when the application crashed is never replayed.
+ * <p>
+ * Since the file is memory-mapped, entries survive a crash of the application as soon as they're appended. To make
+ * them survive a crash of the operating system, call {@link #force()}.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 4:05 PM
+ *
+ * @see com.neptunedreams.framework.ui.AutoSave
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class EditJournal implements AutoCloseable {
+  private static final int MAGIC = 0x544E474A; // "TNGJ"
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int FRAME_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES; // length, crc, generation
+  private static final int DEFAULT_CAPACITY = 1 << 20;
+  private static final int SAVED = -1; // A value count that marks a record's edits as saved
+
+  private final FileChannel channel;
+  private MappedByteBuffer buffer;
+  private long generation;
+  private int position;
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  private final DataOutputStream out = new DataOutputStream(bytes);
+  private final CRC32 crc = new CRC32();
+
+  /**
+   * An entry in the journal.
+   */
+  public static final class Entry {
+    private final int key;
+    private final Map<String, @Nullable String> values;
+    private final boolean saved;
+
+    Entry(int key, Map<String, @Nullable String> values, boolean saved) {
+      this.key = key;
+      this.values = values;
+      this.saved = saved;
+    }
+
+    /**
+     * @return The id of the edited record. This is zero if the record had never been saved.
+     */
+    public int getRecordId() {
+      return Math.max(key, 0);
+    }
+
+    /**
+     * @return The draft number of a record that had never been saved, or zero for a saved record.
+     */
+    public int getDraftNumber() {
+      return Math.max(-key, 0);
+    }
+
+    /**
+     * @return The changed values, by field name. This is empty if the entry {@linkplain #isSaved() marks} the edits
+     * as saved.
+     */
+    public Map<String, @Nullable String> getValues() {
+      return values;
+    }
+
+    /**
+     * @return true if this entry marks the record's earlier edits as saved, so they aren't replayed again.
+     */
+    public boolean isSaved() {
+      return saved;
+    }
+  }
+
+  /**
+   * Open a journal with the default capacity of 1 MB.
+   * @param path The journal file, which is created if it doesn't exist
+   * @throws IOException If the file can't be opened or created, or isn't a journal
+   */
+  public EditJournal(Path path) throws IOException {
+    this(path, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Open a journal, which will be created if it doesn't already exist. Entries that are already in the journal are
+   * kept, and may be read with {@link #readEntries()}.
+   * @param path The journal file
+   * @param capacity The initial size of the file. It grows if it runs out of room.
+   * @throws IOException If the file can't be opened or created, or isn't a journal
+   */
+  public EditJournal(Path path, int capacity) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      boolean isNew = channel.size() == 0L;
+      long size = Math.max(capacity, Math.max(channel.size(), HEADER_SIZE));
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (isNew) {
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(Integer.BYTES, 1L);
+      } else if (buffer.getInt(0) != MAGIC) {
+        throw new IOException(String.format("Not a journal file: %s", path));
+      }
+      generation = buffer.getLong(Integer.BYTES);
+      position = scan(buffer, generation, null);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Append an entry to the journal. Edits of records that have never been saved all get a draft number of 1, so use
+   * {@link #append(int, int, Map)} if more than one new record may be edited.
+   * @param recordId The id of the record, or zero if the record has never been saved.
+   * @param changedValues The changed values, by field name.
+   * @throws IOException If the file can't grow to hold the entry.
+   */
+  public void append(int recordId, Map<String, @Nullable String> changedValues) throws IOException {
+    append(recordId, 1, changedValues);
+  }
+
+  /**
+   * Append an entry to the journal.
+   * @param recordId The id of the record, or zero if the record has never been saved.
+   * @param draftNumber Tells apart the records that have never been saved. It must be positive, and is ignored if
+   *                    the record has an id.
+   * @param changedValues The changed values, by field name.
+   * @throws IOException If the file can't grow to hold the entry.
+   */
+  public void append(int recordId, int draftNumber, Map<String, @Nullable String> changedValues) throws IOException {
+    if ((recordId == 0) && (draftNumber <= 0)) {
+      throw new IllegalArgumentException(String.format("Draft number %d", draftNumber));
+    }
+    write((recordId == 0) ? -draftNumber : recordId, changedValues, false);
+  }
+
+  private synchronized void write(int key, Map<String, @Nullable String> changedValues, boolean saved)
+      throws IOException {
+    bytes.reset();
+    out.writeInt(key);
+    if (saved) {
+      out.writeInt(SAVED);
+    } else {
+      out.writeInt(changedValues.size());
+      for (Map.Entry<String, @Nullable String> entry : changedValues.entrySet()) {
+        writeString(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+    out.flush();
+    int length = bytes.size();
+    ensureCapacity(position + FRAME_SIZE + length + Integer.BYTES);
+    crc.reset();
+    byte[] payload = bytes.toByteArray();
+    crc.update(payload, 0, length);
+
+    // Write the payload before the length, so a partial entry is never seen as complete.
+    ByteBuffer target = buffer.duplicate();
+    target.position(position + FRAME_SIZE);
+    target.put(payload, 0, length);
+    target.putInt(0); // marks the end of the journal
+    buffer.putLong(position + (2 * Integer.BYTES), generation);
+    buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+    buffer.putInt(position, length);
+    position += FRAME_SIZE + length;
+  }
+
+  private void writeString(@Nullable String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(utf8.length);
+      out.write(utf8);
+    }
+  }
+
+  private void ensureCapacity(int size) throws IOException {
+    if (size > buffer.capacity()) {
+      buffer.force();
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, buffer.capacity() * 2L));
+    }
+  }
+
+  /**
+   * Read all the valid entries in the journal, in the order they were written.
+   * @return The entries
+   */
+  public synchronized List<Entry> readEntries() {
+    List<Entry> entries = new ArrayList<>();
+    position = scan(buffer, generation, entries);
+    return entries;
+  }
+
+  /**
+   * Scan the valid entries in the journal.
+   * @param buffer The journal's buffer
+   * @param generation The current generation. Entries from older generations have been truncated.
+   * @param entries Receives the entries, or null if only the end of the journal is needed.
+   * @return The position after the last valid entry
+   */
+  private static int scan(ByteBuffer buffer, long generation, @Nullable List<Entry> entries) {
+    CRC32 crc = new CRC32();
+    int next = HEADER_SIZE;
+    while ((next + FRAME_SIZE) <= buffer.capacity()) {
+      int length = buffer.getInt(next);
+      if ((length <= 0) || ((next + FRAME_SIZE + length) > buffer.capacity())
+          || (buffer.getLong(next + (2 * Integer.BYTES)) != generation)) {
+        break;
+      }
+      byte[] payload = new byte[length];
+      ByteBuffer source = buffer.duplicate();
+      source.position(next + FRAME_SIZE);
+      source.get(payload);
+      crc.update(payload, 0, length);
+      if (buffer.getInt(next + Integer.BYTES) != (int) crc.getValue()) {
+        break; // A torn write. Nothing after this can be trusted.
+      }
+      crc.reset();
+      if (entries != null) {
+        entries.add(decode(ByteBuffer.wrap(payload)));
+      }
+      next += FRAME_SIZE + length;
+    }
+    return next;
+  }
+
+  private static Entry decode(ByteBuffer payload) {
+    int key = payload.getInt();
+    int count = payload.getInt();
+    Map<String, @Nullable String> values = new LinkedHashMap<>();
+    for (int i = 0; i < count; ++i) {
+      String name = String.valueOf(readString(payload));
+      values.put(name, readString(payload));
+    }
+    return new Entry(key, values, count == SAVED);
+  }
+
+  private static @Nullable String readString(ByteBuffer payload) {
+    int length = payload.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] utf8 = new byte[length];
+    payload.get(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the latest values of each edited record, merging all the entries for the same record. Edits that were
+   * {@linkplain #replayInto(Dao, IntFunction, BiConsumer) replayed} are left out.
+   * @return The merged values, in the order the records were first edited. The keys are record ids, or, for records
+   * that had never been saved, their draft numbers negated.
+   */
+  public Map<Integer, Map<String, @Nullable String>> getPendingEdits() {
+    Map<Integer, Map<String, @Nullable String>> pending = new LinkedHashMap<>();
+    for (Entry entry : readEntries()) {
+      if (entry.isSaved()) {
+        pending.remove(entry.key);
+      } else {
+        pending.computeIfAbsent(entry.key, k -> new LinkedHashMap<>()).putAll(entry.getValues());
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Replay the pending edits into the Dao, then truncate the journal. This should be called at startup, before the
+   * user starts editing. Each record's edits are marked as saved in the journal as soon as the record is saved. So
+   * if a record fails to save, or the application stops during the replay, the next replay only saves the records
+   * that weren't saved yet, and no new record gets inserted twice.
+   * @param dao The Dao
+   * @param finder Gets the record with the specified id from the database. For an id of zero, or for a record that
+   *               no longer exists, it should return a new, empty record, or null to discard the edits.
+   * @param applier Applies the edited values, by field name, to the record
+   * @param <E> The record type
+   * @return The number of records that were saved
+   * @throws SQLException If a record couldn't be saved
+   * @throws IOException If a saved record couldn't be marked as saved in the journal
+   */
+  public <E> int replayInto(
+      Dao<E, ?, ?> dao,
+      IntFunction<@Nullable E> finder,
+      BiConsumer<? super E, Map<String, @Nullable String>> applier
+  ) throws SQLException, IOException {
+    int count = 0;
+    for (Map.Entry<Integer, Map<String, @Nullable String>> edit : getPendingEdits().entrySet()) {
+      int key = edit.getKey();
+      E record = finder.apply(Math.max(key, 0));
+      if (record != null) {
+        applier.accept(record, edit.getValue());
+        dao.insertOrUpdate(record);
+        count++;
+      }
+      write(key, Collections.emptyMap(), true);
+    }
+    truncate();
+    return count;
+  }
+
+  /**
+   * Discard all the entries. This should be called after the edits have been saved to the database.
+   */
+  public synchronized void truncate() {
+    if (position > HEADER_SIZE) {
+      generation++;
+      buffer.putLong(Integer.BYTES, generation);
+      buffer.putInt(HEADER_SIZE, 0);
+      position = HEADER_SIZE;
+    }
+  }
+
+  /**
+   * Returns true if the journal holds no entries.
+   * @return true if empty, false otherwise
+   */
+  public synchronized boolean isEmpty() {
+    return position == HEADER_SIZE;
+  }
+
+  /**
+   * Force the journal to the storage device. This is only needed to protect the entries from a crash of the
+   * operating system, so it doesn't need to be called for each entry.
+   */
+  public synchronized void force() {
+    buffer.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+}
@@ -0,0 +1,375 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import com.neptunedreams.util.StringStuff;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Searches every Dao registered in an {@link AbstractDaoFactory} at the same time, for a global search box. Each Dao
+ * gets the same time budget, measured from the start of the search. A Dao that hasn't finished when the budget runs
+ * out is left out of the results. The results of each Dao are scored and merged into a single ranked list as they
+ * arrive, so the user can see the first results without waiting for the slowest table.
+ * <p>
+ * Interrupting a thread doesn't stop a JDBC statement, so a table that runs out of time keeps the database busy
+ * until it finishes, unless a {@link CancellableSearchService} is supplied. Then the late table's statements are
+ * cancelled in the database. For that to work, the Daos must get their connections from the service's
+ * {@linkplain CancellableSearchService#getConnectionSource() connection source}.
+ * <p>
+ * The default scorer ranks each record by its position in its own table's results, so the first record of each
+ * table ranks above the second record of any table. Applications may supply a better scorer, such as one that counts
+ * how many search terms a record matches.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 8:30 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class FederatedSearch {
+  private final AbstractDaoFactory daoFactory;
+  private final Executor executor;
+  private final long budgetMillis;
+  private final Scorer scorer;
+  private final @Nullable CancellableSearchService searchService;
+
+  /**
+   * Scores a found record. Higher scores rank first.
+   */
+  @FunctionalInterface
+  public interface Scorer {
+    /**
+     * Score a record
+     * @param entityClass The record's class
+     * @param record The record
+     * @param position The position of the record in its table's results
+     * @param terms The search terms
+     * @return The score
+     */
+    double score(Class<?> entityClass, Object record, int position, String[] terms);
+  }
+
+  /**
+   * A found record
+   * @param <T> The record type
+   */
+  public static final class Hit<T> {
+    private final Class<T> entityClass;
+    private final T record;
+    private final double score;
+
+    Hit(Class<T> entityClass, T record, double score) {
+      this.entityClass = entityClass;
+      this.record = record;
+      this.score = score;
+    }
+
+    /**
+     * @return The class of the record, which identifies its table.
+     */
+    public Class<T> getEntityClass() {
+      return entityClass;
+    }
+
+    /**
+     * @return The record
+     */
+    public T getRecord() {
+      return record;
+    }
+
+    /**
+     * @return The record's score
+     */
+    public double getScore() {
+      return score;
+    }
+  }
+
+  /**
+   * How the search went in one table
+   */
+  public static final class TableReport {
+    private final Class<?> entityClass;
+    private final long elapsedMillis;
+    private final int count;
+    private final boolean timedOut;
+    private final @Nullable Throwable failure;
+
+    TableReport(Class<?> entityClass, long elapsedMillis, int count, boolean timedOut, @Nullable Throwable failure) {
+      this.entityClass = entityClass;
+      this.elapsedMillis = elapsedMillis;
+      this.count = count;
+      this.timedOut = timedOut;
+      this.failure = failure;
+    }
+
+    /**
+     * @return The class of the table's records
+     */
+    public Class<?> getEntityClass() {
+      return entityClass;
+    }
+
+    /**
+     * @return How long the table took to search, or the budget if it timed out.
+     */
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * @return The number of records found
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return true if the table didn't finish within the budget
+     */
+    public boolean isTimedOut() {
+      return timedOut;
+    }
+
+    /**
+     * @return The exception thrown by the table's search, or null if it didn't fail.
+     */
+    public @Nullable Throwable getFailure() {
+      return failure;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d records in %d ms%s", entityClass.getSimpleName(), count, elapsedMillis,
+          timedOut ? " (timed out)" : (failure == null) ? "" : " (failed)");
+    }
+  }
+
+  /**
+   * The results of a search
+   */
+  public static final class Result {
+    private final List<Hit<?>> hits;
+    private final Map<Class<?>, TableReport> reports;
+
+    Result(List<Hit<?>> hits, Map<Class<?>, TableReport> reports) {
+      this.hits = Collections.unmodifiableList(hits);
+      this.reports = Collections.unmodifiableMap(reports);
+    }
+
+    /**
+     * @return The found records, highest score first
+     */
+    public List<Hit<?>> getHits() {
+      return hits;
+    }
+
+    /**
+     * @return A report for each table
+     */
+    public Map<Class<?>, TableReport> getReports() {
+      return reports;
+    }
+  }
+
+  private static final class TableResult {
+    private final Class<?> entityClass;
+    private final List<Hit<?>> hits;
+    private final long elapsedMillis;
+
+    TableResult(Class<?> entityClass, List<Hit<?>> hits, long elapsedMillis) {
+      this.entityClass = entityClass;
+      this.hits = hits;
+      this.elapsedMillis = elapsedMillis;
+    }
+  }
+
+  /**
+   * Create a FederatedSearch, using the default scorer.
+   * @param daoFactory The factory holding the Daos to search
+   * @param executor Runs the search of each table. It should have a thread for each table.
+   * @param budgetMillis The time budget of each table
+   */
+  public FederatedSearch(AbstractDaoFactory daoFactory, Executor executor, long budgetMillis) {
+    this(daoFactory, executor, budgetMillis, (entityClass, record, position, terms) -> 1.0 / (position + 1));
+  }
+
+  /**
+   * Create a FederatedSearch.
+   * @param daoFactory The factory holding the Daos to search
+   * @param executor Runs the search of each table. It should have a thread for each table.
+   * @param budgetMillis The time budget of each table
+   * @param scorer Scores each found record
+   */
+  public FederatedSearch(AbstractDaoFactory daoFactory, Executor executor, long budgetMillis, Scorer scorer) {
+    this(daoFactory, executor, budgetMillis, scorer, null);
+  }
+
+  /**
+   * Create a FederatedSearch that cancels late tables in the database.
+   * @param daoFactory The factory holding the Daos to search
+   * @param executor Runs the search of each table. It should have a thread for each table.
+   * @param budgetMillis The time budget of each table
+   * @param scorer Scores each found record
+   * @param searchService Cancels the statements of tables that run out of time, or null to just stop waiting
+   */
+  public FederatedSearch(
+      AbstractDaoFactory daoFactory,
+      Executor executor,
+      long budgetMillis,
+      Scorer scorer,
+      @Nullable CancellableSearchService searchService
+  ) {
+    this.daoFactory = daoFactory;
+    this.executor = executor;
+    this.budgetMillis = budgetMillis;
+    this.scorer = scorer;
+    this.searchService = searchService;
+  }
+
+  /**
+   * Search every table. This blocks until every table is done, or the budget runs out, so it should not be called
+   * on the event dispatch thread. Empty search text finds nothing, rather than every record of every table.
+   * @param dirtyText The text to find, uncleaned
+   * @param searchOption The search option
+   * @param progress Gets the merged hits so far, each time a table finishes, or null. This is called on the
+   *                 calling thread.
+   * @return The results
+   * @throws InterruptedException If the calling thread is interrupted
+   */
+  public Result search(String dirtyText, SearchOption searchOption, @Nullable Consumer<List<Hit<?>>> progress)
+      throws InterruptedException {
+    String text = dirtyText.trim();
+    List<Class<?>> entityClasses = new ArrayList<>(daoFactory.getRegisteredClasses());
+    if (text.isEmpty()) {
+      Map<Class<?>, TableReport> reports = new LinkedHashMap<>();
+      for (Class<?> entityClass : entityClasses) {
+        reports.put(entityClass, new TableReport(entityClass, 0L, 0, false, null));
+      }
+      return new Result(new ArrayList<>(), reports);
+    }
+    String[] terms = StringStuff.splitText(text);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+
+    CompletionService<TableResult> completionService = new ExecutorCompletionService<>(executor);
+    Map<Future<TableResult>, Class<?>> pending = new LinkedHashMap<>();
+    Map<Class<?>, Object> lanes = new HashMap<>(); // Each table searches in its own lane of the search service.
+    Map<Class<?>, TableReport> reports = new HashMap<>();
+    for (Class<?> entityClass : entityClasses) {
+      Object lane = new Object();
+      lanes.put(entityClass, lane);
+      pending.put(completionService.submit(() -> searchTable(entityClass, text, terms, searchOption, start, lane)),
+          entityClass);
+    }
+
+    List<Hit<?>> merged = new ArrayList<>();
+    Comparator<Hit<?>> byScore = Comparator.comparingDouble((Hit<?> hit) -> hit.score).reversed();
+    while (!pending.isEmpty()) {
+      long remaining = deadline - System.nanoTime();
+      Future<TableResult> done = (remaining > 0L) ? completionService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+      if (done == null) {
+        break; // Out of time
+      }
+      Class<?> entityClass = pending.remove(done);
+      try {
+        TableResult tableResult = done.get();
+        merged = merge(merged, tableResult.hits, byScore);
+        reports.put(entityClass, new TableReport(entityClass, tableResult.elapsedMillis, tableResult.hits.size(),
+            false, null));
+        if (progress != null) {
+          progress.accept(Collections.unmodifiableList(merged));
+        }
+      } catch (ExecutionException e) {
+        reports.put(entityClass, new TableReport(entityClass, elapsedMillis(start), 0, false, e.getCause()));
+      }
+    }
+    for (Map.Entry<Future<TableResult>, Class<?>> timedOut : pending.entrySet()) {
+      timedOut.getKey().cancel(true); // Interrupt first, so a search that hasn't reached the service yet won't start.
+      if (searchService != null) {
+        searchService.cancel(lanes.get(timedOut.getValue()));
+      }
+      reports.put(timedOut.getValue(), new TableReport(timedOut.getValue(), budgetMillis, 0, true, null));
+    }
+    Map<Class<?>, TableReport> orderedReports = new LinkedHashMap<>();
+    for (Class<?> entityClass : entityClasses) {
+      orderedReports.put(entityClass, reports.get(entityClass));
+    }
+    return new Result(merged, orderedReports);
+  }
+
+  private <T> TableResult searchTable(Class<T> entityClass, String text, String[] terms, SearchOption searchOption,
+                                      long start, Object lane) throws SQLException {
+    Dao<T, ?, ?> dao = daoFactory.getDao(entityClass);
+    final Collection<T> found;
+    if (searchService == null) {
+      found = find(dao, text, terms, searchOption);
+    } else {
+      CancellableSearchService.SearchResult<Collection<T>> result = searchService.search(lane, () -> {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new SQLException("Search timed out"); // It was cancelled before the service knew about it.
+        }
+        return find(dao, text, terms, searchOption);
+      });
+      if (result.isSuperseded()) {
+        throw new SQLException("Search timed out"); // Nobody is waiting for this result.
+      }
+      found = result.getResult();
+    }
+    List<Hit<?>> hits = new ArrayList<>(found.size());
+    int position = 0;
+    for (T record : found) {
+      hits.add(new Hit<>(entityClass, record, scorer.score(entityClass, record, position++, terms)));
+    }
+    hits.sort(Comparator.comparingDouble((Hit<?> hit) -> hit.score).reversed());
+    return new TableResult(entityClass, hits, elapsedMillis(start));
+  }
+
+  private static <T> Collection<T> find(Dao<T, ?, ?> dao, String text, String[] terms, SearchOption searchOption)
+      throws SQLException {
+    switch (searchOption) {
+      case findWhole:
+        return dao.find(text, null);
+      case findAll:
+        return dao.findAll(null, terms);
+      case findAny:
+        return dao.findAny(null, terms);
+      default:
+        throw new AssertionError(String.format("Unhandled case: %s", searchOption));
+    }
+  }
+
+  /**
+   * Merge two lists that are already sorted.
+   */
+  private static List<Hit<?>> merge(List<Hit<?>> a, List<Hit<?>> b, Comparator<Hit<?>> order) {
+    List<Hit<?>> merged = new ArrayList<>(a.size() + b.size());
+    int i = 0;
+    int j = 0;
+    while ((i < a.size()) && (j < b.size())) {
+      merged.add((order.compare(a.get(i), b.get(j)) <= 0) ? a.get(i++) : b.get(j++));
+    }
+    merged.addAll(a.subList(i, a.size()));
+    merged.addAll(b.subList(j, b.size()));
+    return merged;
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
@@ -0,0 +1,288 @@
+package com.neptunedreams.framework.data;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Sorts a found set in memory, by one or more fields, so the user can change the order without querying the database
+ * again.
+ * <p>
+ * Text is compared by {@link CollationKey}s, which are built once for each record and field, and kept until the
+ * record changes. The first sort by a field compares these keys, and leaves behind each record's rank in that field.
+ * After that, sorting by the same field only sorts an array of longs, each holding a rank and a position, so
+ * switching among fields that were already used takes milliseconds, even for large found sets. A sort by several
+ * fields sorts once for each field, least significant first. Large found sets are sorted in parallel.
+ * <p>
+ * The sort is stable, so records with the same values in every sort field keep their previous order.
+ * <p>
+ * Keys and ranks are cached by record id. Once a record has been saved, its keys must be discarded with
+ * {@link #invalidate(int)}, since its values may have changed. Records that haven't been saved have an id of zero,
+ * and their keys are never cached, so a found set holding one of them always takes the slower path. When the keys
+ * cached for a field outnumber the records being sorted by more than {@value #SPARE_KEYS}, the keys of records that
+ * aren't in the found set are dropped, so searching again and again doesn't fill the memory with old keys.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 11:20 PM
+ *
+ * @param <R> The record type
+ * @param <F> The field type
+ * @author Miguel Mu\u00f1oz
+ * @see RecordModel#sort(FoundSetSorter, List)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FoundSetSorter<R, F extends DBField> {
+  /** Found sets at least this large are sorted in parallel. */
+  public static final int PARALLEL_THRESHOLD = 1 << 13;
+
+  /** How many keys of records outside the found set may be kept for each field, in case they come back. */
+  public static final int SPARE_KEYS = 1 << 12;
+
+  // Each kind of value sorts in its own band, so values of different kinds are never compared with each other.
+  private static final int NULL_KIND = 0;
+  private static final int NUMBER_KIND = 1;
+  private static final int COMPARABLE_KIND = 2;
+  private static final int TEXT_KIND = 3;
+
+  private static final SortKey NULL_KEY = new SortKey(NULL_KIND, 0L, null); // Sorts before every other key
+
+  private final BiFunction<? super R, ? super F, ? extends @Nullable Object> fieldValue;
+  private final ToIntFunction<? super R> idFunction;
+  private final ThreadLocal<Collator> collator; // Collators aren't thread-safe, so each thread gets its own copy.
+  private final Map<F, Map<Integer, SortKey>> keyCache = new ConcurrentHashMap<>();
+  private final Map<F, IdIndex> rankCache = new ConcurrentHashMap<>(); // Each IdIndex is never changed once cached.
+
+  /**
+   * Create a FoundSetSorter that compares text using the default locale.
+   * @param fieldValue Gets the value of a field from a record
+   * @param idFunction Gets the id of a record, or zero if it hasn't been saved
+   */
+  public FoundSetSorter(
+      BiFunction<? super R, ? super F, ? extends @Nullable Object> fieldValue,
+      ToIntFunction<? super R> idFunction
+  ) {
+    this(fieldValue, idFunction, Collator.getInstance());
+  }
+
+  /**
+   * Create a FoundSetSorter
+   * @param fieldValue Gets the value of a field from a record. Values that are Strings are compared by the collator.
+   *                   Other Comparable values are compared naturally, and any other values are compared as Strings.
+   *                   Null values come first, then whole numbers, then other Comparable values, grouped by class,
+   *                   then text.
+   * @param idFunction Gets the id of a record, or zero if it hasn't been saved
+   * @param textCollator Compares text. It isn't used directly, since each thread uses its own clone.
+   */
+  public FoundSetSorter(
+      BiFunction<? super R, ? super F, ? extends @Nullable Object> fieldValue,
+      ToIntFunction<? super R> idFunction,
+      Collator textCollator
+  ) {
+    this.fieldValue = fieldValue;
+    this.idFunction = idFunction;
+    final Collator prototype = (Collator) textCollator.clone();
+    collator = ThreadLocal.withInitial(() -> (Collator) prototype.clone());
+  }
+
+  /**
+   * Work out the sorted order of the records. The records themselves are not moved.
+   * @param records The records to sort
+   * @param fields The sort fields, most significant first
+   * @return The sorted order, where each element is the index, in {@code records}, of the record at that position.
+   */
+  public int[] sortOrder(List<? extends R> records, List<? extends F> fields) {
+    return sortOrder(records.size(), i -> idFunction.applyAsInt(records.get(i)), records::get, fields);
+  }
+
+  /**
+   * Work out the sorted order of records that may not be loaded yet. Records are only loaded if their ranks in one
+   * of the fields aren't cached.
+   * @param size The number of records
+   * @param idAt Gets the id of the record at an index, without loading it
+   * @param recordAt Gets the record at an index
+   * @param fields The sort fields, most significant first
+   * @return The sorted order, where each element is the index of the record at that position.
+   */
+  int[] sortOrder(int size, IntUnaryOperator idAt, IntFunction<? extends R> recordAt, List<? extends F> fields) {
+    int[] ids = new int[size];
+    int[] order = new int[size];
+    for (int i = 0; i < size; ++i) {
+      ids[i] = idAt.applyAsInt(i);
+      order[i] = i;
+    }
+    // Each pass is stable, so sorting by the least significant field first leaves the records sorted by all of them.
+    long[] packed = new long[size];
+    for (int f = fields.size() - 1; f >= 0; --f) {
+      int[] ranks = getRanks(ids, recordAt, fields.get(f));
+      for (int position = 0; position < size; ++position) {
+        packed[position] = ((long) ranks[order[position]] << Integer.SIZE) | position;
+      }
+      if (size >= PARALLEL_THRESHOLD) {
+        Arrays.parallelSort(packed);
+      } else {
+        Arrays.sort(packed);
+      }
+      int[] next = new int[size];
+      for (int position = 0; position < size; ++position) {
+        next[position] = order[(int) packed[position]];
+      }
+      order = next;
+    }
+    return order;
+  }
+
+  /**
+   * Get the rank of each record in a field. Records with equal values have the same rank.
+   * @return The ranks, in the same order as the ids
+   */
+  private int[] getRanks(int[] ids, IntFunction<? extends R> recordAt, F field) {
+    final int size = ids.length;
+    final int[] ranks = new int[size];
+    IdIndex cachedRanks = rankCache.get(field);
+    if (cachedRanks != null) {
+      int i = 0;
+      while ((i < size) && ((ranks[i] = cachedRanks.get(ids[i])) >= 0)) {
+        i++;
+      }
+      if (i == size) {
+        return ranks;
+      }
+    }
+
+    // Some records haven't been ranked, so rank them all by their keys.
+    final SortKey[] keys = new SortKey[size];
+    IntStream indices = IntStream.range(0, size);
+    ((size >= PARALLEL_THRESHOLD) ? indices.parallel() : indices)
+        .forEach(i -> keys[i] = getKey(recordAt, i, ids[i], field));
+    Map<Integer, SortKey> fieldKeys = keyCache.get(field);
+    if ((fieldKeys != null) && (fieldKeys.size() > (size + SPARE_KEYS))) {
+      IdIndex current = IdIndex.build(size, i -> ids[i]);
+      fieldKeys.keySet().removeIf(id -> current.get(id) < 0);
+    }
+    Integer[] byKey = new Integer[size];
+    for (int i = 0; i < size; ++i) {
+      byKey[i] = i;
+    }
+    if (size >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(byKey, (a, b) -> compareKeys(keys[a], keys[b]));
+    } else {
+      Arrays.sort(byKey, (a, b) -> compareKeys(keys[a], keys[b]));
+    }
+    int rank = 0;
+    boolean cacheable = true;
+    for (int i = 0; i < size; ++i) {
+      int index = byKey[i];
+      if ((i > 0) && (compareKeys(keys[byKey[i - 1]], keys[index]) != 0)) {
+        rank++;
+      }
+      ranks[index] = rank;
+      cacheable &= ids[index] != 0;
+    }
+    if (cacheable) {
+      rankCache.put(field, IdIndex.build(size, i -> ids[i], i -> ranks[i]));
+    }
+    return ranks;
+  }
+
+  private SortKey getKey(IntFunction<? extends R> recordAt, int index, int id, F field) {
+    if (id == 0) {
+      return makeKey(fieldValue.apply(recordAt.apply(index), field));
+    }
+    Map<Integer, SortKey> fieldKeys = keyCache.computeIfAbsent(field, f -> new ConcurrentHashMap<>());
+    SortKey key = fieldKeys.get(id);
+    if (key == null) {
+      key = makeKey(fieldValue.apply(recordAt.apply(index), field));
+      fieldKeys.put(id, key);
+    }
+    return key;
+  }
+
+  @SuppressWarnings("unchecked")
+  private SortKey makeKey(@Nullable Object value) {
+    if (value == null) {
+      return NULL_KEY;
+    }
+    if ((value instanceof Integer) || (value instanceof Long) || (value instanceof Short) || (value instanceof Byte)) {
+      // flip the sign for unsigned order
+      return new SortKey(NUMBER_KIND, ((Number) value).longValue() ^ Long.MIN_VALUE, null);
+    }
+    if ((value instanceof Comparable) && !(value instanceof String)) {
+      return new SortKey(COMPARABLE_KIND, 0L, (Comparable<Object>) value);
+    }
+    CollationKey collationKey = collator.get().getCollationKey(value.toString());
+    byte[] bytes = collationKey.toByteArray();
+    long prefix = 0L;
+    for (int i = 0; i < Long.BYTES; ++i) {
+      prefix = (prefix << 8) | ((i < bytes.length) ? (bytes[i] & 0xFF) : 0);
+    }
+    return new SortKey(TEXT_KIND, prefix, (Comparable<Object>) (Object) collationKey);
+  }
+
+  private static int compareKeys(SortKey a, SortKey b) {
+    if (a == b) {
+      return 0;
+    }
+    if (a.kind != b.kind) {
+      return Integer.compare(a.kind, b.kind);
+    }
+    if (a.prefix != b.prefix) {
+      return Long.compareUnsigned(a.prefix, b.prefix);
+    }
+    if ((a.remainder == null) || (b.remainder == null)) {
+      return 0; // Only keys of the same kind get here, so both remainders are null.
+    }
+    Class<?> aClass = a.remainder.getClass();
+    Class<?> bClass = b.remainder.getClass();
+    if (aClass != bClass) {
+      return aClass.getName().compareTo(bClass.getName());
+    }
+    return a.remainder.compareTo(b.remainder);
+  }
+
+  /**
+   * A normalized sort key. Keys are compared by their kind, then by their prefixes, as unsigned longs, then, if the
+   * prefixes are the same, by their remainders. Whole numbers and nulls have no remainder, so they're fully described
+   * by their prefix. A text key's remainder is its whole CollationKey, since two prefixes can be the same even when
+   * the text is different. Other Comparable values have no prefix, and are compared by class, then by value.
+   */
+  private static final class SortKey {
+    private final int kind;
+    private final long prefix;
+    private final @Nullable Comparable<Object> remainder;
+
+    SortKey(int kind, long prefix, @Nullable Comparable<Object> remainder) {
+      this.kind = kind;
+      this.prefix = prefix;
+      this.remainder = remainder;
+    }
+  }
+
+  /**
+   * Discard the cached keys of a record, after it has changed. Since its ranks are no longer known, the next sort by
+   * each field will compare keys again.
+   * @param id The id of the record
+   */
+  public void invalidate(int id) {
+    for (Map<Integer, SortKey> fieldKeys : keyCache.values()) {
+      fieldKeys.remove(id);
+    }
+    rankCache.clear();
+  }
+
+  /**
+   * Discard all the cached keys.
+   */
+  public void clear() {
+    keyCache.clear();
+    rankCache.clear();
+  }
+}
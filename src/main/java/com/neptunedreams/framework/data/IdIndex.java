@@ -0,0 +1,177 @@
+package com.neptunedreams.framework.data;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An open-addressing hash map from record id to list index, using primitive arrays, so looking up an id doesn't box
+ * anything. It may also map ids to other non-negative values, such as sort ranks. When an id appears more than once,
+ * as with several new records whose ids are all zero, the first index is kept.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 10:15 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+final class IdIndex {
+  private int[] keys;
+  private int[] values; // index + 1, so zero means empty
+  private int size = 0;
+
+  private IdIndex(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+    keys = new int[capacity];
+    values = new int[capacity];
+  }
+
+  private IdIndex(IdIndex source) {
+    keys = source.keys.clone();
+    values = source.values.clone();
+    size = source.size;
+  }
+
+  /**
+   * Build an index of a list
+   * @param size The size of the list
+   * @param idAt Gets the id of the record at an index
+   * @return The index
+   */
+  static IdIndex build(int size, IntUnaryOperator idAt) {
+    return build(size, idAt, IntUnaryOperator.identity());
+  }
+
+  /**
+   * Build an index of some other value of each record in a list
+   * @param size The size of the list
+   * @param idAt Gets the id of the record at an index
+   * @param valueAt Gets the value of the record at an index, which must not be negative
+   * @return The index
+   */
+  static IdIndex build(int size, IntUnaryOperator idAt, IntUnaryOperator valueAt) {
+    IdIndex index = new IdIndex(size);
+    for (int i = 0; i < size; ++i) {
+      index.put(idAt.applyAsInt(i), valueAt.applyAsInt(i));
+    }
+    return index;
+  }
+
+  /**
+   * @return A copy of this index, which may be changed without changing this one.
+   */
+  IdIndex copy() {
+    return new IdIndex(this);
+  }
+
+  /**
+   * Get the index of an id
+   * @param id The id
+   * @return The index, or -1 if the id isn't in the list
+   */
+  int get(int id) {
+    int mask = keys.length - 1;
+    int slot = mix(id) & mask;
+    while (values[slot] != 0) {
+      if (keys[slot] == id) {
+        return values[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Add an id, unless it's already present.
+   * @param id The id
+   * @param index The index of the record
+   */
+  void put(int id, int index) {
+    int mask = keys.length - 1;
+    int slot = mix(id) & mask;
+    while (values[slot] != 0) {
+      if (keys[slot] == id) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = id;
+    values[slot] = index + 1;
+    if (++size * 2 > keys.length) {
+      rehash();
+    }
+  }
+
+  /**
+   * Map an id to an index, replacing the index it had before, if any.
+   * @param id The id
+   * @param index The index of the record
+   */
+  void set(int id, int index) {
+    int mask = keys.length - 1;
+    int slot = mix(id) & mask;
+    while (values[slot] != 0) {
+      if (keys[slot] == id) {
+        values[slot] = index + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    put(id, index);
+  }
+
+  /**
+   * Remove an id, if it's present.
+   * @param id The id
+   */
+  void remove(int id) {
+    int mask = keys.length - 1;
+    int hole = mix(id) & mask;
+    while (keys[hole] != id) {
+      if (values[hole] == 0) {
+        return;
+      }
+      hole = (hole + 1) & mask;
+    }
+    if (values[hole] == 0) {
+      return;
+    }
+    // Shift the later entries of the run back, so none of them is cut off from its home slot by the hole.
+    for (int slot = (hole + 1) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+      int home = mix(keys[slot]) & mask;
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        values[hole] = values[slot];
+        hole = slot;
+      }
+    }
+    values[hole] = 0;
+    size--;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new int[oldValues.length * 2];
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldValues[i] != 0) {
+        int slot = mix(oldKeys[i]) & mask;
+        while (values[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Spread the bits of an id or hash code, so values that differ only in their high bits, or that are all multiples
+   * of some power of two, still land in different slots of a power-of-two table.
+   * @param hash The id or hash code
+   * @return The mixed value
+   */
+  static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
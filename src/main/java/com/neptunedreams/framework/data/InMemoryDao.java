@@ -0,0 +1,498 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A Dao that keeps all its records in memory. This may be used as a fast backend for tests and benchmarks, or as the
+ * real data store for a small data set, where a database would add more latency than it's worth. It's the natural
+ * companion to a DatabaseInfo with an empty home directory.
+ * <p>
+ * The records are held in slots, with the lower-case text of every searchable field, and a primitive map from id to
+ * slot. Writes are serialized, and change the slots in place, so each write takes constant time, and a bulk load
+ * takes one pass. Reads work from an immutable {@code State}, a copy of the table sorted by id, which is built by
+ * the first read after a write, and published through a volatile field. Until the next write, readers share it
+ * without locking, and always see a consistent table. Each State also lazily builds one sorted view for each field
+ * that gets used in an {@code orderBy} argument. These views are discarded with the State on the next write.
+ * <p>
+ * Searches follow the {@link SearchOption} semantics, and are case-insensitive: {@code find()} looks for the whole
+ * text, {@code findAny()} matches a record if any of the words is found, and {@code findAll()} matches only if every
+ * word is found. When searching anywhere, each word may be found in a different field.
+ * <p>
+ * Records are stored by reference. As with a real database, changes to a record are not seen by searches until the
+ * record is saved with {@code update()} or {@code insertOrUpdate()}.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 9:14 AM
+ *
+ * @param <E> The entity type
+ * @param <F> The field type
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public class InMemoryDao<E, F extends DBField> implements Dao<E, Integer, F> {
+  private static final int INITIAL_CAPACITY = 16;
+  private final ToIntFunction<? super E> getIdFunction;
+  private final ObjIntConsumer<? super E> setIdFunction;
+  private final BiFunction<? super E, ? super F, ?> fieldGetter;
+  private final List<F> searchFields;
+  private final Map<F, Integer> fieldIndexMap = new ConcurrentHashMap<>();
+  private final AtomicInteger nextId = new AtomicInteger(1);
+
+  // The table. These are guarded by this.
+  private int[] slotIds = new int[INITIAL_CAPACITY];
+  private Object[] slotRecords = new Object[INITIAL_CAPACITY];
+  private String[][] slotText = new String[INITIAL_CAPACITY][];
+  private int size = 0;
+  private final IdIndex slotIndex = IdIndex.build(0, IntUnaryOperator.identity());
+
+  // A copy of the table for readers, or null if the table changed since the last read.
+  private volatile @Nullable State state = null;
+
+  /**
+   * Construct an InMemoryDao
+   * @param getIdFunction Gets the id of a record. An id of zero means the record hasn't been saved yet.
+   * @param setIdFunction Sets the id of a record
+   * @param fieldGetter Gets the value of a field from a record. Values are searched and sorted using their text.
+   * @param fields All the fields of the record. Fields whose {@code isField()} method returns false are ignored, and
+   *               can't be searched in a single field.
+   */
+  public InMemoryDao(
+      ToIntFunction<? super E> getIdFunction,
+      ObjIntConsumer<? super E> setIdFunction,
+      BiFunction<? super E, ? super F, ?> fieldGetter,
+      Collection<F> fields
+  ) {
+    this.getIdFunction = getIdFunction;
+    this.setIdFunction = setIdFunction;
+    this.fieldGetter = fieldGetter;
+    List<F> fieldList = new ArrayList<>();
+    for (F field : fields) {
+      if (field.isField()) {
+        fieldIndexMap.put(field, fieldList.size());
+        fieldList.add(field);
+      }
+    }
+    searchFields = fieldList;
+  }
+
+  @Override
+  public boolean createTableIfNeeded() {
+    return false;
+  }
+
+  @Override
+  public Collection<@NonNull E> getAll(@Nullable F orderBy) {
+    final State s = snapshot();
+    int[] order = s.getOrder(orderBy);
+    List<@NonNull E> result = new ArrayList<>(order.length);
+    for (int position : order) {
+      result.add(s.recordAt(position));
+    }
+    return result;
+  }
+
+  /**
+   * Get the ids of all the records, without copying any records. Use this with
+   * {@link RecordModel#setNewIds(int[], java.util.function.IntFunction)} and {@link #getById(int)} for a found set
+   * that loads its records as they're needed.
+   * @param orderBy The order of the ids, or null for id order
+   * @return The ids
+   */
+  public int[] getAllIds(@Nullable F orderBy) {
+    final State s = snapshot();
+    int[] order = s.getOrder(orderBy);
+    int[] result = new int[order.length];
+    for (int i = 0; i < order.length; ++i) {
+      result[i] = s.ids[order[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Get a record by its id.
+   * @param id The id
+   * @return The record, or null if there's no record with that id
+   */
+  @SuppressWarnings("unchecked")
+  public @Nullable E getById(int id) {
+    final State s = state;
+    if (s != null) {
+      int position = Arrays.binarySearch(s.ids, id);
+      return (position >= 0) ? s.recordAt(position) : null;
+    }
+    synchronized (this) {
+      int slot = slotIndex.get(id);
+      return (slot >= 0) ? (E) slotRecords[slot] : null;
+    }
+  }
+
+  @Override
+  public Collection<@NonNull E> find(String text, @Nullable F orderBy) {
+    return search(null, orderBy, true, lower(text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAny(@Nullable F orderBy, String... text) {
+    return search(null, orderBy, false, lower(text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAll(@Nullable F orderBy, String... text) {
+    return search(null, orderBy, true, lower(text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findInField(String text, @NonNull F findBy, @Nullable F orderBy) {
+    return search(findBy, orderBy, true, lower(text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAnyInField(@NonNull F findBy, @Nullable F orderBy, String... text) {
+    return search(findBy, orderBy, false, lower(text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAllInField(@NonNull F findBy, @Nullable F orderBy, String... text) {
+    return search(findBy, orderBy, true, lower(text));
+  }
+
+  private Collection<@NonNull E> search(@Nullable F findBy, @Nullable F orderBy, boolean matchAll, String... terms) {
+    final State s = snapshot();
+    final int fieldIndex = (findBy == null) ? -1 : fieldIndex(findBy);
+    int[] order = s.getOrder(orderBy);
+    List<@NonNull E> result = new ArrayList<>();
+    for (int position : order) {
+      if (s.matches(position, fieldIndex, matchAll, terms)) {
+        result.add(s.recordAt(position));
+      }
+    }
+    return result;
+  }
+
+  private int fieldIndex(F field) {
+    Integer index = fieldIndexMap.get(field);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("%s is not a searchable field", field));
+    }
+    return index;
+  }
+
+  private static String[] lower(String... text) {
+    String[] lowerText = new String[text.length];
+    for (int i = 0; i < text.length; ++i) {
+      lowerText[i] = text[i].toLowerCase(Locale.ROOT);
+    }
+    return lowerText;
+  }
+
+  @Override
+  public synchronized void update(E entity) {
+    int id = getIdFunction.applyAsInt(entity);
+    if (id == 0) {
+      id = nextId.getAndIncrement();
+      setIdFunction.accept(entity, id);
+    }
+    store(entity, id);
+  }
+
+  @Override
+  public synchronized void insert(E entity) throws SQLException {
+    int id = getIdFunction.applyAsInt(entity);
+    if (id == 0) {
+      id = nextId.getAndIncrement();
+      setIdFunction.accept(entity, id);
+    } else if (slotIndex.get(id) >= 0) {
+      throw new SQLException(String.format("Duplicate primary key: %d", id));
+    }
+    store(entity, id);
+  }
+
+  @Override
+  public synchronized void insertOrUpdate(E entity) {
+    update(entity);
+  }
+
+  @Override
+  public synchronized void delete(E entity) {
+    remove(getIdFunction.applyAsInt(entity));
+  }
+
+  /**
+   * Delete several entities. Entities that aren't in the table are ignored.
+   * @param entities The entities to delete
+   */
+  @Override
+  public synchronized void deleteAll(Collection<? extends E> entities) {
+    for (E entity : entities) {
+      remove(getIdFunction.applyAsInt(entity));
+    }
+  }
+
+  /**
+   * Update several entities. Entities that haven't been saved are inserted.
+   * @param entities The entities to update
+   */
+  @Override
+  public synchronized void updateAll(Collection<? extends E> entities) {
+    storeAll(entities);
+  }
+
+  /**
+   * Insert several entities. If any of them has the id of an existing record, or of another entity in the
+   * collection, none of them are inserted.
+   * @param entities The entities to insert
+   * @throws SQLException If any of the entities has a duplicate id
+   */
+  @Override
+  public synchronized void insertAll(Collection<? extends E> entities) throws SQLException {
+    Set<Integer> batchIds = new HashSet<>();
+    for (E entity : entities) {
+      int id = getIdFunction.applyAsInt(entity);
+      if ((id != 0) && ((slotIndex.get(id) >= 0) || !batchIds.add(id))) {
+        throw new SQLException(String.format("Duplicate primary key: %d", id));
+      }
+    }
+    storeAll(entities);
+  }
+
+  /**
+   * Store several entities. Entities that haven't been saved get new ids. If two entities have the same id, the
+   * later one is kept.
+   */
+  private void storeAll(Collection<? extends E> entities) {
+    for (E entity : entities) {
+      nextId.accumulateAndGet(getIdFunction.applyAsInt(entity) + 1, Math::max); // Don't hand out an id in use.
+    }
+    for (E entity : entities) {
+      int id = getIdFunction.applyAsInt(entity);
+      if (id == 0) {
+        id = nextId.getAndIncrement();
+        setIdFunction.accept(entity, id);
+      }
+      store(entity, id);
+    }
+  }
+
+  private void store(E entity, int id) {
+    nextId.accumulateAndGet(id + 1, Math::max);
+    int slot = slotIndex.get(id);
+    if (slot < 0) {
+      if (size == slotIds.length) {
+        int capacity = size * 2;
+        slotIds = Arrays.copyOf(slotIds, capacity);
+        slotRecords = Arrays.copyOf(slotRecords, capacity);
+        slotText = Arrays.copyOf(slotText, capacity);
+      }
+      slot = size++;
+      slotIds[slot] = id;
+      slotIndex.set(id, slot);
+    }
+    slotRecords[slot] = entity;
+    slotText[slot] = extractText(entity);
+    state = null;
+  }
+
+  /**
+   * Remove a record, and fill its slot with the last one.
+   */
+  private void remove(int id) {
+    int slot = slotIndex.get(id);
+    if (slot < 0) {
+      return;
+    }
+    int last = --size;
+    if (slot != last) {
+      slotIds[slot] = slotIds[last];
+      slotRecords[slot] = slotRecords[last];
+      slotText[slot] = slotText[last];
+      slotIndex.set(slotIds[slot], slot);
+    }
+    slotRecords[last] = null;
+    slotText[last] = null;
+    slotIndex.remove(id);
+    state = null;
+  }
+
+  /**
+   * Get the State for reading, copying the table if it changed since the last read.
+   */
+  private State snapshot() {
+    State s = state;
+    if (s == null) {
+      synchronized (this) {
+        s = state;
+        if (s == null) {
+          s = copyTable();
+          state = s;
+        }
+      }
+    }
+    return s;
+  }
+
+  private State copyTable() {
+    // Sort the slots by id, with each slot number in the low bits.
+    long[] sorted = new long[size];
+    for (int slot = 0; slot < size; ++slot) {
+      sorted[slot] = ((long) slotIds[slot] << Integer.SIZE) | slot;
+    }
+    Arrays.sort(sorted);
+    int[] ids = new int[size];
+    Object[] records = new Object[size];
+    String[][] text = new String[size][];
+    for (int position = 0; position < size; ++position) {
+      int slot = (int) sorted[position];
+      ids[position] = slotIds[slot];
+      records[position] = slotRecords[slot];
+      text[position] = slotText[slot];
+    }
+    return new State(ids, records, text);
+  }
+
+  private String[] extractText(E entity) {
+    String[] text = new String[searchFields.size()];
+    for (int i = 0; i < text.length; ++i) {
+      Object value = fieldGetter.apply(entity, searchFields.get(i));
+      text[i] = (value == null) ? "" : value.toString().toLowerCase(Locale.ROOT);
+    }
+    return text;
+  }
+
+  @Override
+  public Integer getNextId() {
+    return nextId.get();
+  }
+
+  @Override
+  public Integer getPrimaryKey(E entity) {
+    return getIdFunction.applyAsInt(entity);
+  }
+
+  @Override
+  public synchronized int getTotal() {
+    return size;
+  }
+
+  @Override
+  public void setPrimaryKey(E entity, Integer primaryKey) {
+    setIdFunction.accept(entity, primaryKey);
+  }
+
+  /**
+   * An immutable snapshot of the table. The only mutable part is the cache of sorted views, which is safe to share
+   * because each view is a pure function of the snapshot.
+   */
+  private final class State {
+    private final int[] ids;
+    private final Object[] records;
+    private final String[][] text;
+    private final Map<F, int[]> orderViews = new ConcurrentHashMap<>();
+    private final int[] idOrder;
+
+    State(int[] ids, Object[] records, String[][] text) {
+      this.ids = ids;
+      this.records = records;
+      this.text = text;
+      idOrder = new int[ids.length];
+      for (int i = 0; i < idOrder.length; ++i) {
+        idOrder[i] = i;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull E recordAt(int position) {
+      return (@NonNull E) records[position];
+    }
+
+    /**
+     * Returns the positions of the records, in the specified order. Ties, and the null order, are sorted by id.
+     * @param orderBy The field to sort by, which may be null
+     * @return An array of record positions. This must not be modified by the caller.
+     */
+    int[] getOrder(@Nullable F orderBy) {
+      if ((orderBy == null) || !orderBy.isField()) {
+        return idOrder;
+      }
+      return orderViews.computeIfAbsent(orderBy, this::buildOrder);
+    }
+
+    private int[] buildOrder(F orderBy) {
+      final int length = ids.length;
+      Object[] keys = new Object[length];
+      Integer[] positions = new Integer[length];
+      for (int i = 0; i < length; ++i) {
+        keys[i] = fieldGetter.apply(recordAt(i), orderBy);
+        positions[i] = i;
+      }
+      // positions start in id order, and the sort is stable, so ties remain in id order.
+      Comparator<Integer> comparator = (a, b) -> compareValues(keys[a], keys[b]);
+      Arrays.sort(positions, comparator);
+      int[] order = new int[length];
+      for (int i = 0; i < length; ++i) {
+        order[i] = positions[i];
+      }
+      return order;
+    }
+
+    boolean matches(int position, int fieldIndex, boolean matchAll, String... terms) {
+      String[] recordText = text[position];
+      for (String term : terms) {
+        boolean found = (fieldIndex >= 0) ? recordText[fieldIndex].contains(term) : containsAnywhere(recordText, term);
+        if (found != matchAll) {
+          return found; // found with findAny, or missing with findAll
+        }
+      }
+      return matchAll;
+    }
+
+    private boolean containsAnywhere(String[] recordText, String term) {
+      for (String fieldText : recordText) {
+        if (fieldText.contains(term)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes", "ChainOfInstanceofChecks"})
+  private static int compareValues(@Nullable Object a, @Nullable Object b) {
+    if (a == b) {
+      return 0;
+    }
+    if (a == null) {
+      return -1;
+    }
+    if (b == null) {
+      return 1;
+    }
+    // Values of different types are sorted by type, so the order stays consistent when a field holds mixed types.
+    if (a.getClass() != b.getClass()) {
+      return a.getClass().getName().compareTo(b.getClass().getName());
+    }
+    if (a instanceof String) {
+      return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+    }
+    if (a instanceof Comparable) {
+      return ((Comparable) a).compareTo(b);
+    }
+    return String.CASE_INSENSITIVE_ORDER.compare(a.toString(), b.toString());
+  }
+}
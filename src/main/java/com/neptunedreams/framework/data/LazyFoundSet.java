@@ -0,0 +1,263 @@
+package com.neptunedreams.framework.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A found set that holds only the ids of the found records, and loads each record when it's first needed. The most
+ * recently used records are kept in a small cache, so moving back and forth among neighboring records doesn't reload
+ * them. A found set of a million records costs four megabytes for its ids, instead of a million records.
+ * <p>
+ * Records added to the list, such as new blank records, have no id yet, so they're held in memory until they're
+ * removed. They always follow the found records.
+ * <p>
+ * A LazyFoundSet may be read from several threads at once, but changing it is not thread-safe. To change a found
+ * set that other threads may be reading, change a {@linkplain #LazyFoundSet(LazyFoundSet) copy}, which shares the
+ * same cache.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 9:45 PM
+ *
+ * @param <R> The record type
+ * @author Miguel Mu\u00f1oz
+ * @see RecordModel#setNewIds(int[], IntFunction)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LazyFoundSet<R> extends AbstractList<@NonNull R> implements RandomAccess {
+  /** The default number of loaded records to keep */
+  public static final int DEFAULT_CACHE_SIZE = 64;
+
+  private int[] ids;
+  private int idCount;
+  private final List<@NonNull R> appended = new ArrayList<>();
+  private final IntFunction<? extends @Nullable R> loader;
+  private final Supplier<? extends @NonNull R> missingRecord;
+  private final ToIntFunction<? super R> idFunction;
+  private final Map<Integer, @NonNull R> cache; // guarded by itself, since copies share it.
+
+  /**
+   * Create a LazyFoundSet
+   * @param ids The ids of the found records, in order. The array is not copied, and must not be changed.
+   * @param loader Loads the record with the specified id. It returns null if the record no longer exists.
+   * @param missingRecord Supplies a blank record to show in place of a record that no longer exists
+   * @param idFunction Gets the id of a record
+   * @param cacheSize The number of loaded records to keep
+   */
+  public LazyFoundSet(
+      int[] ids,
+      IntFunction<? extends @Nullable R> loader,
+      Supplier<? extends @NonNull R> missingRecord,
+      ToIntFunction<? super R> idFunction,
+      int cacheSize
+  ) {
+    this.ids = ids;
+    idCount = ids.length;
+    this.loader = loader;
+    this.missingRecord = missingRecord;
+    this.idFunction = idFunction;
+    final int maxSize = Math.max(cacheSize, 1);
+    cache = new LinkedHashMap<Integer, @NonNull R>(16, 0.75f, true) {
+      private static final long serialVersionUID = 4134578420913870421L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, @NonNull R> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Create a copy of a LazyFoundSet, which shares its loader and its cache. Changing the copy doesn't change the
+   * source.
+   * @param source The LazyFoundSet to copy
+   */
+  public LazyFoundSet(LazyFoundSet<R> source) {
+    ids = source.ids; // Never changed in place, so it may be shared.
+    idCount = source.idCount;
+    appended.addAll(source.appended);
+    loader = source.loader;
+    missingRecord = source.missingRecord;
+    idFunction = source.idFunction;
+    cache = source.cache;
+  }
+
+  @Override
+  public @NonNull R get(int index) {
+    if (index >= idCount) {
+      return appended.get(index - idCount);
+    }
+    if (index < 0) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    int id = ids[index];
+    @Nullable R record;
+    synchronized (cache) {
+      record = cache.get(id);
+    }
+    if (record == null) {
+      // Load outside the lock, so a slow load doesn't hold up other threads. Two threads may load the same record.
+      record = loader.apply(id);
+      if (record == null) {
+        record = missingRecord.get();
+      }
+      synchronized (cache) {
+        cache.put(id, record);
+      }
+    }
+    return record;
+  }
+
+  /**
+   * Get the id of a record without loading it.
+   * @param index The index of the record
+   * @return The id
+   */
+  public int getId(int index) {
+    if (index >= idCount) {
+      return idFunction.applyAsInt(appended.get(index - idCount));
+    }
+    if (index < 0) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return ids[index];
+  }
+
+  /**
+   * Find a record by its id, without loading any records.
+   * @param id The id
+   * @return The index of the record, or -1 if it's not in the found set.
+   */
+  public int indexOfId(int id) {
+    for (int i = 0; i < idCount; ++i) {
+      if (ids[i] == id) {
+        return i;
+      }
+    }
+    for (int i = 0; i < appended.size(); ++i) {
+      if (idFunction.applyAsInt(appended.get(i)) == id) {
+        return idCount + i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return true if the record at the index is already loaded
+   * @param index The index of the record
+   */
+  public boolean isLoaded(int index) {
+    if (index >= idCount) {
+      return true;
+    }
+    synchronized (cache) {
+      return cache.containsKey(ids[index]);
+    }
+  }
+
+  /**
+   * Get a record only if it's already loaded.
+   * @param index The index of the record
+   * @return The record, or null if it isn't loaded
+   */
+  public @Nullable R getIfLoaded(int index) {
+    if (index >= idCount) {
+      return appended.get(index - idCount);
+    }
+    if (index < 0) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    synchronized (cache) {
+      return cache.get(ids[index]);
+    }
+  }
+
+  /**
+   * @return The number of records that are loaded by id. Records that were added to the list follow these.
+   */
+  int getIdCount() {
+    return idCount;
+  }
+
+  /**
+   * Create a copy with the records loaded by id in a different order. Added records stay at the end.
+   * @param order The new order, where each element is the index of the record at that position. It holds each index
+   *              below {@link #getIdCount()} exactly once.
+   * @return The reordered copy, which shares this list's cache
+   */
+  LazyFoundSet<R> reorder(int[] order) {
+    LazyFoundSet<R> copy = new LazyFoundSet<>(this);
+    int[] reordered = new int[idCount];
+    for (int i = 0; i < idCount; ++i) {
+      reordered[i] = ids[order[i]];
+    }
+    copy.ids = reordered;
+    return copy;
+  }
+
+  /**
+   * Create a copy without the specified records, in one pass.
+   * @param removed The indexes of the records to leave out
+   * @return The copy, which shares this list's cache
+   */
+  LazyFoundSet<R> without(BitSet removed) {
+    LazyFoundSet<R> copy = new LazyFoundSet<>(this);
+    int[] remaining = new int[idCount - removed.get(0, idCount).cardinality()];
+    int next = 0;
+    for (int i = removed.nextClearBit(0); i < idCount; i = removed.nextClearBit(i + 1)) {
+      remaining[next++] = ids[i];
+    }
+    copy.ids = remaining;
+    copy.idCount = remaining.length;
+    copy.appended.clear();
+    for (int i = 0; i < appended.size(); ++i) {
+      if (!removed.get(idCount + i)) {
+        copy.appended.add(appended.get(i));
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  public int size() {
+    return idCount + appended.size();
+  }
+
+  /**
+   * Adds a record to the end of the list. The record is held in memory until it's removed.
+   * @param record The record
+   * @return true
+   */
+  @Override
+  public boolean add(@NonNull R record) {
+    appended.add(record);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public @NonNull R remove(int index) {
+    if (index >= idCount) {
+      modCount++;
+      return appended.remove(index - idCount);
+    }
+    R record = get(index);
+    // The array may be shared by the caller or by copies, so it's never changed in place.
+    int[] remaining = new int[idCount - 1];
+    System.arraycopy(ids, 0, remaining, 0, index);
+    System.arraycopy(ids, index + 1, remaining, index, idCount - index - 1);
+    ids = remaining;
+    idCount--;
+    modCount++;
+    return record;
+  }
+}
@@ -0,0 +1,36 @@
+package com.neptunedreams.framework.data;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Converts a record to and from a row of String values, one per column. This lets records get written to, and read
+ * from, a file or other stream without knowing anything about the record class. A null value is distinct from an
+ * empty String.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 11:05 AM
+ *
+ * @param <E> The record type
+ * @author Miguel Mu\u00f1oz
+ */
+public interface RecordCodec<E> {
+  /**
+   * Gets the names of the columns. The length of this array determines the length of every row.
+   * @return The column names, in order
+   */
+  String[] getColumnNames();
+
+  /**
+   * Write the values of the record into the row. The row may be reused for the next record.
+   * @param record The record
+   * @param row The row to fill, with one element for each column.
+   */
+  void flatten(E record, @Nullable String[] row);
+
+  /**
+   * Build a new record from a row of values. The row may be reused after this returns.
+   * @param row The row, with one element for each column.
+   * @return The new record
+   */
+  E restore(@Nullable String[] row);
+}
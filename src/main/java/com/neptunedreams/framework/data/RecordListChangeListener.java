@@ -0,0 +1,44 @@
+package com.neptunedreams.framework.data;
+
+/**
+ * A RecordModelListener that gets told exactly which records changed when a new found set replaces the old one, so
+ * it can update itself instead of rebuilding from scratch. When {@link RecordModel#setNewList(java.util.Collection)}
+ * can match the records of the old and new found sets by id, these listeners get a sequence of range events instead
+ * of {@link #modelListChanged(int)}. Each event's indices apply to the list as it stands after the previous events,
+ * the same way as with a {@link javax.swing.event.ListDataListener}. Ranges are inclusive. When the records can't be
+ * matched, such as when ids are repeated, the listener just gets {@code modelListChanged()}.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 10:40 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public interface RecordListChangeListener extends RecordModelListener {
+  /**
+   * Records were inserted
+   * @param first The index of the first inserted record
+   * @param last The index of the last inserted record
+   */
+  void recordsInserted(int first, int last);
+
+  /**
+   * Records were removed
+   * @param first The index of the first removed record
+   * @param last The index of the last removed record
+   */
+  void recordsRemoved(int first, int last);
+
+  /**
+   * A record was moved. This is the same as removing it from one index, then inserting it at another.
+   * @param from The index of the record before it moved
+   * @param to The index of the record after it moved
+   */
+  void recordMoved(int from, int to);
+
+  /**
+   * Records kept their places, but their contents changed.
+   * @param first The index of the first changed record
+   * @param last The index of the last changed record
+   */
+  void recordsChanged(int first, int last);
+}
@@ -0,0 +1,288 @@
+package com.neptunedreams.framework.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The differences between two found sets, as a sequence of range events, matching records by id. The common prefix
+ * and suffix are skipped first, so appending records or changing a few records costs a single pass. In the rest of
+ * the list, records whose ids are only in the old list are removed, and records whose ids are only in the new list
+ * are inserted. The records in both lists are the same ids in a different order, so the longest common subsequence
+ * is the longest increasing subsequence of their new positions, which takes O(n log n) time. Those records stay in
+ * place, and all the others are moved. Finally, records in both lists are compared, and any that differ are reported
+ * as changed.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 10:50 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+final class RecordListDiff {
+  private static final int INSERTED = 0;
+  private static final int REMOVED = 1;
+  private static final int MOVED = 2;
+  private static final int CHANGED = 3;
+
+  /** Beyond this many moves, a full refresh is cheaper for the listeners. */
+  private static final int MAX_MOVES = 256;
+
+  private int[] events = new int[48]; // triples of type, first, last
+  private int eventCount = 0;
+
+  private RecordListDiff() { }
+
+  /**
+   * Compute the differences between two lists
+   * @param oldList The old list
+   * @param newList The new list
+   * @param idFunction Gets the id of a record
+   * @param sameContent Decides if the old and new versions of a record are the same
+   * @param <R> The record type
+   * @return The differences, or null if the ids are repeated, or if there are too many moves.
+   */
+  static <R> @Nullable RecordListDiff compute(
+      List<? extends R> oldList,
+      List<? extends R> newList,
+      ToIntFunction<? super R> idFunction,
+      BiPredicate<? super R, ? super R> sameContent
+  ) {
+    final int oldSize = oldList.size();
+    final int newSize = newList.size();
+    int[] oldIds = ids(oldList, idFunction);
+    int[] newIds = ids(newList, idFunction);
+
+    int prefix = 0;
+    int shorter = Math.min(oldSize, newSize);
+    while ((prefix < shorter) && (oldIds[prefix] == newIds[prefix])) {
+      prefix++;
+    }
+    int suffix = 0;
+    while ((suffix < (shorter - prefix)) && (oldIds[oldSize - 1 - suffix] == newIds[newSize - 1 - suffix])) {
+      suffix++;
+    }
+    final int oldEnd = oldSize - suffix;
+    final int newEnd = newSize - suffix;
+    final int start = prefix;
+
+    // Index the middle of each list, by id.
+    IdIndex oldIndex = IdIndex.build(oldEnd - prefix, i -> oldIds[start + i]);
+    IdIndex newIndex = IdIndex.build(newEnd - prefix, i -> newIds[start + i]);
+    if (hasDuplicates(oldIds, prefix, oldEnd, oldIndex) || hasDuplicates(newIds, prefix, newEnd, newIndex)) {
+      return null;
+    }
+
+    RecordListDiff diff = new RecordListDiff();
+
+    // Removals, from the end, so the earlier indices stay valid.
+    int[] current = new int[oldEnd - prefix];
+    int currentSize = 0;
+    int rangeEnd = -1;
+    for (int i = oldEnd - 1; i >= prefix; --i) {
+      if (newIndex.get(oldIds[i]) < 0) {
+        if (rangeEnd < 0) {
+          rangeEnd = i;
+        }
+      } else if (rangeEnd >= 0) {
+        diff.add(REMOVED, i + 1, rangeEnd);
+        rangeEnd = -1;
+      }
+    }
+    if (rangeEnd >= 0) {
+      diff.add(REMOVED, prefix, rangeEnd);
+    }
+    for (int i = prefix; i < oldEnd; ++i) {
+      if (newIndex.get(oldIds[i]) >= 0) {
+        current[currentSize++] = oldIds[i];
+      }
+    }
+
+    // Moves. The target is the new order of the records that are in both lists.
+    int[] target = new int[currentSize];
+    int targetSize = 0;
+    for (int j = prefix; j < newEnd; ++j) {
+      if (oldIndex.get(newIds[j]) >= 0) {
+        target[targetSize++] = newIds[j];
+      }
+    }
+    IdIndex targetIndex = IdIndex.build(targetSize, t -> target[t]);
+    boolean[] stays = longestIncreasingSubsequence(current, currentSize, targetIndex, targetSize);
+    int moveCount = 0;
+    for (boolean stay : stays) {
+      if (!stay) {
+        moveCount++;
+      }
+    }
+    if (moveCount > MAX_MOVES) {
+      return null;
+    }
+    if (moveCount > 0) {
+      // Place each moving record right after the record that precedes it in the target. Going in target order, that
+      // record is always in its final relative position already.
+      for (int t = 0; t < targetSize; ++t) {
+        if (!stays[t]) {
+          int from = indexOf(current, currentSize, target[t]);
+          System.arraycopy(current, from + 1, current, from, currentSize - from - 1);
+          int to = (t == 0) ? 0 : (indexOf(current, currentSize - 1, target[t - 1]) + 1);
+          System.arraycopy(current, to, current, to + 1, currentSize - to - 1);
+          current[to] = target[t];
+          if (from != to) {
+            diff.add(MOVED, prefix + from, prefix + to);
+          }
+        }
+      }
+    }
+
+    // Insertions, from the start, at their final indices.
+    int rangeStart = -1;
+    for (int j = prefix; j < newEnd; ++j) {
+      if (oldIndex.get(newIds[j]) < 0) {
+        if (rangeStart < 0) {
+          rangeStart = j;
+        }
+      } else if (rangeStart >= 0) {
+        diff.add(INSERTED, rangeStart, j - 1);
+        rangeStart = -1;
+      }
+    }
+    if (rangeStart >= 0) {
+      diff.add(INSERTED, rangeStart, newEnd - 1);
+    }
+
+    // Changes
+    rangeStart = -1;
+    for (int j = 0; j < newSize; ++j) {
+      int oldPosition;
+      if (j < prefix) {
+        oldPosition = j;
+      } else if (j >= newEnd) {
+        oldPosition = j - newSize + oldSize;
+      } else {
+        int middle = oldIndex.get(newIds[j]);
+        oldPosition = (middle < 0) ? -1 : (prefix + middle);
+      }
+      boolean changed = (oldPosition >= 0) && !sameContent.test(oldList.get(oldPosition), newList.get(j));
+      if (changed) {
+        if (rangeStart < 0) {
+          rangeStart = j;
+        }
+      } else if (rangeStart >= 0) {
+        diff.add(CHANGED, rangeStart, j - 1);
+        rangeStart = -1;
+      }
+    }
+    if (rangeStart >= 0) {
+      diff.add(CHANGED, rangeStart, newSize - 1);
+    }
+    return diff;
+  }
+
+  private static <R> int[] ids(List<? extends R> list, ToIntFunction<? super R> idFunction) {
+    int[] ids = new int[list.size()];
+    int i = 0;
+    for (R record : list) {
+      ids[i++] = idFunction.applyAsInt(record);
+    }
+    return ids;
+  }
+
+  private static boolean hasDuplicates(int[] ids, int start, int end, IdIndex index) {
+    for (int i = start; i < end; ++i) {
+      if (index.get(ids[i]) != (i - start)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the records that can stay in place.
+   * @return A flag for each target position, which is true if the record at that position stays in place.
+   */
+  private static boolean[] longestIncreasingSubsequence(int[] current, int size, IdIndex targetIndex,
+                                                        int targetSize) {
+    int[] positions = new int[size];
+    for (int i = 0; i < size; ++i) {
+      positions[i] = targetIndex.get(current[i]);
+    }
+    int[] tails = new int[size]; // index into positions of the smallest tail of each length
+    int[] previous = new int[size];
+    int length = 0;
+    for (int i = 0; i < size; ++i) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (positions[tails[mid]] < positions[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = (low > 0) ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    boolean[] stays = new boolean[targetSize];
+    for (int i = (length > 0) ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      stays[positions[i]] = true;
+    }
+    return stays;
+  }
+
+  private static int indexOf(int[] array, int size, int value) {
+    for (int i = 0; i < size; ++i) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    throw new IllegalStateException(String.valueOf(value));
+  }
+
+  private void add(int type, int first, int last) {
+    if (eventCount + 3 > events.length) {
+      events = Arrays.copyOf(events, events.length * 2);
+    }
+    events[eventCount++] = type;
+    events[eventCount++] = first;
+    events[eventCount++] = last;
+  }
+
+  /**
+   * @return true if the lists are the same
+   */
+  boolean isEmpty() {
+    return eventCount == 0;
+  }
+
+  /**
+   * Send the events to a listener
+   * @param listener The listener
+   */
+  void dispatch(RecordListChangeListener listener) {
+    for (int i = 0; i < eventCount; i += 3) {
+      int first = events[i + 1];
+      int last = events[i + 2];
+      switch (events[i]) {
+        case INSERTED:
+          listener.recordsInserted(first, last);
+          break;
+        case REMOVED:
+          listener.recordsRemoved(first, last);
+          break;
+        case MOVED:
+          listener.recordMoved(first, last);
+          break;
+        case CHANGED:
+          listener.recordsChanged(first, last);
+          break;
+        default:
+          throw new AssertionError(events[i]);
+      }
+    }
+  }
+}
@@ -1,15 +1,49 @@
 package com.neptunedreams.framework.data;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import javax.swing.SwingUtilities;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
+ * Holds the found set, and the index of the current record. The found set and the index are held together in an
+ * immutable {@link Snapshot}, which is replaced atomically whenever either one changes, so any thread may read a
+ * consistent view of the model without locking, and a background search may install its results directly.
+ * Changes are serialized, and the found set is copied on each change, so a snapshot never changes after it's
+ * published.
+ * <p>
+ * Listeners are always notified on the event dispatch thread, in the order of the changes. Each change queues its
+ * notifications while it still holds the lock, so changes made on different threads can't be reported out of order.
+ * A change made on the event dispatch thread notifies the listeners before it returns, after delivering any
+ * notifications of earlier changes from other threads that are still waiting. By the time a listener is notified,
+ * later changes may already have been made, so listeners should read the model's current state rather than assume
+ * the state that matches the event. A change made by a listener, while it's being notified, is reported after the
+ * listeners have all heard about the change that's being reported.
+ * <p>
+ * A serialized model holds its found set, current record and selection, but not its listeners or its
+ * {@linkplain #setContentEquality(BiPredicate) content equality}, which goes back to the default. The record
+ * constructor and id function must be serializable. A found set of ids is loaded in full when it's serialized.
  * <p>Created by IntelliJ IDEA.
  * <p>Date: 10/29/17
  * <p>Time: 3:27 PM
@@ -18,25 +52,164 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class RecordModel<R> implements Serializable {
-  private final transient List<RecordModelListener> listenerList = new LinkedList<>();
+  private static final long serialVersionUID = 6212950378734018537L;
 
-  // foundItems should be a RandomAccess list
-  private List<@NonNull R> foundItems = new ArrayList<>();
-  private int recordIndex = 0;
+  // These are rebuilt by readObject().
+  private transient List<RecordModelListener> listenerList = new CopyOnWriteArrayList<>();
+  private transient Queue<List<Runnable>> notifications = new ConcurrentLinkedQueue<>(); // in change order
+  private transient boolean delivering = false; // Only used on the event dispatch thread
+
+  // The records in each snapshot should be a RandomAccess list
+  private transient AtomicReference<Snapshot<R>> state = new AtomicReference<>(new Snapshot<>(new ArrayList<>(), 0));
   private final Supplier<@NonNull R> constructor;
-  private @NonNull Function<R, Integer> getIdFunction;
-  private boolean isDirectionForward = true;
+  private final @NonNull ToIntFunction<? super R> idFunction;
+  private volatile boolean isDirectionForward = true;
+  private transient volatile BiPredicate<? super R, ? super R> contentEquality = Objects::equals;
+
+  /**
+   * An immutable view of the model: the found set, the index of the current record, and the selected records.
+   * @param <R> The record type
+   */
+  public static final class Snapshot<R> {
+    private final List<@NonNull R> records;
+    private final int recordIndex;
+    private final BitSet selection; // never changed once published
+    private volatile @Nullable IdIndex idIndex; // built when needed. It depends only on the records.
+
+    Snapshot(List<@NonNull R> records, int recordIndex) {
+      this(records, recordIndex, null, new BitSet());
+    }
+
+    private Snapshot(List<@NonNull R> records, int recordIndex, @Nullable IdIndex idIndex, BitSet selection) {
+      this.records = records;
+      this.recordIndex = recordIndex;
+      this.idIndex = idIndex;
+      this.selection = selection;
+    }
+
+    Snapshot<R> withRecordIndex(int index) {
+      return new Snapshot<>(records, index, idIndex, selection);
+    }
+
+    Snapshot<R> withSelection(BitSet newSelection) {
+      return new Snapshot<>(records, recordIndex, idIndex, newSelection);
+    }
+
+    /**
+     * @param index The index of a record
+     * @return true if the record is selected
+     */
+    public boolean isSelected(int index) {
+      return selection.get(index);
+    }
+
+    /**
+     * @return The number of selected records
+     */
+    public int getSelectionCount() {
+      return selection.cardinality();
+    }
+
+    /**
+     * @return The indexes of the selected records. Changing this doesn't change the selection.
+     */
+    public BitSet getSelection() {
+      return (BitSet) selection.clone();
+    }
+
+    /**
+     * @return The found records. This list may not be modified.
+     */
+    public List<@NonNull R> getRecords() {
+      return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * @return The found records, unwrapped, so callers in this package can recognize a {@link LazyFoundSet}. This
+     * list must not be modified.
+     */
+    List<@NonNull R> getRecordList() {
+      return records;
+    }
+
+    /**
+     * @return The index of the current record
+     */
+    public int getRecordIndex() {
+      return recordIndex;
+    }
+
+    /**
+     * @return The number of found records
+     */
+    public int getSize() {
+      return records.size();
+    }
+
+    /**
+     * @return The current record
+     * @throws IndexOutOfBoundsException if the found set is empty, which only happens before the first search.
+     */
+    public @NonNull R getCurrentRecord() {
+      return records.get(recordIndex);
+    }
+  }
 
   public RecordModel(Supplier<@NonNull R> theConstructor, @NonNull Function<R, Integer> getIdFunction) {
+    this(theConstructor, new BoxedIdFunction<>(getIdFunction));
+  }
+
+  /**
+   * Unboxes the ids from a Function. This is a class, rather than a lambda, so it's serializable if the Function is.
+   * @param <R> The record type
+   */
+  private static final class BoxedIdFunction<R> implements ToIntFunction<R>, Serializable {
+    private static final long serialVersionUID = -3526480117735151923L;
+    private final Function<R, Integer> getIdFunction;
+
+    BoxedIdFunction(Function<R, Integer> getIdFunction) {
+      this.getIdFunction = getIdFunction;
+    }
+
+    @Override
+    public int applyAsInt(R record) {
+      Integer id = getIdFunction.apply(record);
+      return (id == null) ? 0 : id;
+    }
+  }
+
+  private RecordModel(Supplier<@NonNull R> theConstructor, @NonNull ToIntFunction<? super R> idFunction) {
     constructor = theConstructor;
-    this.getIdFunction = getIdFunction; 
+    this.idFunction = idFunction;
+  }
+
+  /**
+   * Create a RecordModel that gets its ids as primitive ints, which avoids boxing each id when looking up records.
+   * @param theConstructor Constructs a new, blank record
+   * @param idFunction Gets the id of a record, or zero if the record hasn't been saved
+   * @param <R> The record type
+   * @return The RecordModel
+   */
+  public static <R> RecordModel<R> withIntIds(
+      Supplier<@NonNull R> theConstructor,
+      ToIntFunction<? super R> idFunction
+  ) {
+    return new RecordModel<>(theConstructor, idFunction);
+  }
+
+  /**
+   * Get a consistent view of the found set and the current index. This may be called from any thread.
+   * @return The current snapshot
+   */
+  public Snapshot<R> getSnapshot() {
+    return state.get();
   }
 
   public int getRecordIndex() {
-    return recordIndex;
+    return state.get().recordIndex;
   }
 
-  public int getSize() { return foundItems.size(); }
+  public int getSize() { return state.get().records.size(); }
 
   public void addModelListener(RecordModelListener listener) {
     listenerList.add(listener);
@@ -46,23 +219,167 @@ public class RecordModel<R> implements Serializable {
     listenerList.remove(listener);
   }
 
+  /**
+   * Replace the found set. The current record stays selected if it's in the new found set. Listeners that implement
+   * {@link RecordListChangeListener} are told which records were inserted, removed, moved or changed. This may be
+   * called from any thread.
+   * @param records The new found set
+   */
   public void setNewList(Collection<? extends R> records) {
-    int priorSelectionId = (foundItems.size() > recordIndex) ? getIdFunction.apply(foundItems.get(recordIndex)) : 0;
-    foundItems = new ArrayList<>(records);
-    // Not sure if the "if" is needed, or if we can just always set the record index to zero.
-    if (recordIndex >= foundItems.size()) {
-      setRecordIndex(0);
-    }
-    if (foundItems.isEmpty()) {
-      final R record;
-      record = createNewEmptyRecord();
-      foundItems.add(record);
-    } else {
-      if (priorSelectionId != 0) {
-        setRecordById(priorSelectionId); // sets recordIndex to same record, or 0 if not found
+    replaceList(new ArrayList<>(records), true);
+  }
+
+  /**
+   * Sort a new found set in memory, then replace the found set with it. Listeners hear about the new found set
+   * once, already sorted. This may be called from any thread.
+   * @param records The new found set
+   * @param sorter The sorter, which caches the sort keys between sorts
+   * @param fields The sort fields, most significant first
+   * @param <F> The field type
+   * @see #setNewList(Collection)
+   */
+  public <F extends DBField> void setNewList(
+      Collection<? extends R> records,
+      FoundSetSorter<? super R, F> sorter,
+      List<? extends F> fields
+  ) {
+    List<R> unsorted = new ArrayList<>(records);
+    int[] order = sorter.sortOrder(unsorted, fields);
+    List<@NonNull R> sorted = new ArrayList<>(order.length);
+    for (int i : order) {
+      sorted.add(unsorted.get(i));
+    }
+    replaceList(sorted, true);
+  }
+
+  /**
+   * Specify how to decide if a record in a new found set has changed from the same record in the old one. The
+   * default uses {@link Object#equals(Object)}. Records that don't override {@code equals()} will always be reported
+   * as changed, since each search builds new records.
+   * @param sameContent Returns true if the old and new versions of a record are the same
+   */
+  public void setContentEquality(BiPredicate<? super R, ? super R> sameContent) {
+    contentEquality = sameContent;
+  }
+
+  /**
+   * Replace the found set with the ids of the found records. Records are loaded only when they're needed, and only
+   * the most recently used ones are kept, so a huge found set costs little more than its ids. This may be called
+   * from any thread.
+   * @param ids The ids of the found records, in order. The array must not be changed afterwards.
+   * @param loader Loads the record with the specified id, or returns null if it no longer exists. It may be called
+   *               from any thread.
+   * @see LazyFoundSet
+   */
+  public void setNewIds(int[] ids, IntFunction<? extends @Nullable R> loader) {
+    replaceList(new LazyFoundSet<>(ids, loader, constructor, idFunction, LazyFoundSet.DEFAULT_CACHE_SIZE), false);
+  }
+
+  private void replaceList(List<@NonNull R> newItems, boolean diffable) {
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      Snapshot<R> prior = state.get();
+      int priorSelectionId = (prior.records.size() > prior.recordIndex) ? getIdAt(prior.records, prior.recordIndex) : 0;
+      if (newItems.isEmpty()) {
+        newItems.add(createNewEmptyRecord());
+      }
+      Snapshot<R> next = new Snapshot<>(newItems, 0);
+      // Keep the same record, or go to the first record if it's not in the found set.
+      int index = (priorSelectionId == 0) ? -1 : indexOf(next, priorSelectionId);
+      if (index < 0) {
+        index = (prior.recordIndex >= newItems.size()) ? 0 : prior.recordIndex;
+      }
+      next = next.withRecordIndex(index);
+      state.set(next);
+      addIndexChanged(events, index, prior.recordIndex);
+      @Nullable RecordListDiff diff = (diffable && hasListChangeListeners())
+          ? RecordListDiff.compute(prior.records, newItems, idFunction, contentEquality)
+          : null;
+      addListChanged(events, newItems.size(), diff);
+      queue(events);
+    }
+    fire();
+  }
+
+  /**
+   * Sort the found set in memory, without querying the database. The current record stays selected. Records added
+   * to a found set of ids, with {@link #setNewIds(int[], IntFunction)}, stay at the end. This may be called from any
+   * thread.
+   * @param sorter The sorter, which caches the sort keys between sorts
+   * @param fields The sort fields, most significant first
+   * @param <F> The field type
+   */
+  public <F extends DBField> void sort(FoundSetSorter<? super R, F> sorter, List<? extends F> fields) {
+    final List<Runnable> events = new ArrayList<>();
+    while (events.isEmpty()) {
+      // Sort outside the lock, since building the keys may take a while. If the found set gets replaced before we're
+      // done, start over with the new one.
+      List<@NonNull R> records = state.get().records;
+      final int sortCount;
+      int[] order;
+      if (records instanceof LazyFoundSet) {
+        // Sort by id, so records are only loaded if their sort keys aren't cached.
+        final LazyFoundSet<R> lazyRecords = (LazyFoundSet<R>) records;
+        sortCount = lazyRecords.getIdCount();
+        order = sorter.sortOrder(sortCount, lazyRecords::getId, lazyRecords::get, fields);
+      } else {
+        sortCount = records.size();
+        order = sorter.sortOrder(records, fields);
+      }
+      synchronized (this) {
+        Snapshot<R> current = state.get();
+        if (current.records == records) {
+          List<@NonNull R> sorted;
+          if (records instanceof LazyFoundSet) {
+            sorted = ((LazyFoundSet<R>) records).reorder(order);
+          } else {
+            sorted = new ArrayList<>(records.size());
+            for (int i : order) {
+              sorted.add(records.get(i));
+            }
+            sorted.addAll(records.subList(sortCount, records.size()));
+          }
+          int index = current.recordIndex;
+          for (int i = 0; (index < sortCount) && (i < sortCount); ++i) {
+            if (order[i] == current.recordIndex) {
+              index = i;
+              break;
+            }
+          }
+          BitSet selection = new BitSet();
+          for (int i = 0; i < sortCount; ++i) {
+            if (current.selection.get(order[i])) {
+              selection.set(i);
+            }
+          }
+          // Appended records don't move, so neither do their selections.
+          for (int i = current.selection.nextSetBit(sortCount); i >= 0; i = current.selection.nextSetBit(i + 1)) {
+            selection.set(i);
+          }
+          state.set(new Snapshot<>(sorted, index, null, selection));
+          addIndexChanged(events, index, current.recordIndex);
+          addListChanged(events, sorted.size(), null);
+        }
+        queue(events);
+      }
+    }
+    fire();
+  }
+
+  private int getIdAt(List<@NonNull R> records, int index) {
+    if (records instanceof LazyFoundSet) {
+      return ((LazyFoundSet<?>) records).getId(index);
+    }
+    return idFunction.applyAsInt(records.get(index));
+  }
+
+  private boolean hasListChangeListeners() {
+    for (RecordModelListener listener : listenerList) {
+      if (listener instanceof RecordListChangeListener) {
+        return true;
       }
     }
-    fireModelListChanged();
+    return false;
   }
 
   public @NonNull R createNewEmptyRecord() {
@@ -72,10 +389,20 @@ public class RecordModel<R> implements Serializable {
 //    return emptyRecord;
   }
 
+  /**
+   * @return true if the user last moved forward, with {@link #goNext()}, false if they last moved back, with
+   * {@link #goPrev()}.
+   */
+  public boolean isDirectionForward() {
+    return isDirectionForward;
+  }
+
   public void goNext() {
-    assert !foundItems.isEmpty();
-    int size = foundItems.size();
-    int nextRecord = recordIndex + 1;
+    isDirectionForward = true;
+    Snapshot<R> current = state.get();
+    assert !current.records.isEmpty();
+    int size = current.records.size();
+    int nextRecord = current.recordIndex + 1;
     if (nextRecord >= size) {
       nextRecord = 0;
     }
@@ -83,75 +410,327 @@ public class RecordModel<R> implements Serializable {
   }
 
   public void goPrev() {
-    assert !foundItems.isEmpty();
-    int nextRecord = recordIndex - 1;
+    isDirectionForward = false;
+    Snapshot<R> current = state.get();
+    assert !current.records.isEmpty();
+    int nextRecord = current.recordIndex - 1;
     if (nextRecord < 0) {
-      nextRecord = foundItems.size() - 1;
+      nextRecord = current.records.size() - 1;
     }
     setRecordIndex(nextRecord);
   }
 
   public void goFirst() {
-    assert !foundItems.isEmpty();
+    assert !state.get().records.isEmpty();
     setRecordIndex(0);
   }
 
   public void goLast() {
-    assert !foundItems.isEmpty();
-    setRecordIndex(foundItems.size()-1);
+    assert !state.get().records.isEmpty();
+    setRecordIndex(state.get().records.size()-1);
   }
 
   private void setRecordIndex(final int i) {
-    if (i != recordIndex) {
-      int prior = recordIndex;
-      recordIndex = i;
-      fireIndexChanged(i, prior);
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      Snapshot<R> current = state.get();
+      if ((i >= 0) && (i < current.records.size())) {
+        state.set(current.withRecordIndex(i));
+        addIndexChanged(events, i, current.recordIndex);
+      }
+      queue(events);
     }
+    fire();
   }
 
-  private void fireIndexChanged(final int i, int prior) {
-    for (RecordModelListener modelListener: listenerList) {
-      modelListener.indexChanged(i, prior);
+  public void append(@NonNull R insertedRecord) {
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      Snapshot<R> current = state.get();
+      List<@NonNull R> records = copyOf(current.records);
+      final int newIndex = records.size();
+      records.add(insertedRecord);
+      IdIndex priorIndex = current.idIndex;
+      @Nullable IdIndex idIndex = null;
+      if (priorIndex != null) {
+        idIndex = priorIndex.copy();
+        idIndex.put(idFunction.applyAsInt(insertedRecord), newIndex);
+      }
+      state.set(new Snapshot<>(records, newIndex, idIndex, current.selection));
+      addIndexChanged(events, newIndex, current.recordIndex);
+      addListChanged(events, records.size(), null);
+      queue(events);
     }
+    fire();
   }
 
-  public void append(@NonNull R insertedRecord) {
-    final int newIndex = foundItems.size();
-    foundItems.add(insertedRecord);
-    setRecordIndex(newIndex);
-    fireModelListChanged();
+  private static <R> List<@NonNull R> copyOf(List<@NonNull R> records) {
+    if (records instanceof LazyFoundSet) {
+      return new LazyFoundSet<>((LazyFoundSet<R>) records);
+    }
+    return new ArrayList<>(records);
+  }
+
+  /**
+   * Add several records to the end of the found set, and make the first of them the current record.
+   * @param insertedRecords The records to add
+   */
+  public void appendAll(Collection<? extends @NonNull R> insertedRecords) {
+    if (insertedRecords.isEmpty()) {
+      return;
+    }
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      Snapshot<R> current = state.get();
+      List<@NonNull R> records = copyOf(current.records);
+      final int newIndex = records.size();
+      records.addAll(insertedRecords);
+      state.set(new Snapshot<>(records, newIndex, null, current.selection));
+      addIndexChanged(events, newIndex, current.recordIndex);
+      addListChanged(events, records.size(), null);
+      queue(events);
+    }
+    fire();
+  }
+
+  /**
+   * Select or deselect a record. Selections are cleared whenever the found set is replaced.
+   * @param index The index of the record
+   * @param selected true to select it, false to deselect it
+   */
+  @SuppressWarnings("BooleanParameter")
+  public void setSelected(int index, boolean selected) {
+    changeSelection((selection, size) -> selection.set(index, selected));
+  }
+
+  /**
+   * Select or deselect a range of records.
+   * @param first The index of the first record
+   * @param last The index of the last record, inclusive
+   * @param selected true to select them, false to deselect them
+   */
+  @SuppressWarnings("BooleanParameter")
+  public void setSelected(int first, int last, boolean selected) {
+    changeSelection((selection, size) -> selection.set(first, last + 1, selected));
+  }
+
+  public void selectAll() {
+    changeSelection((selection, size) -> selection.set(0, size));
+  }
+
+  public void clearSelection() {
+    changeSelection((selection, size) -> selection.clear());
+  }
+
+  public boolean isSelected(int index) {
+    return state.get().selection.get(index);
+  }
+
+  public int getSelectionCount() {
+    return state.get().selection.cardinality();
+  }
+
+  /**
+   * @return The selected records, in found-set order
+   */
+  public List<@NonNull R> getSelectedRecords() {
+    Snapshot<R> current = state.get();
+    List<@NonNull R> selected = new ArrayList<>(current.selection.cardinality());
+    for (int i = current.selection.nextSetBit(0); i >= 0; i = current.selection.nextSetBit(i + 1)) {
+      selected.add(current.records.get(i));
+    }
+    return selected;
+  }
+
+  private void changeSelection(ObjIntConsumer<BitSet> change) {
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      Snapshot<R> current = state.get();
+      BitSet selection = (BitSet) current.selection.clone();
+      int size = current.records.size();
+      change.accept(selection, size);
+      selection.clear(size, Math.max(size, selection.length())); // Only records in the found set may be selected.
+      if (!selection.equals(current.selection)) {
+        state.set(current.withSelection(selection));
+        final int count = selection.cardinality();
+        events.add(() -> {
+          for (RecordModelListener listener : listenerList) {
+            listener.selectionChanged(count);
+          }
+        });
+      }
+      queue(events);
+    }
+    fire();
+  }
+
+  /**
+   * Remove all the selected records from the model only, in one pass. This doesn't delete anything from the
+   * database. If the current record is removed, the next remaining record becomes the current one. Listeners that
+   * implement {@link RecordListChangeListener} are told which ranges were removed.
+   * @return The number of records removed
+   */
+  public int removeSelected() {
+    final List<Runnable> events = new ArrayList<>();
+    final int removedCount;
+    synchronized (this) {
+      Snapshot<R> current = state.get();
+      final BitSet removed = current.selection;
+      removedCount = removed.cardinality();
+      if (removedCount == 0) {
+        return 0;
+      }
+      final int size = current.records.size();
+      List<@NonNull R> records;
+      if (current.records instanceof LazyFoundSet) {
+        records = ((LazyFoundSet<R>) current.records).without(removed);
+      } else {
+        records = new ArrayList<>(size - removedCount);
+        for (int i = removed.nextClearBit(0); i < size; i = removed.nextClearBit(i + 1)) {
+          records.add(current.records.get(i));
+        }
+      }
+
+      // The current record stays current. If it was removed, the one after it takes its place.
+      int oldIndex = current.recordIndex;
+      int survivor = removed.nextClearBit(oldIndex);
+      if (survivor >= size) {
+        survivor = removed.previousClearBit(oldIndex);
+      }
+      int index = (survivor < 0) ? 0 : (survivor - removed.get(0, survivor).cardinality());
+      if (records.isEmpty()) {
+        records.add(createNewEmptyRecord());
+      }
+      state.set(new Snapshot<>(records, index));
+      addIndexChanged(events, index, oldIndex);
+      final int newSize = records.size();
+      events.add(() -> {
+        for (RecordModelListener listener : listenerList) {
+          if (listener instanceof RecordListChangeListener) {
+            dispatchRemovedRanges((RecordListChangeListener) listener, removed, size);
+          } else {
+            listener.modelListChanged(newSize);
+          }
+          listener.selectionChanged(0);
+        }
+      });
+      queue(events);
+    }
+    fire();
+    return removedCount;
+  }
+
+  /**
+   * Send the removed ranges from last to first, so each range's indexes are still valid when it arrives.
+   */
+  private void dispatchRemovedRanges(RecordListChangeListener listener, BitSet removed, int size) {
+    int end = size;
+    while (true) {
+      int last = removed.previousSetBit(end - 1);
+      if (last < 0) {
+        break;
+      }
+      int first = removed.previousClearBit(last) + 1;
+      listener.recordsRemoved(first, last);
+      end = first;
+    }
+    if (removed.cardinality() == size) {
+      listener.recordsInserted(0, 0); // the blank record that replaced them
+    }
+  }
+
+  /**
+   * Tell the listeners that the selected records were changed in place, such as by a bulk update. Listeners that
+   * implement {@link RecordListChangeListener} are told which ranges changed.
+   */
+  public void selectedRecordsChanged() {
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      final Snapshot<R> current = state.get();
+      final BitSet changed = current.selection;
+      if (changed.isEmpty()) {
+        return;
+      }
+      events.add(() -> {
+        for (RecordModelListener listener : listenerList) {
+          if (listener instanceof RecordListChangeListener) {
+            int first = changed.nextSetBit(0);
+            while (first >= 0) {
+              int last = changed.nextClearBit(first) - 1;
+              ((RecordListChangeListener) listener).recordsChanged(first, last);
+              first = changed.nextSetBit(last + 1);
+            }
+          } else {
+            listener.modelListChanged(current.records.size());
+          }
+        }
+      });
+      queue(events);
+    }
+    fire();
   }
 
   public @NonNull R getFoundRecord() { // TODO: rename to getCurrentRecord()? 
-    if (!foundItems.isEmpty()) {
-      return foundItems.get(recordIndex);
+    Snapshot<R> current = state.get();
+    if (!current.records.isEmpty()) {
+      return current.records.get(current.recordIndex);
 //      assert foundRecord != null;
 //      return Objects.requireNonNull(foundRecord);
     }
-    R emptyRecord = createNewEmptyRecord();
-    foundItems.add(emptyRecord);
-    fireModelListChanged(); // Is it dangerous to fire the listener before returning the record?
+    final List<Runnable> events = new ArrayList<>();
+    final R emptyRecord;
+    synchronized (this) {
+      current = state.get();
+      if (!current.records.isEmpty()) {
+        return current.records.get(current.recordIndex); // Another thread got here first.
+      }
+      emptyRecord = createNewEmptyRecord();
+      List<@NonNull R> records = new ArrayList<>();
+      records.add(emptyRecord);
+      state.set(new Snapshot<>(records, 0));
+      addListChanged(events, 1, null);
+      queue(events);
+    }
+    fire(); // Is it dangerous to fire the listener before returning the record?
     return emptyRecord;
   }
 
   /**
-   * Sets the record index to point to the provided record, if it's in the found set. This is to preserve the current
-   * record if it's in the found set. If it's not, leaves the record index unchanged.
-   * @param recordId The ID of the record to set
+   * Find a record in the found set by its id. The first call after the found set changes builds an index of the ids,
+   * so later calls take constant time.
+   * @param recordId The id of the record
+   * @return The index of the record, or -1 if it's not in the found set.
    */
-  private void setRecordById(int recordId) {
-    int index = 0;
-    for (R r : foundItems) {
-      if (recordId == getIdFunction.apply(r)) {
-        setRecordIndex(index);
-        return;
-      }
-      index++;
+  public int indexOf(int recordId) {
+    return indexOf(state.get(), recordId);
+  }
+
+  private int indexOf(Snapshot<R> snapshot, int recordId) {
+    IdIndex index = snapshot.idIndex;
+    if (index == null) {
+      final List<@NonNull R> records = snapshot.records;
+      index = IdIndex.build(records.size(), i -> getIdAt(records, i));
+      snapshot.idIndex = index; // Racing threads build the same index, so either one may win.
     }
+    return index.get(recordId);
+  }
+
+  /**
+   * Make the record with the specified id the current record, if it's in the found set.
+   * @param recordId The id of the record
+   * @return true if the record was found, false otherwise
+   */
+  public boolean goToId(int recordId) {
+    int index = indexOf(recordId);
+    if (index >= 0) {
+      setRecordIndex(index);
+      return true;
+    }
+    return false;
   }
 
   public @NonNull R getRecordAt(int index) {
-    return foundItems.get(index);
+    return state.get().records.get(index);
   }
 
   /**
@@ -162,30 +741,173 @@ public class RecordModel<R> implements Serializable {
   @SuppressWarnings("BooleanParameter")
   public void deleteSelected(boolean notify, int index) {
     if (index >= 0) {
-      foundItems.remove(index);
-      if (foundItems.isEmpty()) {
-        foundItems.add(createNewEmptyRecord());
-      }
-      if (recordIndex >= foundItems.size()) {
-        recordIndex--; // Should we call setRecordIndex() here?
-        assert recordIndex >= 0;
-  //      if (recordIndex < 0) {
-  //        recordIndex = 0;
-  //      }
+      final List<Runnable> events = new ArrayList<>();
+      synchronized (this) {
+        Snapshot<R> current = state.get();
+        List<@NonNull R> records = copyOf(current.records);
+        records.remove(index);
+        if (records.isEmpty()) {
+          records.add(createNewEmptyRecord());
+        }
+        int recordIndex = current.recordIndex;
+        if (recordIndex >= records.size()) {
+          recordIndex--;
+          assert recordIndex >= 0;
+          if (notify) {
+            addIndexChanged(events, recordIndex, index);
+          }
+        }
+        BitSet selection = current.selection.get(0, index);
+        for (int i = current.selection.nextSetBit(index + 1); i >= 0; i = current.selection.nextSetBit(i + 1)) {
+          selection.set(i - 1);
+        }
+        // Every later index has shifted, so the id index is gone.
+        state.set(new Snapshot<>(records, recordIndex, null, selection));
         if (notify) {
-          fireIndexChanged(recordIndex, index);
+          addListChanged(events, records.size(), null);
         }
+        queue(events);
       }
-      if (notify) {
-        fireModelListChanged();
+      fire();
+    }
+  }
+
+  /**
+   * Write the found set and the record index to a snapshot file, so it can be shown immediately the next time the
+   * application starts. Only the ids and the specified display values are saved. Records of a found set of ids that
+   * aren't loaded yet aren't loaded now. Their display values are saved as empty Strings.
+   * @param path The snapshot file
+   * @param changeStamp The database's change stamp. The snapshot will only be restored if the stamp hasn't changed.
+   * @param displayColumns The values needed to show the first screen, by column name.
+   * @throws IOException If the snapshot can't be written
+   * @see DatabaseInfo#getChangeStamp()
+   */
+  public void writeSnapshot(Path path, long changeStamp, Map<String, ? extends Function<? super R, ?>> displayColumns)
+      throws IOException {
+    Snapshot<R> current = state.get();
+    if (current.records instanceof LazyFoundSet) {
+      LazyFoundSet<R> lazyRecords = (LazyFoundSet<R>) current.records;
+      FoundSetSnapshot.write(path, changeStamp, lazyRecords.size(), current.recordIndex, lazyRecords::getId,
+          lazyRecords::getIfLoaded, displayColumns);
+    } else {
+      FoundSetSnapshot.write(path, changeStamp, current.records, current.recordIndex, idFunction, displayColumns);
+    }
+  }
+
+  /**
+   * Replace the found set with placeholder records built from a snapshot, and restore the record index. This is meant
+   * to show the first screen immediately while the real query runs. When the real records arrive, 
+   * {@link #setNewList(Collection)} will keep the same record selected, since it keeps the selected id.
+   * @param snapshot The snapshot
+   * @param factory Builds each placeholder record
+   */
+  public void restoreSnapshot(FoundSetSnapshot snapshot, FoundSetSnapshot.RecordFactory<? extends R> factory) {
+    final int size = snapshot.getSize();
+    List<@NonNull R> records = new ArrayList<>(size);
+    for (int row = 0; row < size; ++row) {
+      records.add(factory.create(snapshot.getId(row), snapshot, row));
+    }
+    final List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      if (records.isEmpty()) {
+        records.add(createNewEmptyRecord());
       }
+      int index = snapshot.getRecordIndex();
+      state.set(new Snapshot<>(records, ((index >= 0) && (index < records.size())) ? index : 0));
+      addListChanged(events, records.size(), null);
+      queue(events);
     }
+    fire();
   }
 
-  private void fireModelListChanged() {
-    int size = foundItems.size();
-    for (RecordModelListener listener : listenerList) {
-      listener.modelListChanged(size);
+  private void addIndexChanged(List<Runnable> events, final int i, int prior) {
+    if (i != prior) {
+      events.add(() -> {
+        for (RecordModelListener modelListener : listenerList) {
+          modelListener.indexChanged(i, prior);
+        }
+      });
+    }
+  }
+
+  /**
+   * Tell the listeners that the list changed. Listeners that can take range events get the differences instead, if
+   * there are any.
+   */
+  private void addListChanged(List<Runnable> events, int size, @Nullable RecordListDiff diff) {
+    events.add(() -> {
+      for (RecordModelListener listener : listenerList) {
+        if ((diff != null) && (listener instanceof RecordListChangeListener)) {
+          diff.dispatch((RecordListChangeListener) listener);
+        } else {
+          listener.modelListChanged(size);
+        }
+      }
+    });
+  }
+
+  /**
+   * Queue the events of a change. This must be called while holding the lock that made the change, so the events
+   * are queued in the same order as the changes, whichever threads made them.
+   */
+  private void queue(List<Runnable> events) {
+    assert Thread.holdsLock(this);
+    if (!events.isEmpty()) {
+      notifications.add(events);
+    }
+  }
+
+  /**
+   * Deliver the queued events on the event dispatch thread. On the event dispatch thread, they're delivered before
+   * this returns.
+   */
+  private void fire() {
+    if (notifications.isEmpty()) {
+      return; // Already delivered, or the change didn't need any notifications.
     }
+    if (SwingUtilities.isEventDispatchThread()) {
+      deliverNotifications();
+    } else {
+      SwingUtilities.invokeLater(this::deliverNotifications);
+    }
+  }
+
+  /**
+   * Deliver the queued events, in order. A listener that changes the model while it's being notified calls this
+   * again, so the nested call returns at once, and leaves the new events for the loop that's already running.
+   */
+  private void deliverNotifications() {
+    if (delivering) {
+      return;
+    }
+    delivering = true;
+    try {
+      List<Runnable> events;
+      while ((events = notifications.poll()) != null) {
+        events.forEach(Runnable::run);
+      }
+    } finally {
+      delivering = false;
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    Snapshot<R> snapshot = state.get();
+    out.writeObject(new ArrayList<>(snapshot.records));
+    out.writeInt(snapshot.recordIndex);
+    out.writeObject(snapshot.selection);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    List<@NonNull R> records = (List<@NonNull R>) in.readObject();
+    int recordIndex = in.readInt();
+    BitSet selection = (BitSet) in.readObject();
+    listenerList = new CopyOnWriteArrayList<>();
+    notifications = new ConcurrentLinkedQueue<>();
+    contentEquality = Objects::equals;
+    state = new AtomicReference<>(new Snapshot<>(records, recordIndex, null, selection));
   }
 }
@@ -10,4 +10,10 @@ package com.neptunedreams.framework.data;
 public interface RecordModelListener {
   void modelListChanged(int newSize);
   void indexChanged(int index, int prior);
+
+  /**
+   * Called when records are selected or deselected.
+   * @param selectedCount The number of selected records
+   */
+  default void selectionChanged(int selectedCount) { }
 }
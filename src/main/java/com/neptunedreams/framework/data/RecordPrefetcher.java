@@ -0,0 +1,345 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads the full data of the records the user is about to see, such as large text columns or related rows, before
+ * the user gets to them. It watches the direction and the speed of navigation through the {@link RecordModel}, and
+ * loads the next few records in that direction on a background thread. The faster the user moves, and the slower
+ * the loads, the further ahead it looks. When the user reverses direction, any loads that haven't started yet are
+ * cancelled. Holding down an arrow key should then never wait for the database.
+ * <p>
+ * The loaded data is held in a small cache, by record id, until it's {@linkplain #hydrate(Object) applied} to its
+ * record. A record whose data isn't cached yet is shown without it, and gets its data when the load finishes, so the
+ * event dispatch thread never waits for a load. Records that haven't been saved have an id of zero, and are never
+ * prefetched.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 12:40 AM
+ *
+ * @param <R> The record type
+ * @param <D> The type of the data loaded for each record
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class RecordPrefetcher<R, D> implements RecordModelListener {
+  /** The default number of loaded records to keep */
+  public static final int DEFAULT_CACHE_SIZE = 32;
+  private static final int MIN_LOOKAHEAD = 2;
+  private static final long IDLE_NANOS = 1_000_000_000L; // A pause this long means the user stopped moving.
+
+  private final RecordModel<R> model;
+  private final ToIntFunction<? super R> idFunction;
+  private final Loader<? super R, ? extends D> loader;
+  private final BiConsumer<? super R, ? super D> applier;
+  private final Executor executor;
+  private final int maxLookahead;
+  private final Map<Integer, D> cache; // guarded by itself
+  private final Map<Integer, FutureTask<D>> pending = new ConcurrentHashMap<>();
+  private final Map<Integer, Waiter<R>> waiting = new ConcurrentHashMap<>(); // records being shown, by id
+
+  // These are only used on the event dispatch thread, where the model's listeners are notified.
+  private boolean movingForward = true;
+  private long lastStepNanos = 0L;
+  private double averageStepNanos = IDLE_NANOS;
+  private volatile double averageLoadNanos = 0.0;
+
+  /**
+   * Loads the full data of a record.
+   * @param <R> The record type
+   * @param <D> The type of the loaded data
+   */
+  @FunctionalInterface
+  public interface Loader<R, D> {
+    /**
+     * Load the data. This is called on a background thread, so it must not change the record.
+     * @param record The record
+     * @return The loaded data
+     * @throws SQLException If the data can't be loaded
+     */
+    D load(R record) throws SQLException;
+  }
+
+  private RecordPrefetcher(
+      RecordModel<R> model,
+      ToIntFunction<? super R> idFunction,
+      Loader<? super R, ? extends D> loader,
+      BiConsumer<? super R, ? super D> applier,
+      Executor executor,
+      int cacheSize
+  ) {
+    this.model = model;
+    this.idFunction = idFunction;
+    this.loader = loader;
+    this.applier = applier;
+    this.executor = executor;
+    final int maxSize = Math.max(cacheSize, MIN_LOOKAHEAD * 2);
+    maxLookahead = maxSize / 2; // Leave room for the records just passed, in case the user turns around.
+    cache = new LinkedHashMap<Integer, D>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2860153741830268157L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, D> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Create a RecordPrefetcher that loads on its own background thread, and start listening to the model.
+   * @param model The model
+   * @param idFunction Gets the id of a record
+   * @param loader Loads the full data of a record
+   * @param applier Applies the loaded data to its record. This is called on the event dispatch thread.
+   * @param <R> The record type
+   * @param <D> The type of the loaded data
+   * @return The RecordPrefetcher
+   */
+  public static <R, D> RecordPrefetcher<R, D> create(
+      RecordModel<R> model,
+      ToIntFunction<? super R> idFunction,
+      Loader<? super R, ? extends D> loader,
+      BiConsumer<? super R, ? super D> applier
+  ) {
+    Executor executor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "Record prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    return create(model, idFunction, loader, applier, executor, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Create a RecordPrefetcher, and start listening to the model.
+   * @param model The model
+   * @param idFunction Gets the id of a record
+   * @param loader Loads the full data of a record
+   * @param applier Applies the loaded data to its record. This is called on the event dispatch thread.
+   * @param executor Runs the loads. A single thread loads the nearest records first.
+   * @param cacheSize The number of loaded records to keep. Half of them may be records ahead of the current one.
+   * @param <R> The record type
+   * @param <D> The type of the loaded data
+   * @return The RecordPrefetcher
+   */
+  public static <R, D> RecordPrefetcher<R, D> create(
+      RecordModel<R> model,
+      ToIntFunction<? super R> idFunction,
+      Loader<? super R, ? extends D> loader,
+      BiConsumer<? super R, ? super D> applier,
+      Executor executor,
+      int cacheSize
+  ) {
+    RecordPrefetcher<R, D> prefetcher = new RecordPrefetcher<>(model, idFunction, loader, applier, executor, cacheSize);
+    model.addModelListener(prefetcher);
+    return prefetcher;
+  }
+
+  /**
+   * Apply the full data to a record that's about to be shown, without waiting for the database. If the data was
+   * prefetched, it's applied now, and the returned future is already complete. Otherwise, it's loaded in the
+   * background, and applied on the event dispatch thread when it arrives, which completes the future there. This must
+   * be called on the event dispatch thread.
+   * @param record The record
+   * @return A future that completes with the record once its data has been applied. It completes exceptionally, with
+   * the loader's exception, if the data couldn't be loaded, and it's cancelled if the record is
+   * {@linkplain #invalidate(int) invalidated} first.
+   */
+  public CompletableFuture<R> hydrate(R record) {
+    int id = idFunction.applyAsInt(record);
+    if (id == 0) {
+      return CompletableFuture.completedFuture(record);
+    }
+    if (applyCached(id, record)) {
+      return CompletableFuture.completedFuture(record);
+    }
+    Waiter<R> waiter = new Waiter<>(record);
+    Waiter<R> replaced = waiting.put(id, waiter);
+    if (replaced != null) {
+      replaced.future.cancel(false);
+    }
+    // Put the waiter in place before looking for a load, so a load that finishes now either finds the waiter, or
+    // has already cached its data.
+    if (!pending.containsKey(id)) {
+      if (applyCached(id, record)) {
+        waiting.remove(id, waiter);
+        return CompletableFuture.completedFuture(record);
+      }
+      startLoad(id, () -> record);
+    }
+    return waiter.future;
+  }
+
+  private boolean applyCached(int id, R record) {
+    D data;
+    synchronized (cache) {
+      data = cache.get(id);
+    }
+    if (data != null) {
+      applier.accept(record, data);
+      return true;
+    }
+    return false;
+  }
+
+  // On the event dispatch thread
+  private void deliver(int id, D data) {
+    Waiter<R> waiter = waiting.remove(id);
+    if (waiter != null) {
+      applier.accept(waiter.record, data);
+      waiter.future.complete(waiter.record);
+    }
+  }
+
+  // On the event dispatch thread
+  private void fail(int id, Throwable failure) {
+    Waiter<R> waiter = waiting.remove(id);
+    if (waiter != null) {
+      waiter.future.completeExceptionally(failure);
+    }
+  }
+
+  private D load(R record) throws SQLException {
+    long start = System.nanoTime();
+    D data = loader.load(record);
+    long elapsed = System.nanoTime() - start;
+    averageLoadNanos = (averageLoadNanos == 0.0) ? elapsed : ((averageLoadNanos * 0.75) + (elapsed * 0.25));
+    return data;
+  }
+
+  /**
+   * Discard the data loaded for a record, after the record has been saved, so it doesn't overwrite the saved values
+   * the next time the record is shown.
+   * @param id The record's id
+   */
+  public void invalidate(int id) {
+    FutureTask<D> task = pending.remove(id);
+    if (task != null) {
+      task.cancel(false);
+    }
+    Waiter<R> waiter = waiting.remove(id);
+    if (waiter != null) {
+      waiter.future.cancel(false);
+    }
+    synchronized (cache) {
+      cache.remove(id);
+    }
+  }
+
+  @Override
+  public void modelListChanged(final int newSize) {
+    cancelPending(); // The loaded data is kept, since it's cached by id.
+    lastStepNanos = 0L;
+  }
+
+  @Override
+  public void indexChanged(final int index, final int prior) {
+    RecordModel.Snapshot<R> snapshot = model.getSnapshot();
+    final int size = snapshot.getSize();
+    int step = index - prior;
+    if (Math.abs(step) > (size / 2)) {
+      step -= Integer.signum(step) * size; // going from the last record to the first is still a step forward
+    }
+    long now = System.nanoTime();
+    if (Math.abs(step) == 1) {
+      boolean forward = model.isDirectionForward();
+      if (forward != movingForward) {
+        cancelPending();
+        movingForward = forward;
+        averageStepNanos = IDLE_NANOS;
+      } else if (lastStepNanos != 0L) {
+        averageStepNanos = (averageStepNanos * 0.5) + (Math.min(now - lastStepNanos, IDLE_NANOS) * 0.5);
+      }
+    } else {
+      averageStepNanos = IDLE_NANOS; // a jump, such as to the first record, says nothing about speed
+    }
+    lastStepNanos = now;
+
+    // Look ahead far enough to cover the loads that will finish before the user gets there.
+    int lookahead = MIN_LOOKAHEAD + (int) Math.ceil(averageLoadNanos / averageStepNanos);
+    lookahead = Math.min(Math.min(lookahead, maxLookahead), size - 1);
+    List<R> records = snapshot.getRecordList();
+    for (int i = 1; i <= lookahead; ++i) {
+      int target = Math.floorMod(movingForward ? (index + i) : (index - i), size);
+      prefetch(records, target);
+    }
+  }
+
+  private void prefetch(List<R> records, int index) {
+    int id = (records instanceof LazyFoundSet)
+        ? ((LazyFoundSet<R>) records).getId(index)
+        : idFunction.applyAsInt(records.get(index));
+    if (id == 0) {
+      return;
+    }
+    synchronized (cache) {
+      if (cache.containsKey(id)) {
+        return;
+      }
+    }
+    // A lazy found set may have to load the record itself, so that's done in the background, too.
+    startLoad(id, () -> records.get(index));
+  }
+
+  private void startLoad(int id, Supplier<R> record) {
+    FutureTask<D> task = new FutureTask<D>(() -> load(record.get())) {
+      @Override
+      protected void done() {
+        if (isCancelled()) {
+          pending.remove(id, this);
+          return;
+        }
+        try {
+          final D data = get();
+          synchronized (cache) {
+            cache.put(id, data);
+          }
+          pending.remove(id, this); // Only after caching, so a waiter that doesn't see this load sees the data.
+          if (waiting.containsKey(id)) {
+            SwingUtilities.invokeLater(() -> deliver(id, data));
+          }
+        } catch (InterruptedException | ExecutionException e) {
+          pending.remove(id, this);
+          if (waiting.containsKey(id)) {
+            final Throwable failure = (e instanceof ExecutionException) ? e.getCause() : e;
+            SwingUtilities.invokeLater(() -> fail(id, failure));
+          }
+        }
+      }
+    };
+    if (pending.putIfAbsent(id, task) == null) {
+      executor.execute(task);
+    }
+  }
+
+  private void cancelPending() {
+    for (Map.Entry<Integer, FutureTask<D>> entry : pending.entrySet()) {
+      if (!waiting.containsKey(entry.getKey())) { // A record that's being shown still needs its data.
+        // Loads that have already started aren't interrupted, but their results are dropped.
+        entry.getValue().cancel(false);
+        pending.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private static final class Waiter<R> {
+    private final R record;
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+
+    Waiter(R record) {
+      this.record = record;
+    }
+  }
+}
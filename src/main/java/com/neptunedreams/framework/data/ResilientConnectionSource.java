@@ -0,0 +1,308 @@
+package com.neptunedreams.framework.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A ConnectionSource that repairs itself when its connection breaks. A background thread checks the connection
+ * periodically with {@link Connection#isValid(int)}. When the check fails, the connection is closed and replaced,
+ * also in the background. If the database can't be reached, it keeps trying, with an exponential backoff and some
+ * random jitter, so a database that's restarting doesn't get flooded with attempts.
+ * <p>
+ * While there is no working connection, {@link #getConnection()} fails immediately by throwing a
+ * {@link CircuitOpenException}, instead of handing out a broken connection that would make the caller wait for the
+ * driver's timeout. This keeps the event dispatch thread from freezing while the database is down.
+ * <p>
+ * The connection handed out, and the statements and result sets it creates, are watched. The first call that fails
+ * with an SQLException meaning the connection is lost opens the circuit right away, without waiting for the next
+ * health check. Callers that get some other SQLException suggesting a broken connection may call
+ * {@link #invalidate()} to have the connection checked right away.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 7:05 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class ResilientConnectionSource implements ConnectionSource, AutoCloseable {
+  /** The default time between health checks */
+  public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 5000L;
+  /** The default delay before the first reconnect attempt. It doubles after each failure. */
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 250L;
+  /** The default maximum delay between reconnect attempts */
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000L;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+  private final Opener opener;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ScheduledExecutorService executor;
+  private volatile @Nullable Connection connection; // The watched connection. Written while holding this.
+  private @Nullable Connection rawConnection; // guarded by this
+  private volatile @Nullable SQLException lastFailure = null;
+  private volatile long nextAttemptMillis = 0L;
+  private volatile int consecutiveFailures = 0;
+  private boolean reconnectPending = false; // guarded by this
+  private boolean closed = false; // guarded by this
+
+  /**
+   * Opens a new connection to the database.
+   */
+  @FunctionalInterface
+  public interface Opener {
+    /**
+     * Open a connection
+     * @return The new connection
+     * @throws SQLException If the database can't be reached
+     */
+    Connection open() throws SQLException;
+  }
+
+  /**
+   * Thrown by {@link #getConnection()} when there is no working connection. The cause is the last failure to
+   * connect.
+   */
+  public static final class CircuitOpenException extends IllegalStateException {
+    private static final long serialVersionUID = -2286497162360618841L;
+
+    CircuitOpenException(String message, @Nullable Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  /**
+   * Open a connection and start checking it, using the default intervals.
+   * @param opener Opens a connection
+   * @throws SQLException If the first connection can't be opened
+   */
+  public ResilientConnectionSource(Opener opener) throws SQLException {
+    this(opener, DEFAULT_CHECK_INTERVAL_MILLIS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+  }
+
+  /**
+   * Open a connection and start checking it.
+   * @param opener Opens a connection
+   * @param checkIntervalMillis The time between health checks
+   * @param initialBackoffMillis The delay before the first reconnect attempt, which doubles after each failure
+   * @param maxBackoffMillis The maximum delay between reconnect attempts
+   * @throws SQLException If the first connection can't be opened
+   */
+  public ResilientConnectionSource(Opener opener, long checkIntervalMillis, long initialBackoffMillis,
+                                   long maxBackoffMillis) throws SQLException {
+    this.opener = opener;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    rawConnection = opener.open();
+    connection = watch(rawConnection);
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "Connection health check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::checkHealth, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get the connection. This never blocks.
+   * @return A connection that passed its last health check
+   * @throws CircuitOpenException If the connection is broken and hasn't been replaced yet
+   */
+  @Override
+  public Connection getConnection() {
+    Connection current = connection;
+    if (current == null) {
+      long waitMillis = Math.max(nextAttemptMillis - System.currentTimeMillis(), 0L);
+      throw new CircuitOpenException(String.format("Database unavailable after %d attempts. Retrying in %d ms.",
+          consecutiveFailures, waitMillis), lastFailure);
+    }
+    return current;
+  }
+
+  /**
+   * Have the connection checked right away, on the background thread. Call this after an SQLException that may mean
+   * the connection is broken.
+   */
+  public synchronized void invalidate() {
+    if (!closed) {
+      executor.execute(this::checkHealth);
+    }
+  }
+
+  /**
+   * @return true if there is a connection that passed its last health check
+   */
+  public boolean isAvailable() {
+    return connection != null;
+  }
+
+  /**
+   * @return The number of reconnect attempts that have failed since the connection broke
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  private void checkHealth() {
+    final Connection current;
+    synchronized (this) {
+      current = rawConnection;
+    }
+    if (current == null) {
+      return; // A reconnect is already scheduled.
+    }
+    boolean valid;
+    try {
+      valid = current.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      valid = false;
+    }
+    if (!valid) {
+      connectionFailed(current);
+    }
+  }
+
+  /**
+   * Open the circuit, close the broken connection, and start reconnecting. Does nothing if the connection has
+   * already been replaced or closed.
+   * @param broken The connection that failed
+   */
+  private void connectionFailed(Connection broken) {
+    synchronized (this) {
+      if (rawConnection != broken) {
+        return;
+      }
+      rawConnection = null;
+      connection = null;
+    }
+    closeQuietly(broken);
+    scheduleReconnect(0L);
+  }
+
+  private synchronized void scheduleReconnect(long delayMillis) {
+    if (!reconnectPending && !closed) {
+      reconnectPending = true;
+      nextAttemptMillis = System.currentTimeMillis() + delayMillis;
+      executor.schedule(this::reconnect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void reconnect() {
+    synchronized (this) {
+      reconnectPending = false;
+      if (closed) {
+        return;
+      }
+    }
+    final Connection opened;
+    try {
+      opened = opener.open(); // Not while holding the lock, since this may take as long as the driver's timeout.
+    } catch (SQLException e) {
+      lastFailure = e;
+      int failures = ++consecutiveFailures;
+      scheduleReconnect(backoffMillis(failures));
+      return;
+    }
+    synchronized (this) {
+      if (!closed) {
+        rawConnection = opened;
+        connection = watch(opened);
+        consecutiveFailures = 0;
+        lastFailure = null;
+        return;
+      }
+    }
+    closeQuietly(opened); // close() was called while it was opening.
+  }
+
+  /**
+   * Wrap a connection, or a statement or result set it created, so a call that fails because the connection is lost
+   * opens the circuit.
+   * @param raw The connection that's watched
+   * @return The watched connection
+   */
+  private Connection watch(Connection raw) {
+    return Connection.class.cast(Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[]{Connection.class}, watcher(raw, raw)));
+  }
+
+  private InvocationHandler watcher(Connection raw, Object target) {
+    return (proxy, method, args) -> {
+      final Object value;
+      try {
+        value = method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if ((cause instanceof SQLException) && isConnectionLost((SQLException) cause)) {
+          connectionFailed(raw);
+        }
+        throw cause;
+      }
+      Class<?> type = method.getReturnType();
+      if (((value instanceof Statement) || (value instanceof ResultSet)) && type.isInterface()) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, watcher(raw, value));
+      }
+      return value;
+    };
+  }
+
+  private static boolean isConnectionLost(SQLException e) {
+    String state = e.getSQLState();
+    return (e instanceof SQLNonTransientConnectionException)
+        || (e instanceof SQLTransientConnectionException)
+        || (e instanceof SQLRecoverableException)
+        || ((state != null) && state.startsWith("08")); // The connection exception class
+  }
+
+  /**
+   * The backoff doubles with each failure, up to the maximum, then gets a random reduction of up to half, so many
+   * clients don't all retry at the same moment.
+   */
+  private long backoffMillis(int failures) {
+    long backoff = initialBackoffMillis << Math.min(failures - 1, 30);
+    if ((backoff <= 0L) || (backoff > maxBackoffMillis)) {
+      backoff = maxBackoffMillis;
+    }
+    return (backoff / 2) + ThreadLocalRandom.current().nextLong((backoff / 2) + 1);
+  }
+
+  private static void closeQuietly(Connection broken) {
+    try {
+      broken.close();
+    } catch (SQLException ignored) { }
+  }
+
+  /**
+   * Stop checking the connection, and close it.
+   */
+  @Override
+  public void close() {
+    final Connection current;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      current = rawConnection;
+      rawConnection = null;
+      connection = null;
+    }
+    executor.shutdownNow();
+    if (current != null) {
+      closeQuietly(current);
+    }
+  }
+}
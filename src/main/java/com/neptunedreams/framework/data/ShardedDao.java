@@ -0,0 +1,463 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A Dao that spreads its records over several other Daos, called shards, which are usually in separate databases on
+ * separate disks. Each record lives in one shard, chosen by a hash of its id, so reads and writes of a single record
+ * go to one shard. Searches go to every shard in parallel, and their results are merged. When the results are
+ * ordered, each shard's results are already sorted by the database, so they're merged with a k-way merge, using a
+ * comparator that must sort the same way as the shards do. Writes of several records are split by shard, and each
+ * shard gets its records as one batch, with all the shards writing in parallel.
+ * <p>
+ * A write of several records is not atomic across shards. Each shard writes its own batch, and commits it on its
+ * own, so if one shard fails, the others may already have written theirs, and those records stay written. The write
+ * waits for every shard to finish, then throws the first shard's exception, with the exceptions of any other shards
+ * that failed added as suppressed exceptions. A caller that needs all or nothing must undo the records that were
+ * written, or use a single shard.
+ * <p>
+ * Ids are allocated by this Dao, not by the shards, so they're unique across all the shards. The shards must keep
+ * the id of a record that already has one when it's inserted. The first id is one more than the highest id in any
+ * shard.
+ * <p>
+ * The number of shards may not change once records are written, since that would move records to different shards.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 9:10 PM
+ *
+ * @param <E> The entity type
+ * @param <F> The field type
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ShardedDao<E, F extends DBField> implements Dao<E, Integer, F> {
+  private final List<Dao<E, Integer, F>> shards;
+  private final Executor executor;
+  private final Function<? super F, ? extends Comparator<? super E>> orderComparator;
+  private int nextId = 0; // guarded by this. Zero until the shards are read.
+
+  /**
+   * An operation on one shard.
+   * @param <E> The entity type
+   * @param <F> The field type
+   * @param <T> The result type
+   */
+  @FunctionalInterface
+  private interface ShardOperation<E, F extends DBField, T> {
+    T apply(Dao<E, Integer, F> shard) throws SQLException;
+  }
+
+  /**
+   * A write of several records to one shard.
+   * @param <E> The entity type
+   * @param <F> The field type
+   */
+  @FunctionalInterface
+  private interface BatchOperation<E, F extends DBField> {
+    void apply(Dao<E, Integer, F> shard, List<E> batch) throws SQLException;
+  }
+
+  /**
+   * Create a ShardedDao
+   * @param shards The shards
+   * @param executor Runs the searches of the shards in parallel. It should have a thread for each shard.
+   * @param orderComparator Gets a comparator that sorts records in the same order that the shards use for each
+   *                        {@code orderBy} field.
+   */
+  public ShardedDao(
+      List<? extends Dao<E, Integer, F>> shards,
+      Executor executor,
+      Function<? super F, ? extends Comparator<? super E>> orderComparator
+  ) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("No shards");
+    }
+    this.shards = new ArrayList<>(shards);
+    this.executor = executor;
+    this.orderComparator = orderComparator;
+  }
+
+  /**
+   * Create a ShardedDao over the Daos of several databases. Each DatabaseInfo must already be initialized.
+   * @param databases The databases, usually with home directories on different disks
+   * @param entityClass The entity class
+   * @param executor Runs the searches of the shards in parallel. It should have a thread for each shard.
+   * @param orderComparator Gets a comparator that sorts records in the same order that the shards use for each
+   *                        {@code orderBy} field.
+   * @param <E> The entity type
+   * @param <F> The field type
+   * @return The ShardedDao
+   */
+  public static <E, F extends DBField> ShardedDao<E, F> create(
+      List<? extends DatabaseInfo> databases,
+      Class<E> entityClass,
+      Executor executor,
+      Function<? super F, ? extends Comparator<? super E>> orderComparator
+  ) {
+    List<Dao<E, Integer, F>> shards = new ArrayList<>();
+    for (DatabaseInfo info : databases) {
+      shards.add(info.<E, Integer, F>getDao(entityClass, info.getConnectionSource()));
+    }
+    return new ShardedDao<>(shards, executor, orderComparator);
+  }
+
+  /**
+   * @return The number of shards
+   */
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  private Dao<E, Integer, F> shardFor(int id) {
+    return shards.get(Math.floorMod(IdIndex.mix(id), shards.size()));
+  }
+
+  private Dao<E, Integer, F> shardFor(E entity) {
+    return shardFor(getPrimaryKeyValue(entity));
+  }
+
+  private int getPrimaryKeyValue(E entity) {
+    Integer id = getPrimaryKey(entity);
+    return (id == null) ? 0 : id;
+  }
+
+  /**
+   * Do the operation on every shard in parallel. If any shard fails, this still waits for the others to finish.
+   * @return The results, in shard order
+   */
+  private <T> List<T> scatter(ShardOperation<E, F, T> operation) throws SQLException {
+    List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+    for (Dao<E, Integer, F> shard : shards) {
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return operation.apply(shard);
+        } catch (SQLException e) {
+          throw new CompletionException(e);
+        }
+      }, executor));
+    }
+    List<T> results = new ArrayList<>(futures.size());
+    @Nullable Throwable failure = null;
+    for (CompletableFuture<T> future : futures) {
+      try {
+        results.add(future.join());
+      } catch (CompletionException e) {
+        Throwable cause = (e.getCause() instanceof SQLException) ? e.getCause() : e;
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure instanceof SQLException) {
+      throw (SQLException) failure;
+    }
+    if (failure != null) {
+      throw (CompletionException) failure;
+    }
+    return results;
+  }
+
+  private Collection<@NonNull E> gather(@Nullable F orderBy, ShardOperation<E, F, Collection<@NonNull E>> search)
+      throws SQLException {
+    List<Collection<@NonNull E>> results = scatter(search);
+    int total = 0;
+    for (Collection<@NonNull E> result : results) {
+      total += result.size();
+    }
+    List<@NonNull E> merged = new ArrayList<>(total);
+    if (orderBy == null) {
+      for (Collection<@NonNull E> result : results) {
+        merged.addAll(result);
+      }
+      return merged;
+    }
+
+    // k-way merge: The queue holds each shard's iterator, ordered by its next record.
+    Comparator<? super E> comparator = orderComparator.apply(orderBy);
+    final class Cursor {
+      private final Iterator<@NonNull E> iterator;
+      private @NonNull E head;
+
+      Cursor(Iterator<@NonNull E> iterator) {
+        this.iterator = iterator;
+        head = iterator.next();
+      }
+    }
+    PriorityQueue<Cursor> queue = new PriorityQueue<>(shards.size(), (a, b) -> comparator.compare(a.head, b.head));
+    for (Collection<@NonNull E> result : results) {
+      if (!result.isEmpty()) {
+        queue.add(new Cursor(result.iterator()));
+      }
+    }
+    while (!queue.isEmpty()) {
+      Cursor cursor = queue.poll();
+      merged.add(cursor.head);
+      if (cursor.iterator.hasNext()) {
+        cursor.head = cursor.iterator.next();
+        queue.add(cursor);
+      }
+    }
+    return merged;
+  }
+
+  @Override
+  public boolean createTableIfNeeded() throws SQLException {
+    boolean created = false;
+    for (Boolean shardCreated : scatter(Dao::createTableIfNeeded)) {
+      created |= shardCreated;
+    }
+    return created;
+  }
+
+  @Override
+  public Collection<@NonNull E> getAll(@Nullable F orderBy) throws SQLException {
+    return gather(orderBy, shard -> shard.getAll(orderBy));
+  }
+
+  @Override
+  public Collection<@NonNull E> find(String text, @Nullable F orderBy) throws SQLException {
+    return gather(orderBy, shard -> shard.find(text, orderBy));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAny(@Nullable F orderBy, String... text) throws SQLException {
+    return gather(orderBy, shard -> shard.findAny(orderBy, text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAll(@Nullable F orderBy, String... text) throws SQLException {
+    return gather(orderBy, shard -> shard.findAll(orderBy, text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findInField(String text, @NonNull F findBy, @Nullable F orderBy)
+      throws SQLException {
+    return gather(orderBy, shard -> shard.findInField(text, findBy, orderBy));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAnyInField(@NonNull F findBy, @Nullable F orderBy, String... text)
+      throws SQLException {
+    return gather(orderBy, shard -> shard.findAnyInField(findBy, orderBy, text));
+  }
+
+  @Override
+  public Collection<@NonNull E> findAllInField(@NonNull F findBy, @Nullable F orderBy, String... text)
+      throws SQLException {
+    return gather(orderBy, shard -> shard.findAllInField(findBy, orderBy, text));
+  }
+
+  /**
+   * Update the entity in its shard. If the entity has no id, it's inserted.
+   * @param entity The entity
+   * @throws SQLException If the shard can't save the entity
+   */
+  @Override
+  public void update(E entity) throws SQLException {
+    if (getPrimaryKeyValue(entity) == 0) {
+      insert(entity);
+    } else {
+      shardFor(entity).update(entity);
+    }
+  }
+
+  /**
+   * Insert the entity into its shard. If the entity has no id, it gets a new one first.
+   * @param entity The entity
+   * @throws SQLException If the shard can't insert the entity
+   */
+  @Override
+  public void insert(E entity) throws SQLException {
+    if (getPrimaryKeyValue(entity) == 0) {
+      setPrimaryKey(entity, allocateId());
+    }
+    shardFor(entity).insert(entity);
+  }
+
+  @Override
+  public void insertOrUpdate(E entity) throws SQLException {
+    if (getPrimaryKeyValue(entity) == 0) {
+      insert(entity);
+    } else {
+      shardFor(entity).insertOrUpdate(entity);
+    }
+  }
+
+  @Override
+  public void delete(E entity) throws SQLException {
+    shardFor(entity).delete(entity);
+  }
+
+  /**
+   * Insert the entities, as one batch for each shard. Entities with no id get new ones first.
+   * @param entities The entities to insert
+   * @throws SQLException If any shard can't insert its entities
+   */
+  @Override
+  public void insertAll(Collection<? extends E> entities) throws SQLException {
+    int newCount = 0;
+    for (E entity : entities) {
+      if (getPrimaryKeyValue(entity) == 0) {
+        newCount++;
+      }
+    }
+    if (newCount > 0) {
+      int id = allocateIds(newCount);
+      for (E entity : entities) {
+        if (getPrimaryKeyValue(entity) == 0) {
+          setPrimaryKey(entity, id++);
+        }
+      }
+    }
+    writeByShard(entities, Dao::insertAll);
+  }
+
+  /**
+   * Update the entities, as one batch for each shard. Entities with no id are inserted.
+   * @param entities The entities to update
+   * @throws SQLException If any shard can't save its entities
+   */
+  @Override
+  public void updateAll(Collection<? extends E> entities) throws SQLException {
+    List<E> newEntities = new ArrayList<>();
+    List<E> savedEntities = new ArrayList<>(entities.size());
+    for (E entity : entities) {
+      ((getPrimaryKeyValue(entity) == 0) ? newEntities : savedEntities).add(entity);
+    }
+    if (!newEntities.isEmpty()) {
+      insertAll(newEntities);
+    }
+    writeByShard(savedEntities, Dao::updateAll);
+  }
+
+  /**
+   * Delete the entities, as one batch for each shard.
+   * @param entities The entities to delete
+   * @throws SQLException If any shard can't delete its entities
+   */
+  @Override
+  public void deleteAll(Collection<? extends E> entities) throws SQLException {
+    writeByShard(entities, Dao::deleteAll);
+  }
+
+  /**
+   * Split the entities by shard, and write each shard's batch, with the shards in parallel. Shards with nothing to
+   * write aren't called.
+   */
+  private void writeByShard(Collection<? extends E> entities, BatchOperation<E, F> operation) throws SQLException {
+    if (entities.isEmpty()) {
+      return;
+    }
+    Map<Dao<E, Integer, F>, List<E>> batches = new IdentityHashMap<>(shards.size());
+    for (E entity : entities) {
+      batches.computeIfAbsent(shardFor(entity), shard -> new ArrayList<>()).add(entity);
+    }
+    scatter(shard -> {
+      List<E> batch = batches.get(shard);
+      if (batch != null) {
+        operation.apply(shard, batch);
+      }
+      return Boolean.TRUE;
+    });
+  }
+
+  private int allocateId() throws SQLException {
+    return allocateIds(1);
+  }
+
+  /**
+   * Reserve a run of consecutive ids.
+   * @param count The number of ids
+   * @return The first id
+   */
+  private int allocateIds(int count) throws SQLException {
+    readNextId();
+    synchronized (this) {
+      int first = nextId;
+      nextId += count;
+      return first;
+    }
+  }
+
+  /**
+   * Read the first id from the shards, unless it's already known. The shards are read without holding the lock, so
+   * a slow shard doesn't hold up threads that only want to allocate an id. Two threads may both read them at first,
+   * but only the first to finish stores what it read.
+   */
+  private void readNextId() throws SQLException {
+    synchronized (this) {
+      if (nextId != 0) {
+        return;
+      }
+    }
+    int highest = 1;
+    for (Integer shardNextId : scatter(Dao::getNextId)) {
+      highest = Math.max(highest, shardNextId);
+    }
+    synchronized (this) {
+      if (nextId == 0) {
+        nextId = highest;
+      }
+    }
+  }
+
+  /**
+   * Returns the next id that will be allocated by this Dao.
+   * @return The next id
+   * @throws SQLException If the shards can't be read
+   */
+  @Override
+  public Integer getNextId() throws SQLException {
+    readNextId();
+    synchronized (this) {
+      return nextId;
+    }
+  }
+
+  @Override
+  public Integer getPrimaryKey(E entity) {
+    return shards.get(0).getPrimaryKey(entity);
+  }
+
+  @Override
+  public int getTotal() throws SQLException {
+    int total = 0;
+    for (Integer shardTotal : scatter(Dao::getTotal)) {
+      total += shardTotal;
+    }
+    return total;
+  }
+
+  @Override
+  public void setPrimaryKey(E entity, Integer primaryKey) {
+    shards.get(0).setPrimaryKey(entity, primaryKey);
+  }
+
+  /**
+   * Warm up every shard in parallel.
+   * @throws SQLException If any shard can't be warmed up
+   */
+  @Override
+  public void warmUp() throws SQLException {
+    scatter(shard -> {
+      shard.warmUp();
+      return Boolean.TRUE;
+    });
+  }
+}
@@ -0,0 +1,741 @@
+package com.neptunedreams.framework.event;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.swing.SwingUtilities;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.Subscribe;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Delivers events to the methods of registered handlers that are annotated with {@link Subscribe}. Each method gets
+ * every event that's an instance of its parameter type, either on the thread that posted it, or on the method's own
+ * Executor, such as the event dispatch thread or a background pool. This follows the rules of the Guava EventBus,
+ * but it does its work when a handler is registered, rather than when an event is posted.
+ * <p>
+ * Each annotated method is compiled into an {@link Invoker} by the {@link LambdaMetafactory}, so calling it costs
+ * about as much as calling the method directly. Methods that the generated class couldn't call, such as private
+ * methods, are called through a bound MethodHandle instead. The subscribers of each event class are resolved once,
+ * into arrays grouped by Executor, and kept until another handler is registered. Posting an event that doesn't need
+ * to be queued for another thread allocates nothing.
+ * <p>
+ * Synchronous subscribers behave as they do in the Guava EventBus: An event posted by a subscriber, on the posting
+ * thread, is delivered after the current event has been delivered to all its subscribers, and a method that isn't
+ * annotated with {@link AllowConcurrentEvents} is never called by two threads at once. An event with no subscribers
+ * is posted again, wrapped in a {@link DeadEvent}.
+ * <p>
+ * Each subscriber that runs on an Executor gets its events through a bounded queue, one for each event class and
+ * Executor, which lasts as long as the dispatcher. When a burst of events fills the queue, its {@link OverflowPolicy}
+ * decides whether the oldest waiting event is dropped, the new one is dropped, or the posting thread waits. Each event
+ * class has its own policy and capacity, and its own count of overflows. Events with no policy of their own are never
+ * dropped.
+ * <p>
+ * Each queue delivers its events in the order they were posted, if its Executor runs tasks in order, as the event
+ * dispatch thread does.
+ * <p>
+ * When metrics are enabled, each delivery is timed, and recorded in the {@link SubscriberMetrics} of its subscriber
+ * and event class, along with how long it waited on its Executor. A subscriber that holds the event dispatch thread
+ * longer than the warning threshold is reported to System.err. Metrics are off by default, since timing each call
+ * costs about as much as the rest of the post.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 1:30 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+final class EventDispatcher {
+  private static final Route[] NO_ROUTES = new Route[0];
+  private static final QueueSpec DEFAULT_QUEUE_SPEC
+      = new QueueSpec(OverflowPolicy.BLOCK, MasterEventBus.DEFAULT_QUEUE_CAPACITY);
+
+  private final Object source;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  // For each event class, its subscribers grouped by Executor. This is cleared whenever a subscriber is added.
+  private final Map<Class<?>, Route[]> routes = new ConcurrentHashMap<>();
+
+  // For each event class, the queue of each Executor. Unlike the routes, these are never cleared.
+  private final Map<Class<?>, Map<Executor, Lane>> lanes = new HashMap<>(); // guarded by this
+
+  // Events posted by synchronous subscribers, waiting for the current event to be delivered.
+  private final ThreadLocal<PostingThread> postingThread = ThreadLocal.withInitial(PostingThread::new);
+
+  // The queue policies set for each event class, and the overflows of each event class that has been posted.
+  private final Map<Class<?>, QueueSpec> queueSpecs = new ConcurrentHashMap<>();
+  private final Map<Class<?>, LongAdder> overflowCounts = new ConcurrentHashMap<>();
+
+  private volatile boolean measuring = false;
+  private volatile long edtWarningNanos = TimeUnit.MILLISECONDS.toNanos(MasterEventBus.DEFAULT_EDT_WARNING_MILLIS);
+
+  /**
+   * Calls a single subscriber method on its handler.
+   */
+  @FunctionalInterface
+  interface Invoker {
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    void invoke(Object event) throws Throwable;
+  }
+
+  private static final class Subscriber {
+    private final Object target;
+    private final Method method;
+    private final Class<?> eventType;
+    private final @Nullable Executor executor;
+    private final Invoker invoker;
+    private final boolean threadSafe;
+    private final Map<Class<?>, SubscriberMetrics> metrics = new ConcurrentHashMap<>(); // by event class
+
+    Subscriber(Object target, Method method, @Nullable Executor executor) {
+      this.target = target;
+      this.method = method;
+      eventType = method.getParameterTypes()[0];
+      this.executor = executor;
+      invoker = makeInvoker(target, method);
+      threadSafe = method.isAnnotationPresent(AllowConcurrentEvents.class);
+    }
+
+    /**
+     * @param event The event
+     * @return false if the subscriber threw an exception
+     */
+    boolean deliver(Object event) {
+      try {
+        if (threadSafe) {
+          invoker.invoke(event);
+        } else {
+          synchronized (this) {
+            invoker.invoke(event);
+          }
+        }
+        return true;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        //noinspection UseOfSystemOutOrSystemErr,HardCodedStringLiteral
+        System.err.printf("Subscriber %s failed on %s%n", method, event);
+        t.printStackTrace();
+        return false;
+      }
+    }
+
+    SubscriberMetrics getMetrics(Class<?> eventClass) {
+      return metrics.computeIfAbsent(eventClass, c -> new SubscriberMetrics(getName(), c));
+    }
+
+    String getName() {
+      return method.getDeclaringClass().getName() + '.' + method.getName();
+    }
+  }
+
+  /**
+   * The subscribers of one event class that run on the same Executor, or on the posting thread. Routes are rebuilt
+   * whenever a handler is registered, but a route with an Executor queues its events in a {@link Lane}, which lasts as
+   * long as the dispatcher, so rebuilding the routes never leaves two queues for the same Executor.
+   */
+  private final class Route {
+    private final Subscriber[] subscribers;
+    private final SubscriberMetrics[] metrics; // in the same order as the subscribers
+    private final @Nullable Executor executor;
+    private final @Nullable Lane lane;
+
+    Route(Class<?> eventClass, Subscriber[] subscribers, @Nullable Executor executor, @Nullable Lane lane) {
+      this.subscribers = subscribers;
+      this.executor = executor;
+      this.lane = lane;
+      metrics = new SubscriberMetrics[subscribers.length];
+      for (int i = 0; i < subscribers.length; ++i) {
+        metrics[i] = subscribers[i].getMetrics(eventClass);
+      }
+    }
+
+    void deliver(Object event) {
+      if (!measuring) {
+        for (Subscriber subscriber : subscribers) {
+          subscriber.deliver(event);
+        }
+        return;
+      }
+      for (int i = 0; i < subscribers.length; ++i) {
+        long start = System.nanoTime();
+        boolean succeeded = subscribers[i].deliver(event);
+        long elapsed = System.nanoTime() - start;
+        metrics[i].recordCall(elapsed, succeeded);
+        if ((elapsed > edtWarningNanos) && SwingUtilities.isEventDispatchThread()) {
+          //noinspection UseOfSystemOutOrSystemErr,HardCodedStringLiteral
+          System.err.printf("Subscriber %s blocked the event dispatch thread for %d ms on %s%n",
+              subscribers[i].getName(), TimeUnit.NANOSECONDS.toMillis(elapsed), event);
+        }
+      }
+    }
+
+    /**
+     * Queue an event for the Executor, following the overflow policy if the queue is full.
+     * @param event The event
+     */
+    void enqueue(Object event) {
+      Objects.requireNonNull(lane).enqueue(event, this);
+    }
+
+    /**
+     * Record a dropped event.
+     * @param wasQueued true if the event was waiting, and was counted in the queue depth when it was queued
+     */
+    private void overflowed(boolean wasQueued) {
+      if (measuring || wasQueued) { // The depth must come back down, even if metrics were turned off since.
+        for (SubscriberMetrics subscriberMetrics : metrics) {
+          subscriberMetrics.recordDropped(wasQueued);
+        }
+      }
+    }
+
+    /**
+     * @return The time, for the wait time of a delivery being queued now, or zero if it isn't being measured.
+     */
+    private long queued() {
+      if (!measuring) {
+        return 0L;
+      }
+      for (SubscriberMetrics subscriberMetrics : metrics) {
+        subscriberMetrics.recordQueued();
+      }
+      return System.nanoTime();
+    }
+
+    private void dequeued(long queuedTime) {
+      if (queuedTime != 0L) {
+        long wait = System.nanoTime() - queuedTime;
+        for (SubscriberMetrics subscriberMetrics : metrics) {
+          subscriberMetrics.recordDequeued(wait);
+        }
+      }
+    }
+  }
+
+  /**
+   * The bounded queue of the events of one class that are waiting for one Executor. It's drained by a single task,
+   * one event at a time, so a slow subscriber on the event dispatch thread doesn't keep other work off it. Each event
+   * is delivered by the route that queued it, so it goes to the subscribers that were registered when it was posted,
+   * as it would in the Guava EventBus.
+   */
+  private static final class Lane {
+    // The Executor whose events the current thread is delivering, if any
+    private static final ThreadLocal<@Nullable Executor> drainingFor = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final LongAdder overflows;
+    private OverflowPolicy policy; // guarded by this
+    private int capacity; // guarded by this
+
+    // The waiting events, in a ring, with the routes that queued them, and the times they were queued, or zeroes if
+    // they weren't measured.
+    private Object[] events = new Object[1]; // guarded by this
+    private Route[] queuedBy = new Route[1]; // guarded by this
+    private long[] queuedAt = new long[1]; // guarded by this
+    private int head = 0; // guarded by this
+    private int size = 0; // guarded by this
+    private boolean scheduled = false; // guarded by this. True while the drain task is queued or running.
+
+    // Since it's made once, queueing it allocates nothing.
+    private final Runnable drainTask = this::deliverNext;
+
+    Lane(Executor executor, LongAdder overflows, QueueSpec spec) {
+      this.executor = executor;
+      this.overflows = overflows;
+      policy = spec.policy;
+      capacity = spec.capacity;
+    }
+
+    synchronized void setSpec(QueueSpec spec) {
+      policy = spec.policy;
+      capacity = spec.capacity;
+      notifyAll(); // A blocked poster may have room now.
+    }
+
+    void enqueue(Object event, Route route) {
+      final boolean schedule;
+      synchronized (this) {
+        if ((policy == OverflowPolicy.DROP_DUPLICATES) && isWaiting(event)) {
+          overflows.increment();
+          route.overflowed(false);
+          return;
+        }
+        if (size >= capacity) {
+          switch (policy) {
+            case LATEST_WINS:
+              queuedBy[head].overflowed(queuedAt[head] != 0L);
+              removeFirst();
+              overflows.increment();
+              break;
+            case DROP_DUPLICATES:
+              overflows.increment();
+              route.overflowed(false);
+              return;
+            case BLOCK:
+              overflows.increment();
+              awaitRoom();
+              break;
+            default:
+              throw new AssertionError(String.format("Unhandled case: %s", policy));
+          }
+        }
+        addLast(event, route, route.queued());
+        schedule = !scheduled;
+        scheduled = true;
+      }
+      if (schedule) {
+        executor.execute(drainTask);
+      }
+    }
+
+    private void deliverNext() {
+      final Object event;
+      final Route route;
+      final long queuedTime;
+      synchronized (this) {
+        if (size == 0) {
+          scheduled = false;
+          return;
+        }
+        event = events[head];
+        route = queuedBy[head];
+        queuedTime = queuedAt[head];
+        removeFirst();
+      }
+      final Executor outerDrain = drainingFor.get();
+      drainingFor.set(executor);
+      try {
+        route.dequeued(queuedTime);
+        route.deliver(event);
+      } finally {
+        drainingFor.set(outerDrain);
+        final boolean more;
+        synchronized (this) {
+          more = size > 0;
+          scheduled = more;
+        }
+        if (more) {
+          executor.execute(drainTask);
+        }
+      }
+    }
+
+    private boolean isWaiting(Object event) {
+      for (int i = 0; i < size; ++i) {
+        if (events[(head + i) % events.length].equals(event)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Wait until the queue has room. A thread that may be needed to drain the queue never waits, and goes past the
+     * capacity instead: the event dispatch thread, and any thread that's delivering events for the same Executor,
+     * since that's a thread the Executor owns, and its pool may have no other thread to drain with.
+     */
+    private void awaitRoom() {
+      if (SwingUtilities.isEventDispatchThread() || (drainingFor.get() == executor)) {
+        return;
+      }
+      try {
+        while ((size >= capacity) && (policy == OverflowPolicy.BLOCK)) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt(); // Queue it anyway, rather than lose it.
+      }
+    }
+
+    private void addLast(Object event, Route route, long time) {
+      if (size == events.length) {
+        Object[] grownEvents = new Object[events.length * 2];
+        Route[] grownRoutes = new Route[events.length * 2];
+        long[] grownTimes = new long[events.length * 2];
+        for (int i = 0; i < size; ++i) {
+          grownEvents[i] = events[(head + i) % events.length];
+          grownRoutes[i] = queuedBy[(head + i) % events.length];
+          grownTimes[i] = queuedAt[(head + i) % events.length];
+        }
+        events = grownEvents;
+        queuedBy = grownRoutes;
+        queuedAt = grownTimes;
+        head = 0;
+      }
+      int tail = (head + size) % events.length;
+      events[tail] = event;
+      queuedBy[tail] = route;
+      queuedAt[tail] = time;
+      size++;
+    }
+
+    private void removeFirst() {
+      events[head] = null;
+      queuedBy[head] = null;
+      head = (head + 1) % events.length;
+      size--;
+      if (policy == OverflowPolicy.BLOCK) {
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * The overflow policy and capacity of the queues of one class of event
+   */
+  private static final class QueueSpec {
+    private final OverflowPolicy policy;
+    private final int capacity;
+
+    QueueSpec(OverflowPolicy policy, int capacity) {
+      this.policy = policy;
+      this.capacity = capacity;
+    }
+  }
+
+  /**
+   * The events posted on one thread while it's delivering another, each with the synchronous route it had when it was
+   * posted, so a subscriber that registers or unregisters a handler doesn't change where a waiting event goes.
+   */
+  private static final class PostingThread {
+    private final ArrayDeque<Object> events = new ArrayDeque<>();
+    private final ArrayDeque<Route> routes = new ArrayDeque<>(); // in the same order as the events
+    private boolean dispatching = false;
+  }
+
+  /**
+   * Create an EventDispatcher
+   * @param source The source of the DeadEvents that are posted for events with no subscribers
+   */
+  EventDispatcher(Object source) {
+    this.source = source;
+  }
+
+  /**
+   * Register each method of the handler, its superclasses, and its interfaces, that's annotated with
+   * {@link Subscribe}.
+   * @param handler The handler
+   * @param executor Runs the handler's methods, or null to run them on the thread that posts each event
+   * @throws IllegalArgumentException If an annotated method doesn't take exactly one parameter
+   */
+  synchronized void register(Object handler, @Nullable Executor executor) {
+    Set<List<Object>> signatures = new HashSet<>(); // An overriding method replaces the one it overrides.
+    for (Class<?> type : getTypes(handler.getClass())) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class) && !method.isSynthetic()) {
+          if (method.getParameterCount() != 1) {
+            throw new IllegalArgumentException(String.format("%s must take exactly one parameter", method));
+          }
+          if (signatures.add(Arrays.asList(method.getName(), method.getParameterTypes()[0]))) {
+            method.setAccessible(true);
+            subscribers.add(new Subscriber(handler, method, executor));
+          }
+        }
+      }
+    }
+    routes.clear();
+  }
+
+  /**
+   * Unregister every method of the handler. Events already queued for the handler's Executor are still delivered to
+   * it, as they are in the Guava EventBus.
+   * @param handler The handler
+   * @throws IllegalArgumentException If the handler isn't registered
+   */
+  synchronized void unregister(Object handler) {
+    List<Subscriber> removed = new ArrayList<>();
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.target == handler) {
+        removed.add(subscriber);
+      }
+    }
+    if (removed.isEmpty()) {
+      throw new IllegalArgumentException(String.format("%s is not registered", handler));
+    }
+    subscribers.removeAll(removed);
+    routes.clear();
+  }
+
+  private static Set<Class<?>> getTypes(Class<?> type) {
+    Set<Class<?>> types = new LinkedHashSet<>();
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      types.add(c);
+    }
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      addInterfaces(c, types);
+    }
+    return types;
+  }
+
+  private static void addInterfaces(Class<?> type, Set<Class<?>> types) {
+    for (Class<?> anInterface : type.getInterfaces()) {
+      if (types.add(anInterface)) {
+        addInterfaces(anInterface, types);
+      }
+    }
+  }
+
+  /**
+   * Set how the queues of an event class, and its subclasses, handle a burst of events. Events already queued stay in
+   * their queues, and the new policy applies from the next event posted.
+   * @param eventClass The event class
+   * @param policy What to do with a new event when a queue is full
+   * @param capacity The most events a queue may hold, not counting the one being delivered
+   * @throws IllegalArgumentException If the capacity isn't positive
+   */
+  synchronized void setQueuePolicy(Class<?> eventClass, OverflowPolicy policy, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("Capacity must be positive: %d", capacity));
+    }
+    queueSpecs.put(eventClass, new QueueSpec(policy, capacity));
+    routes.clear();
+  }
+
+  private QueueSpec getQueueSpec(Class<?> eventClass) {
+    for (Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+      QueueSpec spec = queueSpecs.get(type);
+      if (spec != null) {
+        return spec;
+      }
+    }
+    return DEFAULT_QUEUE_SPEC;
+  }
+
+  /**
+   * @return The number of posts of each event class that overflowed a queue, and were dropped, replaced a waiting
+   * event, or had to wait for room
+   */
+  Map<Class<?>, Long> getOverflowCounts() {
+    Map<Class<?>, Long> counts = new LinkedHashMap<>();
+    for (Map.Entry<Class<?>, LongAdder> entry : overflowCounts.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Post an event to its subscribers.
+   * @param event The event
+   */
+  void post(Object event) {
+    final Route[] eventRoutes = getRoutes(event.getClass());
+    if (eventRoutes.length == 0) {
+      if (!(event instanceof DeadEvent)) {
+        post(new DeadEvent(source, event));
+      }
+      return;
+    }
+    @Nullable Route synchronousRoute = null;
+    for (Route route : eventRoutes) {
+      if (route.executor == null) {
+        synchronousRoute = route;
+      } else {
+        route.enqueue(event);
+      }
+    }
+    if (synchronousRoute != null) {
+      postSynchronously(event, synchronousRoute);
+    }
+  }
+
+  private void postSynchronously(Object event, Route route) {
+    PostingThread thread = postingThread.get();
+    thread.events.add(event);
+    thread.routes.add(route);
+    if (!thread.dispatching) {
+      thread.dispatching = true;
+      try {
+        Object next;
+        while ((next = thread.events.poll()) != null) {
+          thread.routes.remove().deliver(next);
+        }
+      } finally {
+        thread.dispatching = false;
+        thread.events.clear(); // If a subscriber threw an Error, the events after it are dropped.
+        thread.routes.clear();
+      }
+    }
+  }
+
+  /**
+   * Turn metrics on or off. While they're off, nothing is recorded, and nothing is reported.
+   * @param enabled true to record metrics
+   */
+  void setMetricsEnabled(boolean enabled) {
+    measuring = enabled;
+  }
+
+  boolean isMetricsEnabled() {
+    return measuring;
+  }
+
+  /**
+   * Set how long a subscriber may hold the event dispatch thread before it's reported. This only applies while
+   * metrics are enabled.
+   * @param threshold The threshold, or zero to never report it
+   * @param unit The unit of the threshold
+   */
+  void setEdtWarningThreshold(long threshold, TimeUnit unit) {
+    edtWarningNanos = (threshold <= 0L) ? Long.MAX_VALUE : unit.toNanos(threshold);
+  }
+
+  /**
+   * @return A snapshot of the metrics of each subscriber and event class that has been delivered since metrics were
+   * enabled, in the order the subscribers were registered.
+   */
+  List<SubscriberStats> getStats() {
+    List<SubscriberStats> stats = new ArrayList<>();
+    for (Subscriber subscriber : subscribers) {
+      for (SubscriberMetrics subscriberMetrics : subscriber.metrics.values()) {
+        SubscriberStats snapshot = subscriberMetrics.snapshot();
+        if ((snapshot.getInvocations() > 0L) || (snapshot.getQueueDepth() > 0) || (snapshot.getDropped() > 0L)) {
+          stats.add(snapshot);
+        }
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Discard all the recorded metrics.
+   */
+  void resetStats() {
+    for (Subscriber subscriber : subscribers) {
+      for (SubscriberMetrics subscriberMetrics : subscriber.metrics.values()) {
+        subscriberMetrics.reset();
+      }
+    }
+  }
+
+  private Route[] getRoutes(Class<?> eventClass) {
+    Route[] eventRoutes = routes.get(eventClass);
+    if (eventRoutes == null) {
+      synchronized (this) { // so a concurrent register() can't leave behind a stale route
+        return getRoutesLocked(eventClass);
+      }
+    }
+    return eventRoutes;
+  }
+
+  private Route[] getRoutesLocked(Class<?> eventClass) {
+    Route[] eventRoutes = routes.get(eventClass);
+    if (eventRoutes == null) {
+      Map<@Nullable Executor, List<Subscriber>> byExecutor = new LinkedHashMap<>();
+      byExecutor.put(null, new ArrayList<>()); // The synchronous route comes first.
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.eventType.isAssignableFrom(eventClass)) {
+          byExecutor.computeIfAbsent(subscriber.executor, e -> new ArrayList<>()).add(subscriber);
+        }
+      }
+      List<Route> routeList = new ArrayList<>();
+      for (Map.Entry<@Nullable Executor, List<Subscriber>> entry : byExecutor.entrySet()) {
+        List<Subscriber> targets = entry.getValue();
+        if (!targets.isEmpty()) {
+          Executor executor = entry.getKey();
+          Lane lane = (executor == null) ? null : getLane(eventClass, executor);
+          routeList.add(new Route(eventClass, targets.toArray(new Subscriber[0]), executor, lane));
+        }
+      }
+      eventRoutes = routeList.isEmpty() ? NO_ROUTES : routeList.toArray(new Route[0]);
+      routes.put(eventClass, eventRoutes);
+    }
+    return eventRoutes;
+  }
+
+  private Lane getLane(Class<?> eventClass, Executor executor) {
+    QueueSpec spec = getQueueSpec(eventClass);
+    Map<Executor, Lane> executorLanes = lanes.computeIfAbsent(eventClass, c -> new HashMap<>());
+    Lane lane = executorLanes.get(executor);
+    if (lane == null) {
+      lane = new Lane(executor, overflowCounts.computeIfAbsent(eventClass, c -> new LongAdder()), spec);
+      executorLanes.put(executor, lane);
+    } else {
+      lane.setSpec(spec); // in case the policy changed
+    }
+    return lane;
+  }
+
+  /**
+   * Make an Invoker that calls the method on the target. If the method and the classes it names can be reached from
+   * here, this is a class generated by the LambdaMetafactory, which calls the method directly. Otherwise, it's a
+   * MethodHandle bound to the target.
+   * @param target The handler
+   * @param method The subscriber method, which must already be accessible
+   * @return The Invoker
+   */
+  static Invoker makeInvoker(Object target, Method method) {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    final MethodHandle handle;
+    try {
+      handle = lookup.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e); // setAccessible() was called, so this never happens.
+    }
+    final Class<?> handlerType = method.getDeclaringClass();
+    final Class<?> eventType = method.getParameterTypes()[0];
+    if (Modifier.isPublic(method.getModifiers()) && isReachable(handlerType) && isReachable(eventType)) {
+      try {
+        CallSite site = LambdaMetafactory.metafactory(
+            lookup,
+            "invoke",
+            MethodType.methodType(Invoker.class, handlerType),
+            MethodType.methodType(void.class, Object.class),
+            handle,
+            MethodType.methodType(void.class, eventType)
+        );
+        return (Invoker) site.getTarget().invoke(target);
+      } catch (LambdaConversionException e) {
+        // Fall back to the MethodHandle.
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+    final MethodHandle bound = handle.bindTo(target).asType(MethodType.methodType(void.class, Object.class));
+    return event -> {
+      bound.invokeExact(event); // As a statement, so the call site returns void, as the handle does.
+    };
+  }
+
+  /**
+   * @param type A class
+   * @return true if a class generated here may name the type: It's public, along with its enclosing classes, and it
+   * is the same class that this class's loader would load for its name.
+   */
+  private static boolean isReachable(Class<?> type) {
+    if (type.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    try {
+      return Class.forName(type.getName(), false, EventDispatcher.class.getClassLoader()) == type;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
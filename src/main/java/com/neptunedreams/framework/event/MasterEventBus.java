@@ -1,7 +1,14 @@
 package com.neptunedreams.framework.event;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
 import com.google.common.eventbus.DeadEvent;
-import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
 /**
@@ -13,6 +20,21 @@ import com.google.common.eventbus.Subscribe;
  * set of post methods. This design guarantee that a message can't get posted to the wrong EventBus.
  * The only mistake that can get made is registering a class with the wrong event bus. Consequently, 
  * each facade class should also have a unique name for its register method.
+ * <p>
+ * By default, each handler runs on the thread that posted the event. A handler may instead be registered to run on
+ * a {@link Lane}, such as the event dispatch thread, or on its own Executor. Those handlers get their events
+ * asynchronously, through bounded queues, so a burst of events can't build up a backlog. By default, a handler that
+ * falls behind only gets the latest ChangeRecord event, and no more than one of each data-free event. Other events
+ * make the posting thread wait, once {@value #DEFAULT_QUEUE_CAPACITY} of them are waiting. See
+ * {@link #setOverflowPolicy(Class, OverflowPolicy, int)}.
+ * <p>
+ * The event bus follows the rules of the Guava EventBus, and uses its annotations, but it resolves each handler
+ * method when the handler is registered, and calls it through generated code rather than reflection, so posting an
+ * event costs little more than calling the handlers directly. See {@link EventDispatcher}.
+ * <p>
+ * To find out which handler makes an event slow, {@linkplain #setMetricsEnabled(boolean) enable metrics}, and read
+ * them back with {@link #getSubscriberStats()}. While they're enabled, any handler that holds the event dispatch
+ * thread for longer than the {@linkplain #setEdtWarningThreshold(long, TimeUnit) warning threshold} is reported.
  * <p>Created by IntelliJ IDEA.
  * <p>Date: 1/2/18
  * <p>Time: 12:38 AM
@@ -21,18 +43,145 @@ import com.google.common.eventbus.Subscribe;
  */
 public final class MasterEventBus {
   private MasterEventBus() {
-    master.register(this); // Register Dead Events.
+    master.register(this, null); // Register Dead Events.
+  }
+
+  private static final EventDispatcher master = new EventDispatcher(MasterEventBus.class);
+
+  /**
+   * Where asynchronous handlers run
+   */
+  public enum Lane {
+    /** The event dispatch thread */
+    EDT(SwingUtilities::invokeLater),
+    /** A shared pool of background threads. Events may be handled out of order. */
+    BACKGROUND(command -> BackgroundPool.POOL.execute(command));
+
+    private final Executor executor;
+
+    Lane(Executor executor) {
+      this.executor = executor;
+    }
   }
 
-  @SuppressWarnings("HardCodedStringLiteral")
-  private static EventBus master = new EventBus("master");
+  private enum BackgroundPool {
+    ;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    @SuppressWarnings("HardCodedStringLiteral")
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+          Thread thread = new Thread(r, "MasterEventBus " + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
 
   /**
-   * Register an instance with the master event bus
+   * Register an instance with the master event bus. Its handlers run on the thread that posts each event.
    * @param eventHandlerInstance The instance to register
    */
   public static void registerMasterEventHandler(Object eventHandlerInstance) {
-    master.register(eventHandlerInstance);
+    master.register(eventHandlerInstance, null);
+  }
+
+  /**
+   * Register an instance with the master event bus, to run its handlers asynchronously on the specified lane.
+   * @param eventHandlerInstance The instance to register
+   * @param lane The lane on which the handlers will run
+   */
+  public static void registerMasterEventHandler(Object eventHandlerInstance, Lane lane) {
+    registerMasterEventHandler(eventHandlerInstance, lane.executor);
+  }
+
+  /**
+   * Register an instance with the master event bus, to run its handlers asynchronously on the specified Executor.
+   * @param eventHandlerInstance The instance to register
+   * @param executor Runs the handlers. If it runs tasks in order, the events arrive in the order they were posted.
+   */
+  public static void registerMasterEventHandler(Object eventHandlerInstance, Executor executor) {
+    master.register(eventHandlerInstance, executor);
+  }
+
+  /**
+   * Unregister an instance from the master event bus, so its handlers get no more events.
+   * @param eventHandlerInstance The instance to unregister
+   * @throws IllegalArgumentException If the instance isn't registered
+   */
+  public static void unregisterMasterEventHandler(Object eventHandlerInstance) {
+    master.unregister(eventHandlerInstance);
+  }
+
+  /**
+   * Record how long each handler takes with each class of event, and how long asynchronous handlers wait to run.
+   * Metrics are off by default.
+   * @param enabled true to record metrics, false to stop
+   */
+  public static void setMetricsEnabled(boolean enabled) {
+    master.setMetricsEnabled(enabled);
+  }
+
+  /**
+   * @return true if metrics are being recorded
+   */
+  public static boolean isMetricsEnabled() {
+    return master.isMetricsEnabled();
+  }
+
+  /**
+   * Set how long a handler may hold the event dispatch thread before it gets reported to System.err. This only
+   * applies while metrics are enabled. The default is {@value #DEFAULT_EDT_WARNING_MILLIS} milliseconds.
+   * @param threshold The threshold, or zero to never report it
+   * @param unit The unit of the threshold
+   */
+  public static void setEdtWarningThreshold(long threshold, TimeUnit unit) {
+    master.setEdtWarningThreshold(threshold, unit);
+  }
+
+  /**
+   * The default warning threshold for handlers that hold the event dispatch thread, in milliseconds
+   */
+  public static final long DEFAULT_EDT_WARNING_MILLIS = 100L;
+
+  /**
+   * Get the metrics recorded for each handler method and event class since metrics were enabled, or last reset.
+   * @return A snapshot of the metrics, in the order the handlers were registered
+   */
+  public static List<SubscriberStats> getSubscriberStats() {
+    return master.getStats();
+  }
+
+  /**
+   * Discard the recorded metrics, and start over.
+   */
+  public static void resetSubscriberStats() {
+    master.resetStats();
+  }
+
+  /**
+   * The capacity of the queues of events that have no overflow policy of their own
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  /**
+   * Set how the queues of asynchronous handlers treat a burst of events of a class, or of its subclasses. This should
+   * be called before any of those events are posted.
+   * @param eventClass The event class
+   * @param policy What to do with a new event when a queue is full
+   * @param capacity The most events that may wait in each queue, not counting the one being handled
+   * @throws IllegalArgumentException If the capacity isn't positive
+   */
+  public static void setOverflowPolicy(Class<?> eventClass, OverflowPolicy policy, int capacity) {
+    master.setQueuePolicy(eventClass, policy, capacity);
+  }
+
+  /**
+   * Get the number of posts of each event class that found a queue full, or, under
+   * {@link OverflowPolicy#DROP_DUPLICATES}, found an equal event already waiting. These are counted whether or not
+   * metrics are enabled.
+   * @return The overflow counts, by event class
+   */
+  public static Map<Class<?>, Long> getOverflowCounts() {
+    return master.getOverflowCounts();
   }
 
   // Data-Free Events:
@@ -40,6 +189,14 @@ public final class MasterEventBus {
   private static final SearchNowEvent searchNowEvent = new SearchNowEvent();
   private static final UserRequestedNewRecordEvent userRequestedNewRecordEvent = new UserRequestedNewRecordEvent();
 
+  static {
+    // A handler that falls behind only needs to see the record the user stopped on.
+    setOverflowPolicy(ChangeRecord.class, OverflowPolicy.LATEST_WINS, 1);
+    setOverflowPolicy(LoadUIEvent.class, OverflowPolicy.DROP_DUPLICATES, 1);
+    setOverflowPolicy(SearchNowEvent.class, OverflowPolicy.DROP_DUPLICATES, 1);
+    setOverflowPolicy(UserRequestedNewRecordEvent.class, OverflowPolicy.DROP_DUPLICATES, 1);
+  }
+
   // Simple public Event Classes (Classes that have no data)
 
   /**
@@ -86,7 +243,8 @@ public final class MasterEventBus {
    * @param <R> The type of the record
    */
   public static <R> void postChangeRecordEvent(R record) {
-    master.post(new ChangeRecord<>(record));
+    ChangeRecord<R> event = new ChangeRecord<>(record);
+    master.post(event);
   }
 
   /**
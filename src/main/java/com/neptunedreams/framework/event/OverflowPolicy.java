@@ -0,0 +1,32 @@
+package com.neptunedreams.framework.event;
+
+/**
+ * What an asynchronous subscriber's queue does with a new event when it's already holding as many events as it may.
+ * Each class of event has its own policy and capacity, set by
+ * {@link MasterEventBus#setOverflowPolicy(Class, OverflowPolicy, int)}. Each post that the policy doesn't simply
+ * queue is counted as an overflow.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 4:10 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ * @see MasterEventBus#getOverflowCounts()
+ */
+public enum OverflowPolicy {
+  /**
+   * Drop the oldest waiting event to make room for the new one. With a capacity of one, a subscriber that falls
+   * behind only sees the most recent event, such as the record the user finally stopped on.
+   */
+  LATEST_WINS,
+  /**
+   * Drop the new event if an equal one is already waiting, or if the queue is full. This suits events that carry no
+   * data, where delivering one of them is as good as delivering several.
+   */
+  DROP_DUPLICATES,
+  /**
+   * Make the posting thread wait for room, so no event is lost. The event dispatch thread never waits, and neither
+   * does a subscriber running on the queue's own Executor, since either may be the thread that empties the queue, so
+   * events posted from them are queued past the capacity.
+   */
+  BLOCK
+}
@@ -0,0 +1,127 @@
+package com.neptunedreams.framework.event;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how one subscriber method handles one class of event: how often it's called, how long it takes, how often
+ * it fails, and, if it runs on an Executor, how many deliveries are waiting and how long they wait. Everything may be
+ * recorded from any thread, without locking. Times are kept in histograms with a bucket for each power of two
+ * nanoseconds.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 2:15 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+final class SubscriberMetrics {
+  private final String subscriber;
+  private final Class<?> eventType;
+
+  private final LongAdder invocations = new LongAdder();
+  private final LongAdder exceptions = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLongArray latencies = new AtomicLongArray(Long.SIZE);
+
+  private final LongAdder dropped = new LongAdder();
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLongArray waits = new AtomicLongArray(Long.SIZE);
+
+  SubscriberMetrics(String subscriber, Class<?> eventType) {
+    this.subscriber = subscriber;
+    this.eventType = eventType;
+  }
+
+  void recordCall(long nanos, boolean succeeded) {
+    invocations.increment();
+    if (!succeeded) {
+      exceptions.increment();
+    }
+    totalNanos.add(nanos);
+    latencies.incrementAndGet(bucket(nanos));
+    long max = maxNanos.get();
+    while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  void recordQueued() {
+    int depth = queueDepth.incrementAndGet();
+    int max = maxQueueDepth.get();
+    while ((depth > max) && !maxQueueDepth.compareAndSet(max, depth)) {
+      max = maxQueueDepth.get();
+    }
+  }
+
+  void recordDequeued(long waitNanos) {
+    queueDepth.decrementAndGet();
+    totalWaitNanos.add(waitNanos);
+    waits.incrementAndGet(bucket(waitNanos));
+  }
+
+  /**
+   * Record an event that will never be delivered, because of its queue's overflow policy.
+   * @param wasQueued true if the event was waiting in the queue, and was counted by {@link #recordQueued()} when it
+   *                  was queued, false if it was dropped when it was posted, or queued while metrics were off
+   */
+  void recordDropped(boolean wasQueued) {
+    dropped.increment();
+    if (wasQueued) {
+      queueDepth.decrementAndGet();
+    }
+  }
+
+  /**
+   * @param nanos A time, in nanoseconds
+   * @return The histogram bucket for the time, which is the position of its highest bit, or zero for times under 2ns
+   */
+  static int bucket(long nanos) {
+    return (Long.SIZE - 1) - Long.numberOfLeadingZeros(Math.max(nanos, 1L));
+  }
+
+  /**
+   * Start over, as though nothing had been recorded. The current queue depth is kept, since those deliveries are
+   * still waiting.
+   */
+  void reset() {
+    invocations.reset();
+    exceptions.reset();
+    totalNanos.reset();
+    maxNanos.set(0L);
+    dropped.reset();
+    maxQueueDepth.set(queueDepth.get());
+    totalWaitNanos.reset();
+    for (int i = 0; i < Long.SIZE; ++i) {
+      latencies.set(i, 0L);
+      waits.set(i, 0L);
+    }
+  }
+
+  SubscriberStats snapshot() {
+    long[] latencyCounts = new long[Long.SIZE];
+    long[] waitCounts = new long[Long.SIZE];
+    for (int i = 0; i < Long.SIZE; ++i) {
+      latencyCounts[i] = latencies.get(i);
+      waitCounts[i] = waits.get(i);
+    }
+    return new SubscriberStats(
+        subscriber,
+        eventType,
+        invocations.sum(),
+        exceptions.sum(),
+        totalNanos.sum(),
+        maxNanos.get(),
+        latencyCounts,
+        dropped.sum(),
+        queueDepth.get(),
+        maxQueueDepth.get(),
+        totalWaitNanos.sum(),
+        waitCounts
+    );
+  }
+}
@@ -0,0 +1,155 @@
+package com.neptunedreams.framework.event;
+
+/**
+ * A snapshot of how one subscriber method has handled one class of event, since metrics were enabled or last reset.
+ * Times are in nanoseconds. Each histogram has one bucket for each power of two: bucket {@code i} counts the times
+ * from 2<sup>i</sup> up to, but not including, 2<sup>i+1</sup> nanoseconds. Bucket 0 also counts times under 1ns.
+ * <p>
+ * The queue figures only apply to subscribers that run on a {@link MasterEventBus.Lane} or their own Executor. For
+ * the others, they're always zero.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 2:20 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ * @see MasterEventBus#getSubscriberStats()
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SubscriberStats {
+  private final String subscriber;
+  private final Class<?> eventType;
+  private final long invocations;
+  private final long exceptions;
+  private final long totalNanos;
+  private final long maxNanos;
+  private final long[] latencyHistogram;
+  private final long dropped;
+  private final int queueDepth;
+  private final int maxQueueDepth;
+  private final long totalWaitNanos;
+  private final long[] waitHistogram;
+
+  @SuppressWarnings("ConstructorWithTooManyParameters")
+  SubscriberStats(
+      String subscriber,
+      Class<?> eventType,
+      long invocations,
+      long exceptions,
+      long totalNanos,
+      long maxNanos,
+      long[] latencyHistogram,
+      long dropped,
+      int queueDepth,
+      int maxQueueDepth,
+      long totalWaitNanos,
+      long[] waitHistogram
+  ) {
+    this.subscriber = subscriber;
+    this.eventType = eventType;
+    this.invocations = invocations;
+    this.exceptions = exceptions;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+    this.latencyHistogram = latencyHistogram;
+    this.dropped = dropped;
+    this.queueDepth = queueDepth;
+    this.maxQueueDepth = maxQueueDepth;
+    this.totalWaitNanos = totalWaitNanos;
+    this.waitHistogram = waitHistogram;
+  }
+
+  /** @return The subscriber method, as the name of its class and method */
+  public String getSubscriber() { return subscriber; }
+
+  /** @return The class of the events */
+  public Class<?> getEventType() { return eventType; }
+
+  /** @return The number of times the subscriber was called */
+  public long getInvocations() { return invocations; }
+
+  /** @return The number of times the subscriber threw an exception */
+  public long getExceptions() { return exceptions; }
+
+  /** @return The total time spent in the subscriber */
+  public long getTotalNanos() { return totalNanos; }
+
+  /** @return The longest time spent in a single call */
+  public long getMaxNanos() { return maxNanos; }
+
+  /** @return The average time spent in a single call, or zero if it was never called */
+  public long getMeanNanos() { return (invocations == 0L) ? 0L : (totalNanos / invocations); }
+
+  /** @return The histogram of the times spent in each call */
+  public long[] getLatencyHistogram() { return latencyHistogram.clone(); }
+
+  /**
+   * Estimate a percentile of the time spent in each call, from the histogram.
+   * @param percentile The percentile, from 0 to 100
+   * @return The upper bound of the histogram bucket that holds the percentile, or zero if it was never called
+   */
+  public long getLatencyPercentileNanos(double percentile) {
+    return percentile(latencyHistogram, percentile);
+  }
+
+  /** @return The number of events that were never delivered, because of their queue's {@link OverflowPolicy} */
+  public long getDropped() { return dropped; }
+
+  /** @return The number of deliveries waiting to run when the snapshot was taken */
+  public int getQueueDepth() { return queueDepth; }
+
+  /** @return The most deliveries that were waiting to run at once */
+  public int getMaxQueueDepth() { return maxQueueDepth; }
+
+  /** @return The total time that deliveries waited to run */
+  public long getTotalWaitNanos() { return totalWaitNanos; }
+
+  /** @return The histogram of the times that deliveries waited to run */
+  public long[] getWaitHistogram() { return waitHistogram.clone(); }
+
+  /**
+   * Estimate a percentile of the time that deliveries waited to run, from the histogram.
+   * @param percentile The percentile, from 0 to 100
+   * @return The upper bound of the histogram bucket that holds the percentile, or zero if nothing waited
+   */
+  public long getWaitPercentileNanos(double percentile) {
+    return percentile(waitHistogram, percentile);
+  }
+
+  private static long percentile(long[] histogram, double percentile) {
+    long total = 0L;
+    for (long count : histogram) {
+      total += count;
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    long target = Math.max(1L, (long) Math.ceil((total * percentile) / 100.0));
+    long seen = 0L;
+    for (int i = 0; i < histogram.length; ++i) {
+      seen += histogram[i];
+      if (seen >= target) {
+        return (i == (histogram.length - 1)) ? Long.MAX_VALUE : ((1L << (i + 1)) - 1L);
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @SuppressWarnings("HardCodedStringLiteral")
+  @Override
+  public String toString() {
+    return String.format(
+        "%s(%s): %d calls, %d failed, mean %d ns, p99 %d ns, max %d ns, %d dropped, queue %d (max %d), p99 wait %d ns",
+        subscriber,
+        eventType.getSimpleName(),
+        invocations,
+        exceptions,
+        getMeanNanos(),
+        getLatencyPercentileNanos(99.0),
+        maxNanos,
+        dropped,
+        queueDepth,
+        maxQueueDepth,
+        getWaitPercentileNanos(99.0)
+    );
+  }
+}
@@ -0,0 +1,50 @@
+package com.neptunedreams.framework.replay;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import com.neptunedreams.framework.data.DBField;
+import com.neptunedreams.framework.data.Dao;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Wraps a Dao in a proxy that times each call, and reports it to an observer. The call's exceptions are thrown just
+ * as the Dao threw them.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 3:05 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+enum DaoTimer {
+  ;
+
+  /**
+   * Gets told about each call to the Dao, after it returns or throws.
+   */
+  @FunctionalInterface
+  interface Observer {
+    void called(Method method, @Nullable Object @Nullable [] arguments, long startNanos, long durationNanos);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <E, PK, F extends DBField> Dao<E, PK, F> wrap(Dao<E, PK, F> dao, Observer observer) {
+    return (Dao<E, PK, F>) Proxy.newProxyInstance(
+        Dao.class.getClassLoader(),
+        new Class<?>[]{Dao.class},
+        (proxy, method, arguments) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(dao, arguments); // equals(), hashCode() and toString() aren't operations.
+          }
+          long start = System.nanoTime();
+          try {
+            return method.invoke(dao, arguments);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          } finally {
+            observer.called(method, arguments, start, System.nanoTime() - start);
+          }
+        }
+    );
+  }
+}
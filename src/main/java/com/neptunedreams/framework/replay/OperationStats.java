@@ -0,0 +1,95 @@
+package com.neptunedreams.framework.replay;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of one kind of operation, such as "controller.findTextAnywhere" or "dao.findAny", both as they were
+ * recorded and as they were replayed. Comparing the percentiles of the two shows whether a new build, or a new
+ * database, made the operation slower.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 3:25 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public final class OperationStats {
+  private final String operation;
+  private final long[] recorded; // sorted
+  private final long[] replayed; // sorted
+
+  OperationStats(String operation, long[] recorded, long[] replayed) {
+    this.operation = operation;
+    this.recorded = recorded.clone();
+    this.replayed = replayed.clone();
+    Arrays.sort(this.recorded);
+    Arrays.sort(this.replayed);
+  }
+
+  /** @return The kind of operation, as its source and name */
+  public String getOperation() { return operation; }
+
+  /** @return The number of times the operation was recorded */
+  public int getRecordedCount() { return recorded.length; }
+
+  /** @return The number of times the operation ran during the replay */
+  public int getReplayedCount() { return replayed.length; }
+
+  /**
+   * @param percentile The percentile, from 0 to 100
+   * @return The recorded latency at that percentile, in nanoseconds, or zero if it was never recorded
+   */
+  public long getRecordedPercentile(double percentile) {
+    return percentile(recorded, percentile);
+  }
+
+  /**
+   * @param percentile The percentile, from 0 to 100
+   * @return The replayed latency at that percentile, in nanoseconds, or zero if it was never replayed
+   */
+  public long getReplayedPercentile(double percentile) {
+    return percentile(replayed, percentile);
+  }
+
+  /**
+   * Compare the replayed latency to the recorded latency at a percentile.
+   * @param percentile The percentile, from 0 to 100
+   * @return The ratio of the replayed latency to the recorded latency, where 2.0 means it took twice as long, or
+   * NaN if either one is missing
+   */
+  public double getSlowdown(double percentile) {
+    long before = getRecordedPercentile(percentile);
+    long after = getReplayedPercentile(percentile);
+    return ((before == 0L) || (after == 0L)) ? Double.NaN : (after / (double) before);
+  }
+
+  // nearest rank
+  private static long percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0L;
+    }
+    int rank = (int) Math.ceil((percentile / 100.0) * sorted.length);
+    return sorted[Math.min(Math.max(rank - 1, 0), sorted.length - 1)];
+  }
+
+  @SuppressWarnings("HardCodedStringLiteral")
+  @Override
+  public String toString() {
+    return String.format("%-40s %6d %6d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %7.2f",
+        operation,
+        recorded.length,
+        replayed.length,
+        millis(getRecordedPercentile(50.0)),
+        millis(getRecordedPercentile(90.0)),
+        millis(getRecordedPercentile(99.0)),
+        millis(getReplayedPercentile(50.0)),
+        millis(getReplayedPercentile(90.0)),
+        millis(getReplayedPercentile(99.0)),
+        getSlowdown(90.0)
+    );
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1.0e6;
+  }
+}
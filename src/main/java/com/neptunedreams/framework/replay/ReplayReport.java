@@ -0,0 +1,52 @@
+package com.neptunedreams.framework.replay;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The results of a {@link SessionReplayer} run: the latencies of each kind of operation, as recorded and as replayed,
+ * along with the number of operations that couldn't be replayed, and the number that failed.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 3:30 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ReplayReport {
+  private final Map<String, OperationStats> operations;
+  private final int skipped;
+  private final int failed;
+  private final long elapsedNanos;
+
+  ReplayReport(Map<String, OperationStats> operations, int skipped, int failed, long elapsedNanos) {
+    this.operations = Collections.unmodifiableMap(operations);
+    this.skipped = skipped;
+    this.failed = failed;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /** @return The latencies of each kind of operation, by {@linkplain SessionEntry#getKey() key}, in key order */
+  public Map<String, OperationStats> getOperations() { return operations; }
+
+  /** @return The number of operations that couldn't be replayed, such as saving a record */
+  public int getSkipped() { return skipped; }
+
+  /** @return The number of replayed operations that threw an exception */
+  public int getFailed() { return failed; }
+
+  /** @return How long the replay took */
+  public long getElapsedNanos() { return elapsedNanos; }
+
+  @SuppressWarnings("HardCodedStringLiteral")
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(String.format("%-40s %6s %6s %10s %10s %10s %10s %10s %10s %7s%n",
+        "Operation (ms)", "rec", "replay", "rec p50", "rec p90", "rec p99", "p50", "p90", "p99", "p90 x"));
+    for (OperationStats stats : operations.values()) {
+      builder.append(stats).append(String.format("%n"));
+    }
+    builder.append(String.format("%d skipped, %d failed, %.1f s%n", skipped, failed, elapsedNanos / 1.0e9));
+    return builder.toString();
+  }
+}
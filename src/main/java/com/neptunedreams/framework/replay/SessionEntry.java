@@ -0,0 +1,91 @@
+package com.neptunedreams.framework.replay;
+
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * One recorded operation of a user session: a call to the {@link com.neptunedreams.framework.ui.RecordController},
+ * a call to the {@link com.neptunedreams.framework.data.Dao}, or an event posted to the
+ * {@link com.neptunedreams.framework.event.MasterEventBus}.
+ * <p>
+ * Arguments are kept as text. Fields and other enums are kept by name, and the elements of an array, such as the
+ * words of a search, are kept as separate arguments. Records themselves aren't kept, since they can't be replayed
+ * against another database. Each one is kept as its class name, in angle brackets.
+ * <p>
+ * An entry is nested if it happened during a controller call on the same thread, which means it was caused by that
+ * call, so it's replayed when the call is, rather than on its own.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 2:50 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SessionEntry {
+  /**
+   * Where an operation came from
+   */
+  public enum Source {
+    /** A call to the RecordController */
+    CONTROLLER,
+    /** A call to the Dao */
+    DAO,
+    /** An event posted to the MasterEventBus */
+    EVENT
+  }
+
+  private final Source source;
+  private final String operation;
+  private final List<@Nullable String> arguments;
+  private final long startNanos;
+  private final long durationNanos;
+  private final boolean nested;
+
+  SessionEntry(
+      Source source,
+      String operation,
+      List<@Nullable String> arguments,
+      long startNanos,
+      long durationNanos,
+      boolean nested
+  ) {
+    this.source = source;
+    this.operation = operation;
+    this.arguments = Collections.unmodifiableList(arguments);
+    this.startNanos = startNanos;
+    this.durationNanos = durationNanos;
+    this.nested = nested;
+  }
+
+  /** @return Where the operation came from */
+  public Source getSource() { return source; }
+
+  /** @return The name of the method called, or the simple name of the event's class */
+  public String getOperation() { return operation; }
+
+  /** @return The arguments, as text */
+  public List<@Nullable String> getArguments() { return arguments; }
+
+  /** @return When the operation started, in nanoseconds since recording started */
+  public long getStartNanos() { return startNanos; }
+
+  /** @return How long the operation took when it was recorded. Events always take zero. */
+  public long getDurationNanos() { return durationNanos; }
+
+  /** @return true if the operation was caused by a controller call */
+  public boolean isNested() { return nested; }
+
+  /**
+   * @return The name used for this kind of operation in a {@link ReplayReport}, such as "dao.findAny"
+   */
+  public String getKey() {
+    return source.name().toLowerCase() + '.' + operation;
+  }
+
+  @SuppressWarnings("HardCodedStringLiteral")
+  @Override
+  public String toString() {
+    return String.format("%d %s%s %s (%d ns)", startNanos, nested ? "  " : "", getKey(), arguments, durationNanos);
+  }
+}
@@ -0,0 +1,184 @@
+package com.neptunedreams.framework.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Reads and writes session files. A session file is a gzipped stream of entries, each holding its source, its start
+ * time as the difference from the entry before it, its duration, and its text. Numbers are written as variable-length
+ * integers, and each distinct string is written once. After that, it's written as its index in a table of the
+ * strings already written, so the operation names and repeated searches of a long session take a byte or two each.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 2:55 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+enum SessionFormat {
+  ;
+  private static final int MAGIC = 0x4E445352; // "NDSR"
+  private static final int VERSION = 1;
+  private static final int NESTED = 0x10;
+  private static final int SOURCE_MASK = 0x0F;
+
+  // String codes. Codes from FIRST_INDEX on refer to strings already written.
+  private static final int NULL_STRING = 0;
+  private static final int NEW_STRING = 1;
+  private static final int FIRST_INDEX = 2;
+
+  private static final SessionEntry.Source[] SOURCES = SessionEntry.Source.values();
+
+  /**
+   * Writes entries to a session file. It's not thread-safe.
+   */
+  static final class Writer implements Closeable {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private long lastStart = 0L;
+
+    Writer(Path path) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path))));
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+    }
+
+    void write(SessionEntry entry) throws IOException {
+      out.writeByte(entry.getSource().ordinal() | (entry.isNested() ? NESTED : 0));
+      long start = entry.getStartNanos();
+      long delta = start - lastStart; // Entries are written when they end, so this may be negative.
+      writeVarLong((delta << 1) ^ (delta >> (Long.SIZE - 1))); // zigzag, so small negative numbers stay short
+      lastStart = start;
+      writeVarLong(entry.getDurationNanos());
+      writeString(entry.getOperation());
+      List<@Nullable String> arguments = entry.getArguments();
+      writeVarLong(arguments.size());
+      for (String argument : arguments) {
+        writeString(argument);
+      }
+    }
+
+    private void writeString(@Nullable String s) throws IOException {
+      if (s == null) {
+        writeVarLong(NULL_STRING);
+        return;
+      }
+      Integer index = strings.get(s);
+      if (index != null) {
+        writeVarLong(index + FIRST_INDEX);
+      } else {
+        strings.put(s, strings.size());
+        writeVarLong(NEW_STRING);
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        out.write(bytes);
+      }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+      long v = value;
+      while ((v & ~0x7FL) != 0L) {
+        out.writeByte((int) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      out.writeByte((int) v);
+    }
+
+    void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * Read all the entries of a session file. A file that was cut off, because the recording application didn't close
+   * its recorder, is read up to the last complete entry.
+   * @param path The file
+   * @return The entries, in the order they were written
+   * @throws IOException If the file can't be read, or isn't a session file
+   */
+  static List<SessionEntry> read(Path path) throws IOException {
+    List<SessionEntry> entries = new ArrayList<>();
+    try (DataInputStream in
+             = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+      if ((in.readInt() != MAGIC) || (in.readUnsignedByte() != VERSION)) {
+        throw new IOException(String.format("%s is not a session file", path));
+      }
+      List<String> strings = new ArrayList<>();
+      long start = 0L;
+      int tag;
+      while ((tag = in.read()) >= 0) {
+        try {
+          long delta = readVarLong(in);
+          start += (delta >>> 1) ^ -(delta & 1L);
+          long duration = readVarLong(in);
+          String operation = readString(in, strings);
+          if (operation == null) {
+            throw new IOException("Missing operation");
+          }
+          int count = (int) readVarLong(in);
+          List<@Nullable String> arguments = new ArrayList<>(count);
+          for (int i = 0; i < count; ++i) {
+            arguments.add(readString(in, strings));
+          }
+          SessionEntry.Source source = SOURCES[tag & SOURCE_MASK];
+          entries.add(new SessionEntry(source, operation, arguments, start, duration, (tag & NESTED) != 0));
+        } catch (EOFException e) {
+          break; // The last entry was cut off.
+        }
+      }
+    } catch (EOFException e) {
+      // The gzip trailer is missing. Keep the entries that were read.
+    }
+    return entries;
+  }
+
+  private static @Nullable String readString(DataInputStream in, List<String> strings) throws IOException {
+    int code = (int) readVarLong(in);
+    if (code == NULL_STRING) {
+      return null;
+    }
+    if (code == NEW_STRING) {
+      byte[] bytes = new byte[(int) readVarLong(in)];
+      in.readFully(bytes);
+      String s = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(s);
+      return s;
+    }
+    return strings.get(code - FIRST_INDEX);
+  }
+
+  private static long readVarLong(InputStream in) throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed number");
+  }
+}
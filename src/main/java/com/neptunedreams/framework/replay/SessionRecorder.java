@@ -0,0 +1,229 @@
+package com.neptunedreams.framework.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.neptunedreams.framework.data.DBField;
+import com.neptunedreams.framework.data.Dao;
+import com.neptunedreams.framework.event.MasterEventBus;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Records a user session to a file, so it can be replayed later, against another build or another database, by a
+ * {@link SessionReplayer}. It records three streams, with the time each operation started and how long it took:
+ * <ul>
+ *   <li>The searches, new records and navigation of a {@link com.neptunedreams.framework.ui.RecordController}
+ *   that was given this recorder with
+ *   {@link com.neptunedreams.framework.ui.RecordController#setSessionRecorder(SessionRecorder)}</li>
+ *   <li>The calls to a Dao that was {@linkplain #wrap(Dao) wrapped} by this recorder</li>
+ *   <li>The events posted to the {@link MasterEventBus}</li>
+ * </ul>
+ * Recording costs a few microseconds for each operation, since the thread that performed it only queues it. A
+ * background thread writes the queued operations, and flushes the file about once a second, so a session is kept,
+ * up to the last second or so, even if the application never closes the recorder.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 3:10 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class SessionRecorder implements Closeable {
+  private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1L);
+  private static final SessionEntry END
+      = new SessionEntry(SessionEntry.Source.EVENT, "", Collections.emptyList(), 0L, 0L, false);
+
+  private final SessionFormat.Writer writer; // only used by the writer thread, until it ends
+  private final BlockingQueue<SessionEntry> entries = new LinkedBlockingQueue<>();
+  private final Thread writerThread;
+  private final long startNanos = System.nanoTime();
+  private boolean closed = false; // guarded by this
+  private volatile boolean recording = true;
+  private volatile @Nullable IOException failure = null;
+
+  // The number of controller calls in progress on each thread. Operations during a controller call are nested.
+  private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+  private SessionRecorder(Path path) throws IOException {
+    writer = new SessionFormat.Writer(path);
+    writerThread = new Thread(this::writeEntries, "Session recorder");
+    writerThread.setDaemon(true);
+  }
+
+  /**
+   * Start recording a session, including the events posted to the MasterEventBus from now on.
+   * @param path The file to record to. Any existing file is replaced.
+   * @return The recorder
+   * @throws IOException If the file can't be written
+   */
+  public static SessionRecorder start(Path path) throws IOException {
+    SessionRecorder recorder = new SessionRecorder(path);
+    recorder.writerThread.start();
+    MasterEventBus.registerMasterEventHandler(recorder);
+    return recorder;
+  }
+
+  /**
+   * Wrap a Dao, so its calls are recorded.
+   * @param dao The Dao
+   * @param <E> The entity type
+   * @param <PK> The primary key type
+   * @param <F> The field type
+   * @return A Dao that records each call before returning its result
+   */
+  public <E, PK, F extends DBField> Dao<E, PK, F> wrap(Dao<E, PK, F> dao) {
+    return DaoTimer.wrap(dao, (method, arguments, start, duration) ->
+        record(SessionEntry.Source.DAO, method.getName(), describe(arguments), start, duration));
+  }
+
+  /**
+   * Record an event posted to the MasterEventBus. The recorder subscribes to every event, so while it's registered,
+   * no event is dead.
+   * @param event The event
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void eventPosted(Object event) {
+    record(SessionEntry.Source.EVENT, event.getClass().getSimpleName(), Collections.emptyList(), System.nanoTime(), 0L);
+  }
+
+  /**
+   * Start timing a controller call. Every call to this must be followed by a call to {@link #end(long, String,
+   * Object...)} on the same thread, in a finally block.
+   * @return The start time, to pass to end()
+   */
+  public long begin() {
+    depth.get()[0]++;
+    return System.nanoTime();
+  }
+
+  /**
+   * Record a controller call.
+   * @param start The time returned by {@link #begin()}
+   * @param operation The name of the controller method
+   * @param arguments The arguments
+   */
+  public void end(long start, String operation, @Nullable Object... arguments) {
+    long duration = System.nanoTime() - start;
+    depth.get()[0]--;
+    record(SessionEntry.Source.CONTROLLER, operation, describe(arguments), start, duration);
+  }
+
+  private void record(SessionEntry.Source source, String operation, List<@Nullable String> arguments, long start,
+      long duration) {
+    if (recording) {
+      boolean nested = depth.get()[0] > 0;
+      entries.add(new SessionEntry(source, operation, arguments, start - startNanos, duration, nested));
+    }
+  }
+
+  /**
+   * Write the queued entries until the recorder is closed. This runs on the writer thread.
+   */
+  private void writeEntries() {
+    try {
+      long lastFlush = System.nanoTime();
+      while (true) {
+        long untilFlush = FLUSH_NANOS - (System.nanoTime() - lastFlush);
+        SessionEntry entry = entries.poll(Math.max(untilFlush, 0L), TimeUnit.NANOSECONDS);
+        if (entry == END) {
+          break;
+        }
+        if (entry != null) {
+          writer.write(entry);
+        }
+        if ((System.nanoTime() - lastFlush) >= FLUSH_NANOS) {
+          writer.flush();
+          lastFlush = System.nanoTime();
+        }
+      }
+    } catch (IOException e) {
+      stopRecording(e);
+    } catch (InterruptedException e) {
+      stopRecording(null); // close() gave up waiting.
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          stopRecording(e);
+        }
+      }
+    }
+  }
+
+  private void stopRecording(@Nullable IOException e) {
+    recording = false; // Don't slow the application down with more failures.
+    entries.clear();
+    if (e != null) {
+      failure = e;
+      //noinspection UseOfSystemOutOrSystemErr
+      System.err.printf("Session recording stopped: %s%n", e);
+      e.printStackTrace();
+    }
+  }
+
+  private static List<@Nullable String> describe(@Nullable Object @Nullable [] arguments) {
+    if ((arguments == null) || (arguments.length == 0)) {
+      return Collections.emptyList();
+    }
+    List<@Nullable String> descriptions = new ArrayList<>(arguments.length);
+    for (Object argument : arguments) {
+      if (argument instanceof Object[]) {
+        descriptions.addAll(describe((Object[]) argument)); // varargs, such as the words of a search
+      } else {
+        descriptions.add(describe(argument));
+      }
+    }
+    return descriptions;
+  }
+
+  private static @Nullable String describe(@Nullable Object argument) {
+    if ((argument == null) || (argument instanceof String)) {
+      return (String) argument;
+    }
+    if (argument instanceof Enum) {
+      return ((Enum<?>) argument).name();
+    }
+    if ((argument instanceof Number) || (argument instanceof Boolean)) {
+      return argument.toString();
+    }
+    return '<' + argument.getClass().getSimpleName() + '>'; // A record, which can't be replayed.
+  }
+
+  /**
+   * Stop recording, stop listening to the MasterEventBus, and close the file, once the operations already recorded
+   * have been written. Operations after this aren't recorded.
+   * @throws IOException If the file can't be written
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    recording = false;
+    MasterEventBus.unregisterMasterEventHandler(this);
+    entries.add(END);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writerThread.interrupt();
+    }
+    IOException writeFailure = failure;
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+  }
+}
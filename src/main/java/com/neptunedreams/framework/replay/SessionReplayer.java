@@ -0,0 +1,326 @@
+package com.neptunedreams.framework.replay;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.swing.SwingUtilities;
+import com.neptunedreams.framework.data.DBField;
+import com.neptunedreams.framework.data.Dao;
+import com.neptunedreams.framework.data.RecordModel;
+import com.neptunedreams.framework.data.SearchOption;
+import com.neptunedreams.framework.event.MasterEventBus;
+import com.neptunedreams.framework.ui.RecordController;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Replays a session recorded by a {@link SessionRecorder}, without a user interface, against a chosen Dao, and reports
+ * the latency of each kind of operation, next to the latency that was recorded. This is meant for catching slowdowns
+ * in a new build, by replaying real sessions against it before it's released.
+ * <p>
+ * Only operations that weren't caused by another operation are replayed. The operations they caused, such as the Dao
+ * queries of a search, happen again on their own, and are timed as they happen. Controller calls and events run on
+ * the event dispatch thread, as they did when they were recorded. Dao calls made directly by the application are
+ * replayed if they're queries, on the replaying thread. Operations that need a record, such as saving one, can't be
+ * replayed on their own, and are skipped, as are events that carry data.
+ * <p>
+ * The controller is built by the caller, on a Dao that times its calls, so it can be set up just as the application
+ * sets it up. Since there's no user interface, any error that the controller would show to the user fails the
+ * operation instead, and is counted in the report.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 3:35 AM
+ *
+ * @param <R> The record type
+ * @param <PK> The primary key type
+ * @param <F> The field type
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class SessionReplayer<R, PK, F extends DBField> {
+  /** Replay each operation as soon as the one before it finishes. */
+  public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+  private final Dao<R, PK, F> dao;
+  private final RecordController<R, PK, F> controller;
+  private final Function<String, ? extends F> fieldLookup;
+  private final Map<String, List<Long>> replayed = new HashMap<>(); // guarded by itself
+
+  private SessionReplayer(
+      Dao<R, PK, F> theDao,
+      Function<? super Dao<R, PK, F>, RecordController<R, PK, F>> controllerFactory,
+      Function<String, ? extends F> fieldLookup
+  ) {
+    dao = DaoTimer.wrap(theDao,
+        (method, arguments, start, duration) -> addReplayed("dao." + method.getName(), duration));
+    controller = controllerFactory.apply(dao);
+    this.fieldLookup = fieldLookup;
+  }
+
+  /**
+   * Create a SessionReplayer
+   * @param dao The Dao to replay against
+   * @param controllerFactory Builds the controller, on the Dao it's given, which wraps the chosen Dao.
+   * @param fieldLookup Gets a field from its name. For an enum of fields, this is its valueOf() method.
+   * @param <R> The record type
+   * @param <PK> The primary key type
+   * @param <F> The field type
+   * @return The SessionReplayer
+   */
+  public static <R, PK, F extends DBField> SessionReplayer<R, PK, F> create(
+      Dao<R, PK, F> dao,
+      Function<? super Dao<R, PK, F>, RecordController<R, PK, F>> controllerFactory,
+      Function<String, ? extends F> fieldLookup
+  ) {
+    return new SessionReplayer<>(dao, controllerFactory, fieldLookup);
+  }
+
+  /**
+   * @return The controller that the session is replayed on
+   */
+  public RecordController<R, PK, F> getController() {
+    return controller;
+  }
+
+  /**
+   * Replay a session file.
+   * @param path The file
+   * @param speed How much faster than the original session to replay it. 1.0 keeps the original pauses between
+   *              operations, and {@link #AS_FAST_AS_POSSIBLE} leaves them out.
+   * @return The report
+   * @throws IOException If the file can't be read
+   * @throws InterruptedException If the replaying thread is interrupted
+   * @throws IllegalStateException If this is called on the event dispatch thread
+   * @throws IllegalArgumentException If the speed isn't positive
+   */
+  public ReplayReport replay(Path path, double speed) throws IOException, InterruptedException {
+    return replay(SessionFormat.read(path), speed);
+  }
+
+  /**
+   * Replay a recorded session.
+   * @param session The entries of the session, in the order they were recorded
+   * @param speed How much faster than the original session to replay it. 1.0 keeps the original pauses between
+   *              operations, and {@link #AS_FAST_AS_POSSIBLE} leaves them out.
+   * @return The report
+   * @throws InterruptedException If the replaying thread is interrupted
+   * @throws IllegalStateException If this is called on the event dispatch thread
+   * @throws IllegalArgumentException If the speed isn't positive
+   */
+  public ReplayReport replay(List<SessionEntry> session, double speed) throws InterruptedException {
+    if (!(speed > 0.0)) {
+      throw new IllegalArgumentException(String.format("Speed must be positive: %s", speed));
+    }
+    if (SwingUtilities.isEventDispatchThread()) {
+      throw new IllegalStateException("A session must be replayed off the event dispatch thread");
+    }
+    synchronized (replayed) {
+      replayed.clear();
+    }
+    Map<String, List<Long>> recorded = new HashMap<>();
+    int skipped = 0;
+    int failed = 0;
+    final long replayStart = System.nanoTime();
+    for (SessionEntry entry : session) {
+      if (entry.getSource() != SessionEntry.Source.EVENT) {
+        recorded.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getDurationNanos());
+      }
+      if (entry.isNested()) {
+        continue;
+      }
+      Runnable operation = getOperation(entry);
+      if (operation == null) {
+        skipped++;
+        continue;
+      }
+      if (speed < AS_FAST_AS_POSSIBLE) {
+        long wait = (replayStart + (long) (entry.getStartNanos() / speed)) - System.nanoTime();
+        if (wait > 0L) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+      }
+      try {
+        operation.run();
+      } catch (RuntimeException e) {
+        failed++;
+        //noinspection UseOfSystemOutOrSystemErr
+        System.err.printf("Replay of %s failed: %s%n", entry, (e.getCause() == null) ? e : e.getCause());
+      }
+    }
+    long elapsed = System.nanoTime() - replayStart;
+
+    Map<String, OperationStats> operations = new TreeMap<>();
+    synchronized (replayed) {
+      TreeSet<String> keys = new TreeSet<>(recorded.keySet());
+      keys.addAll(replayed.keySet());
+      for (String key : keys) {
+        operations.put(key, new OperationStats(key, toArray(recorded.get(key)), toArray(replayed.get(key))));
+      }
+    }
+    return new ReplayReport(operations, skipped, failed, elapsed);
+  }
+
+  /**
+   * @return The operation that replays the entry, or null if it can't be replayed
+   */
+  private @Nullable Runnable getOperation(SessionEntry entry) {
+    List<@Nullable String> args = entry.getArguments();
+    final String key = entry.getKey();
+    final RecordModel<R> model = controller.getModel();
+    switch (entry.getSource()) {
+      case CONTROLLER:
+        switch (entry.getOperation()) {
+          case "findTextInField":
+            return onEdt(key, () -> controller.findTextInField(text(args, 0), field(args, 1), option(args, 2)));
+          case "findTextAnywhere":
+            return onEdt(key, () -> controller.findTextAnywhere(text(args, 0), option(args, 1)));
+          case "addBlankRecord":
+            return onEdt(key, controller::addBlankRecord);
+          case "goNext":
+            return onEdt(key, () -> navigate(model, model::goNext));
+          case "goPrev":
+            return onEdt(key, () -> navigate(model, model::goPrev));
+          case "goFirst":
+            return onEdt(key, () -> navigate(model, model::goFirst));
+          case "goLast":
+            return onEdt(key, () -> navigate(model, model::goLast));
+          case "goToId":
+            return onEdt(key, () -> model.goToId(Integer.parseInt(text(args, 0))));
+          default:
+            return null;
+        }
+      case DAO:
+        return getDaoQuery(entry.getOperation(), args);
+      case EVENT:
+        switch (entry.getOperation()) {
+          case "LoadUIEvent":
+            return onEdt(key, MasterEventBus::postLoadUserData);
+          case "SearchNowEvent":
+            return onEdt(key, MasterEventBus::postSearchNowEvent);
+          case "UserRequestedNewRecordEvent":
+            return onEdt(key, MasterEventBus::postUserRequestedNewRecordEvent);
+          default:
+            return null; // It carries data, such as a record.
+        }
+      default:
+        throw new AssertionError(String.format("Unhandled case: %s", entry.getSource()));
+    }
+  }
+
+  /**
+   * @return The query that replays a Dao call, or null if it isn't a query. It's timed by the Dao.
+   */
+  private @Nullable Runnable getDaoQuery(String operation, List<@Nullable String> args) {
+    switch (operation) {
+      case "getAll":
+        return query(() -> dao.getAll(optionalField(args, 0)));
+      case "find":
+        return query(() -> dao.find(text(args, 0), optionalField(args, 1)));
+      case "findAny":
+        return query(() -> dao.findAny(optionalField(args, 0), words(args, 1)));
+      case "findAll":
+        return query(() -> dao.findAll(optionalField(args, 0), words(args, 1)));
+      case "findInField":
+        return query(() -> dao.findInField(text(args, 0), field(args, 1), optionalField(args, 2)));
+      case "findAnyInField":
+        return query(() -> dao.findAnyInField(field(args, 0), optionalField(args, 1), words(args, 2)));
+      case "findAllInField":
+        return query(() -> dao.findAllInField(field(args, 0), optionalField(args, 1), words(args, 2)));
+      case "getTotal":
+        return query(dao::getTotal);
+      default:
+        return null;
+    }
+  }
+
+  @FunctionalInterface
+  private interface Query {
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    Object run() throws Exception;
+  }
+
+  private static Runnable query(Query query) {
+    return () -> {
+      try {
+        query.run();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    };
+  }
+
+  private Runnable onEdt(String key, Runnable operation) {
+    return () -> {
+      try {
+        SwingUtilities.invokeAndWait(() -> {
+          long start = System.nanoTime();
+          operation.run();
+          addReplayed(key, System.nanoTime() - start);
+        });
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (InvocationTargetException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    };
+  }
+
+  private static void navigate(RecordModel<?> model, Runnable move) {
+    if (model.getSize() > 0) { // The recorded found set may not have been empty.
+      move.run();
+    }
+  }
+
+  private void addReplayed(String key, long duration) {
+    synchronized (replayed) {
+      replayed.computeIfAbsent(key, k -> new ArrayList<>()).add(duration);
+    }
+  }
+
+  private static String text(List<@Nullable String> args, int index) {
+    String text = (index < args.size()) ? args.get(index) : null;
+    return (text == null) ? "" : text;
+  }
+
+  private static String[] words(List<@Nullable String> args, int from) {
+    List<String> words = new ArrayList<>();
+    for (int i = from; i < args.size(); ++i) {
+      words.add(text(args, i));
+    }
+    return words.toArray(new String[0]);
+  }
+
+  private static SearchOption option(List<@Nullable String> args, int index) {
+    return SearchOption.valueOf(text(args, index));
+  }
+
+  private F field(List<@Nullable String> args, int index) {
+    return fieldLookup.apply(text(args, index));
+  }
+
+  private @Nullable F optionalField(List<@Nullable String> args, int index) {
+    String name = (index < args.size()) ? args.get(index) : null;
+    return (name == null) ? null : fieldLookup.apply(name);
+  }
+
+  private static long[] toArray(@Nullable List<Long> durations) {
+    if (durations == null) {
+      return new long[0];
+    }
+    long[] array = new long[durations.size()];
+    for (int i = 0; i < array.length; ++i) {
+      array[i] = durations.get(i);
+    }
+    return array;
+  }
+}
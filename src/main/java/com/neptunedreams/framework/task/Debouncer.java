@@ -0,0 +1,203 @@
+package com.neptunedreams.framework.task;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Runs a task once its input has stopped changing for a while, such as a search that should wait until the user
+ * stops typing. Any number of independent inputs may be {@linkplain #debounce(long, Function, Consumer) debounced}
+ * by one Debouncer, which uses no threads of its own for each of them. A single scheduler thread wakes up when an
+ * input's wait may be over, and a shared pool of worker threads runs the tasks.
+ * <p>
+ * Each {@link Debounced} input holds its latest data and its deadline. Feeding it new data just replaces them, so it
+ * takes constant time, and allocates nothing. Only the first feed of a burst schedules a wake-up. When the scheduler
+ * wakes up before the deadline, because more data was fed since, it goes back to sleep until the new deadline.
+ * <p>
+ * Like {@link QueuedTask}, only the latest data gets processed, and a task never runs for the same input twice at
+ * once. Data fed while its task is running waits until that run is done, and for the full delay, before it runs.
+ * Results go to the consumer on the worker thread that ran the task.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 4:40 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class Debouncer {
+  private final ScheduledExecutorService scheduler;
+  private final Executor worker;
+
+  private static final int IDLE = 0; // No data waiting
+  private static final int SCHEDULED = 1; // Data waiting, with a wake-up scheduled
+  private static final int RUNNING = 2; // The task is running, and any data fed now waits for it
+
+  private enum Shared {
+    ;
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    private static final Debouncer INSTANCE = new Debouncer(createScheduler(), createWorkers());
+
+    private static ScheduledExecutorService createScheduler() {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "Debouncer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.setKeepAliveTime(1L, TimeUnit.MINUTES);
+      scheduler.allowCoreThreadTimeOut(true);
+      return scheduler;
+    }
+
+    private static ExecutorService createWorkers() {
+      return Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Debouncer worker " + workerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Create a Debouncer
+   * @param scheduler Wakes up the inputs when their waits may be over. It should never be busy, so one thread is
+   *                  enough for any number of inputs.
+   * @param worker Runs the tasks. Slow tasks, such as searches, should have threads of their own, so they don't
+   *               delay each other.
+   */
+  public Debouncer(ScheduledExecutorService scheduler, Executor worker) {
+    this.scheduler = scheduler;
+    this.worker = worker;
+  }
+
+  /**
+   * @return The Debouncer shared by the whole application, whose threads are started when they're first needed.
+   */
+  public static Debouncer getShared() {
+    return Shared.INSTANCE;
+  }
+
+  /**
+   * Debounce an input.
+   * @param delayMillis How long the input must stay unchanged before the task runs
+   * @param task Processes the latest data
+   * @param consumer Gets the result of each run of the task
+   * @param <I> The input type
+   * @param <R> The result type
+   * @return The input, to feed data to
+   */
+  public <I extends @NonNull Object, R> Debounced<I> debounce(
+      long delayMillis,
+      Function<? super I, ? extends R> task,
+      Consumer<? super R> consumer
+  ) {
+    return new Debounced<>(this, delayMillis, input -> consumer.accept(task.apply(input)));
+  }
+
+  /**
+   * An input whose data is processed once it stops changing.
+   * @param <I> The input type
+   */
+  public static final class Debounced<I extends @NonNull Object> {
+    private final Debouncer debouncer;
+    private final long delayNanos;
+    private final Consumer<I> action;
+    private final AtomicReference<@Nullable I> latest = new AtomicReference<>();
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private volatile long deadline = 0L;
+
+    // Made once, so scheduling them allocates nothing here.
+    private final Runnable wakeUp = this::wakeUp;
+    private final Runnable run = this::run;
+
+    Debounced(Debouncer debouncer, long delayMillis, Consumer<I> action) {
+      this.debouncer = debouncer;
+      delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      this.action = action;
+    }
+
+    /**
+     * @return How long the data must stay unchanged before the task runs
+     */
+    public long getDelayMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(delayNanos);
+    }
+
+    /**
+     * Feed new data, replacing any data that's still waiting, and restart the wait. This may be called from any
+     * thread, including the event dispatch thread, and never blocks.
+     * @param data The data
+     */
+    public void feedData(I data) {
+      deadline = System.nanoTime() + delayNanos;
+      latest.set(data);
+      if (state.compareAndSet(IDLE, SCHEDULED)) {
+        schedule(delayNanos);
+      }
+    }
+
+    /**
+     * Discard any data that's waiting. A task that's already running isn't stopped.
+     */
+    public void cancel() {
+      latest.set(null);
+    }
+
+    /**
+     * @return true if data is waiting to be processed
+     */
+    public boolean isPending() {
+      return latest.get() != null;
+    }
+
+    private void schedule(long nanos) {
+      debouncer.scheduler.schedule(wakeUp, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // On the scheduler thread
+    private void wakeUp() {
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0L) {
+        schedule(remaining); // More data came in while this was waiting.
+      } else if (state.compareAndSet(SCHEDULED, RUNNING)) {
+        debouncer.worker.execute(run);
+      }
+    }
+
+    // On a worker thread
+    private void run() {
+      try {
+        I input = latest.getAndSet(null);
+        if (input != null) {
+          action.accept(input);
+        }
+      } catch (RuntimeException e) {
+        e.printStackTrace(); // Keep going, so the next data still gets processed.
+      } finally {
+        finishRun();
+      }
+    }
+
+    private void finishRun() {
+      if (latest.get() != null) {
+        // Data came in while the task ran, so wait out the rest of its delay.
+        state.set(SCHEDULED);
+        schedule(Math.max(deadline - System.nanoTime(), 0L));
+      } else {
+        state.set(IDLE);
+        // If data came in after the check, and its feedData() saw the task still running, schedule it here.
+        if ((latest.get() != null) && state.compareAndSet(IDLE, SCHEDULED)) {
+          schedule(Math.max(deadline - System.nanoTime(), 0L));
+        }
+      }
+    }
+  }
+}
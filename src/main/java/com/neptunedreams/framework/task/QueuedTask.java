@@ -1,7 +1,5 @@
 package com.neptunedreams.framework.task;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.SynchronousQueue;
 import java.util.function.Consumer;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -17,17 +15,9 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * ParameterizedCallable task, and calls its {@code call()} method. Then it sends the results to the Consumer.
  * It is the responsibility of the caller to define a ParameterizedCallable task that launches the search function, and
  * a Consumer that sends the search results to the proper user interface component.
- * <p>This class is divided into two Threads because it calls two methods that are interruptable. If I did it in a
- * single task, it would be impossible to know which method I'm interrupting. The two methods are Thread.sleep() and
- * Queue.take().
- * <p>
- * This class launches two Daemon Threads. It's grouped into three sections, depending on which Thread executes the 
- * code.
- * <p>
- * Masters of multi-threaded code may question why I don't re-interrupt my Threads when I catch InterruptedException.
- * This should always be done when using interrupt to cancel a Thread. But in this case I keep my Threads running. And
- * the code in each Thread is so simple that I know there are no other methods up in the call stack that also need to
- * see the interrupt.
+ * <p>The waiting is done by the {@linkplain Debouncer#getShared() shared Debouncer}, so a QueuedTask has no
+ * Threads of its own. The task and the Consumer run on one of the Debouncer's worker Threads, never on the
+ * EventDispatchThread, and never on two Threads at once.
  * <p>Created by IntelliJ IDEA.
  * <p>Date: 11/5/17
  * <p>Time: 12:02 AM
@@ -40,91 +30,44 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 public final class QueuedTask<I extends @NonNull Object, R> {
   private final ParameterizedCallable<I, R> callable;
   private final long delayMilliSeconds;
-  private final Consumer<R> consumer;
-  private final BlockingQueue<I> queue = new SynchronousQueue<>();
+  private final Debouncer.Debounced<I> debounced;
 
   @SuppressWarnings("BoundedWildcard") // The "bounds" expected by this inspection both ? extends R and ? super R
   public QueuedTask(long delay, ParameterizedCallable<I, R> task, Consumer<R> theConsumer) {
     delayMilliSeconds = delay;
     callable = task;
-    consumer = theConsumer;
+    debounced = Debouncer.getShared().debounce(delay, this::launchCallable, theConsumer);
   }
 
+  /**
+   * Start processing the task's initial value, if it has one. Data fed before this is called is processed anyway.
+   */
   public void launch() {
-    final Thread waitThread = new Thread(createWaitTask(), "QueuedTask.waitThread");
-    waitThread.setDaemon(true);
-    waitThread.start();
+    final @Nullable I initialValue = callable.getInputData();
+    if (initialValue != null) {
+      debounced.feedData(initialValue);
+    }
   }
 
   public long getDelayMilliSeconds() {
     return delayMilliSeconds;
   }
 
-  // External Thread Code
-
   /**
    * Feed the data into the wait queue. The data will be processed after waiting for {@code interval} milliseconds. 
    * Calling this a second time before the wait is up will restart the wait with the new data. This method may be 
-   * called from any thread, including the EventDispatchThread. The wait happens on a private Thread.
+   * called from any thread, including the EventDispatchThread, and returns immediately.
    * @param data the data to process.
    */
   public void feedData(I data) {
-    try {
-      queue.put(data); // SynchronousQueue.add() should never get called. Unnecessary and causes big problems.
-    } catch (InterruptedException ignored) { }
-  }
-  
-  private Runnable createWaitTask() {
-    //noinspection Convert2MethodRef
-    return () -> waitLoop(); // Method reference bypasses nullness checker
-  }
-
-  private Runnable createLaunchTask() {
-    //noinspection Convert2MethodRef
-    return () -> launchTaskLoop();
-  }
-
-  // Wait Thread Code
-
-  private void waitLoop() {
-    Thread launchThread = new Thread(createLaunchTask(), "QueuedTask.launch Thread");
-    launchThread.setDaemon(true);
-    launchThread.start();
-
-    //noinspection InfiniteLoopStatement
-    while (true) {
-      try {
-        I input = queue.take();
-        // Launch the code on the Launch Thread by setting valid input data and interrupting the launchThread.
-        callable.setInputData(input);
-        launchThread.interrupt();
-      } catch (InterruptedException ignored) { }
-    }
+    callable.setInputData(data);
+    debounced.feedData(data);
   }
 
-  // Launch Thread Code:
+  // Debouncer worker Thread code
 
-  private void launchTaskLoop() {
-    //noinspection InfiniteLoopStatement
-    while (true) {
-      // This try block gets interrupted whenever feedData() is called.
-      try {
-        //noinspection BusyWait
-        Thread.sleep(delayMilliSeconds);
-        launchCallable();
-      } catch (InterruptedException ignored) { }
-    }
-  }
-
-  /**
-   * Skip the queuing and waiting and just launch the task immediately.
-   */
-  private void launchCallable() {
-    final @Nullable I inputData = callable.getInputData();
-    if (inputData != null) {
-      callable.setInputData(null);
-      R result = callable.call(inputData);
-      consumer.accept(result);
-    }
+  private R launchCallable(I inputData) {
+    callable.setInputData(null);
+    return callable.call(inputData);
   }
 }
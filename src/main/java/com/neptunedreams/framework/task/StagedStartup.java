@@ -0,0 +1,221 @@
+package com.neptunedreams.framework.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Runs the steps of application startup as a graph of stages, where each stage starts as soon as the stages it
+ * depends on are finished. Stages that don't depend on each other run at the same time. Each stage is timed, and a
+ * ready signal opens when the stages that the user is waiting for are done, so the UI may show its window right away,
+ * and wait on the signal in the background before showing any data.
+ * <p>
+ * A stage may only depend on stages that were already added, so the graph can never have a cycle. If a stage fails,
+ * every stage that depends on it is skipped, and the ready signal opens anyway, so nothing waits forever. Use
+ * {@link #getFailure()} to find out what went wrong.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 6:10 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+@SuppressWarnings({"WeakerAccess", "HardCodedStringLiteral"})
+public final class StagedStartup {
+
+  /**
+   * The work of a single stage.
+   */
+  @FunctionalInterface
+  public interface Step {
+    /**
+     * Do the work
+     * @throws Exception if the work fails. Dependent stages are skipped.
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    void run() throws Exception;
+  }
+
+  private static final class Stage {
+    private final String name;
+    private final Step step;
+    private final String[] dependencies;
+
+    Stage(String name, Step step, String[] dependencies) {
+      this.name = name;
+      this.step = step;
+      this.dependencies = dependencies;
+    }
+  }
+
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+  private final Map<String, Long> timings = new ConcurrentHashMap<>();
+  private final List<String> readyStages = new ArrayList<>();
+  private final CountDownDoor readySignal = new CountDownDoor(1);
+  private volatile @Nullable Throwable failure = null;
+  private @Nullable CompletableFuture<Void> completion = null;
+
+  /**
+   * Add a stage.
+   * @param name The name of the stage, which must be unique
+   * @param step The work of the stage
+   * @param dependencies The names of the stages that must finish before this one starts. These must already have
+   *                     been added.
+   * @return this, for chaining
+   * @throws IllegalArgumentException if the name is already used, or a dependency hasn't been added
+   * @throws IllegalStateException if the startup has already started
+   */
+  public synchronized StagedStartup addStage(String name, Step step, String... dependencies) {
+    checkNotStarted();
+    if (stages.containsKey(name)) {
+      throw new IllegalArgumentException(String.format("Duplicate stage: %s", name));
+    }
+    for (String dependency : dependencies) {
+      checkStage(dependency);
+    }
+    stages.put(name, new Stage(name, step, dependencies.clone()));
+    return this;
+  }
+
+  /**
+   * Specify which stages must finish before the ready signal opens. If this is never called, the signal opens when
+   * every stage is finished.
+   * @param names The names of the stages, which must already have been added.
+   * @return this, for chaining
+   */
+  public synchronized StagedStartup setReadyAfter(String... names) {
+    checkNotStarted();
+    for (String name : names) {
+      checkStage(name);
+    }
+    readyStages.clear();
+    Collections.addAll(readyStages, names);
+    return this;
+  }
+
+  private void checkStage(String name) {
+    if (!stages.containsKey(name)) {
+      throw new IllegalArgumentException(String.format("Unknown stage: %s", name));
+    }
+  }
+
+  private void checkNotStarted() {
+    if (completion != null) {
+      throw new IllegalStateException("Already started");
+    }
+  }
+
+  /**
+   * Start all the stages, each on its own daemon thread. The threads are discarded when they're done.
+   * @return A future that completes when every stage is finished, or completes exceptionally if any stage fails.
+   */
+  public CompletableFuture<Void> start() {
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "Startup " + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletableFuture<Void> future = start(executor);
+    future.whenComplete((v, t) -> executor.shutdown());
+    return future;
+  }
+
+  /**
+   * Start all the stages, using the specified executor. Startup stages usually block on I/O, so the executor
+   * should have enough threads to run the independent stages at the same time.
+   * @param executor The executor
+   * @return A future that completes when every stage is finished, or completes exceptionally if any stage fails.
+   */
+  public synchronized CompletableFuture<Void> start(Executor executor) {
+    checkNotStarted();
+    final long startTime = System.nanoTime();
+    Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    for (Stage stage : stages.values()) {
+      List<CompletableFuture<Void>> prerequisites = new ArrayList<>();
+      for (String dependency : stage.dependencies) {
+        prerequisites.add(futures.get(dependency));
+      }
+      CompletableFuture<Void> future = CompletableFuture.allOf(prerequisites.toArray(new CompletableFuture<?>[0]))
+          .thenRunAsync(() -> runStage(stage), executor);
+      futures.put(stage.name, future);
+    }
+
+    List<CompletableFuture<Void>> ready = new ArrayList<>();
+    for (String name : readyStages.isEmpty() ? futures.keySet() : readyStages) {
+      ready.add(futures.get(name));
+    }
+    CompletableFuture.allOf(ready.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((v, t) -> readySignal.countDown());
+    CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+    all.whenComplete((v, t) -> timings.put("total", elapsedMillis(startTime)));
+    completion = all;
+    return all;
+  }
+
+  private void runStage(Stage stage) {
+    long stageStart = System.nanoTime();
+    try {
+      stage.step.run();
+    } catch (Exception e) {
+      if (failure == null) {
+        failure = e;
+      }
+      throw new CompletionException(String.format("Startup stage %s failed", stage.name), e);
+    } finally {
+      timings.put(stage.name, elapsedMillis(stageStart));
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Get the signal that opens when the ready stages are finished, or when one of them can't finish because of a
+   * failure.
+   * @return The ready signal
+   * @see #setReadyAfter(String...)
+   */
+  public CountDownDoor getReadySignal() {
+    return readySignal;
+  }
+
+  /**
+   * Get the time each stage took, in milliseconds, in the order the stages were added. Stages that haven't run are
+   * left out. Once all the stages are done, this also has an entry named "total," for the time from the start to
+   * the end.
+   * @return The timings
+   */
+  public synchronized Map<String, Long> getTimings() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (String name : stages.keySet()) {
+      Long millis = timings.get(name);
+      if (millis != null) {
+        result.put(name, millis);
+      }
+    }
+    Long total = timings.get("total");
+    if (total != null) {
+      result.put("total", total);
+    }
+    return result;
+  }
+
+  /**
+   * @return The first failure of any stage, or null if none have failed.
+   */
+  public @Nullable Throwable getFailure() {
+    return failure;
+  }
+}
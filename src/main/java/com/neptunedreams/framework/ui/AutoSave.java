@@ -1,6 +1,7 @@
 package com.neptunedreams.framework.ui;
 
 import java.awt.AWTEvent;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.awt.event.AWTEventListener;
 import java.awt.event.InputEvent;
@@ -29,13 +30,19 @@ public final class AutoSave implements AWTEventListener {
 
   /** One Minute */
   public static final int ONE_MINUTE = 60;
+  /** The default pause in typing, in milliseconds, before the edits are written to the journal. */
+  public static final int JOURNAL_DELAY_MILLIS = 500;
   private final RestartableTimer timer;
-  private static final int ON_MASK = toExMask(Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
+  // A headless toolkit has no shortcut key, or key events, but a controller may still run headless, to replay a
+  // session.
+  private static final int ON_MASK = GraphicsEnvironment.isHeadless()
+      ? 0
+      : toExMask(Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
   private static final int ALL_MASK = ALT_DOWN_MASK | SHIFT_DOWN_MASK | META_DOWN_MASK | CTRL_DOWN_MASK;
 
   @SuppressWarnings("argument.type.incompatible")
-  private AutoSave(Runnable runnable, int seconds) {
-    timer = new RestartableTimer(seconds * 1000L, runnable);
+  private AutoSave(Runnable runnable, long millis) {
+    timer = new RestartableTimer(millis, runnable);
     timer.start();
     Toolkit.getDefaultToolkit().addAWTEventListener(this, AWTEvent.KEY_EVENT_MASK);
   }
@@ -99,6 +106,27 @@ public final class AutoSave implements AWTEventListener {
    */
   public static void engage(Runnable saveMethod, int seconds) {
     //noinspection ResultOfObjectAllocationIgnored
-    new AutoSave(saveMethod, seconds);
+    new AutoSave(saveMethod, seconds * 1000L);
+  }
+
+  /**
+   * Start journaling the edits after each short pause in typing, using the default delay of 
+   * {@link #JOURNAL_DELAY_MILLIS}. This works alongside the slower save, so a crash between saves loses no more than
+   * the last half-second of typing.
+   * @param journalMethod The method that writes the current edits to the journal
+   * @see com.neptunedreams.framework.data.EditJournal
+   */
+  public static void engageJournal(Runnable journalMethod) {
+    engageJournal(journalMethod, JOURNAL_DELAY_MILLIS);
+  }
+
+  /**
+   * Start journaling the edits after each pause in typing of the specified length.
+   * @param journalMethod The method that writes the current edits to the journal
+   * @param millis The delay, in milliseconds, before writing to the journal
+   */
+  public static void engageJournal(Runnable journalMethod, long millis) {
+    //noinspection ResultOfObjectAllocationIgnored
+    new AutoSave(journalMethod, millis);
   }
 }
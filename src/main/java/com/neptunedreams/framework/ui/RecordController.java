@@ -1,21 +1,44 @@
 package com.neptunedreams.framework.ui;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import javax.swing.SwingUtilities;
 import com.neptunedreams.framework.ErrorReport;
+import com.neptunedreams.framework.data.CancellableSearchService;
 import com.neptunedreams.framework.data.DBField;
 import com.neptunedreams.framework.data.Dao;
+import com.neptunedreams.framework.data.DatabaseInfo;
+import com.neptunedreams.framework.data.EditJournal;
+import com.neptunedreams.framework.data.FoundSetSnapshot;
+import com.neptunedreams.framework.data.FoundSetSorter;
 import com.neptunedreams.framework.data.RecordModel;
 import com.neptunedreams.framework.data.RecordModelListener;
+import com.neptunedreams.framework.data.RecordPrefetcher;
 import com.neptunedreams.framework.data.RecordSelectionModel;
 import com.neptunedreams.framework.data.SearchOption;
 import com.neptunedreams.framework.event.MasterEventBus;
+import com.neptunedreams.framework.replay.SessionRecorder;
 import com.neptunedreams.util.StringStuff;
 import org.checkerframework.checker.initialization.qual.NotOnlyInitialized;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Handles user input and output by sending commands to the data model.
@@ -31,10 +54,21 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
   // For DerbyRecordDao, E was Record.FIELD
 //  private E order = Record.FIELD.SOURCE;
   private F order;
+  private List<F> sortFields;
   private final Dao<R, PK, F> dao;
   private final RecordSelectionModel<? extends R> recordSelectionModel;
   @NotOnlyInitialized
   private final RecordModel<R> model;
+  private final ToIntFunction<? super R> idFunction;
+  private @Nullable EditJournal journal = null;
+  private @Nullable R draftRecord = null; // The last unsaved record that was journaled. Only used on the EDT.
+  private int draftNumber = 0; // Only used on the event dispatch thread
+  private @Nullable CancellableSearchService searchService = null;
+  private @Nullable FoundSetSorter<R, F> sorter = null;
+  private @Nullable RecordPrefetcher<R, ?> prefetcher = null;
+  private @Nullable SessionRecorder recorder = null;
+  private volatile @Nullable Runnable exitSave = null; // Saves the found set when the application exits
+  private boolean exitHookAdded = false; // guarded by this
 
   @SuppressWarnings("methodref.receiver.bound.invalid")
   private RecordController(
@@ -42,12 +76,14 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
       RecordSelectionModel<? extends R> recordSelectionModel,
       F initialOrder,
       Supplier<@NonNull R> recordConstructor,
-      Function<R, Integer> getIdFunction
+      ToIntFunction<? super R> idFunction
   ) {
     dao = theDao;
     this.recordSelectionModel = recordSelectionModel;
-    model = new RecordModel<>(recordConstructor, getIdFunction);
+    model = RecordModel.withIntIds(recordConstructor, idFunction);
+    this.idFunction = idFunction;
     order = initialOrder;
+    sortFields = Collections.singletonList(initialOrder);
     AutoSave.engage(this::saveCurrentRecord); // warning suppressed here.
   }
 
@@ -70,7 +106,34 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
       Supplier<@NonNull RR> recordConstructor,
       Function<RR, Integer> getIdFunction
   ) {
-    RecordController<RR, PPK, FF> recordController = new RecordController<>(theDao, recordSelectionModel, initialOrder, recordConstructor, getIdFunction);
+    return createRecordControllerWithIntIds(theDao, recordSelectionModel, initialOrder, recordConstructor, record -> {
+      Integer id = getIdFunction.apply(record);
+      return (id == null) ? 0 : id;
+    });
+  }
+
+  /**
+   * Construct a RecordController that gets record ids as primitive ints, so finding a record by id doesn't box
+   * anything.
+   * @param theDao The DAO
+   * @param recordSelectionModel The selection model from which the controller gets the selected record
+   * @param initialOrder The initial order of the records
+   * @param recordConstructor Constructs a new, blank record
+   * @param idFunction Gets the id of a record, or zero if the record hasn't been saved
+   * @param <RR> The record type
+   * @param <PPK> The primary key type
+   * @param <FF> type of the initial and subsequent record orders
+   * @return A constructed and initialized RecordController
+   */
+  public static <RR, PPK, FF extends DBField> RecordController<RR, PPK, FF> createRecordControllerWithIntIds(
+      Dao<RR, PPK, FF> theDao,
+      RecordSelectionModel<? extends RR> recordSelectionModel,
+      FF initialOrder,
+      Supplier<@NonNull RR> recordConstructor,
+      ToIntFunction<? super RR> idFunction
+  ) {
+    RecordController<RR, PPK, FF> recordController
+        = new RecordController<>(theDao, recordSelectionModel, initialOrder, recordConstructor, idFunction);
     recordController.model.addModelListener(recordController);
     return recordController;
   }
@@ -86,18 +149,102 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
    * @param theOrder The field by which the results will be ordered
    */
   public void specifyOrder(F theOrder) {
-    order = theOrder;
+    specifyOrder(Collections.singletonList(theOrder));
+  }
+
+  /**
+   * Specify the order of the returned records by several fields. Queries are ordered by the first field only, so
+   * unless a {@linkplain #setSorter(FoundSetSorter) sorter} has been specified, the others are ignored. If there is
+   * a sorter, the current found set is re-sorted in memory, without querying the database again, and each new found
+   * set is sorted by all the fields.
+   * @param fields The fields by which the results will be ordered, most significant first
+   */
+  public void specifyOrder(List<F> fields) {
+    if (fields.isEmpty()) {
+      throw new IllegalArgumentException("No sort fields");
+    }
+    order = fields.get(0);
+    sortFields = fields;
+    FoundSetSorter<R, F> foundSetSorter = sorter;
+    if (foundSetSorter != null) {
+      model.sort(foundSetSorter, fields);
+    }
+  }
+
+  /**
+   * Specify the sorter used to sort found sets in memory. Once this is set, changing the order won't query the
+   * database again.
+   * @param foundSetSorter The sorter
+   */
+  public void setSorter(FoundSetSorter<R, F> foundSetSorter) {
+    sorter = foundSetSorter;
+  }
+
+  public List<F> getSortFields() {
+    return sortFields;
   }
 
   public F getOrder() {
     return order;
   }
 
+  /**
+   * Specify the prefetcher that loads the full data of each record before it's shown. The prefetcher should be
+   * listening to this controller's {@linkplain #getModel() model}.
+   * @param recordPrefetcher The prefetcher
+   * @see RecordPrefetcher#create(RecordModel, ToIntFunction, RecordPrefetcher.Loader, java.util.function.BiConsumer)
+   */
+  public void setPrefetcher(RecordPrefetcher<R, ?> recordPrefetcher) {
+    prefetcher = recordPrefetcher;
+  }
+
+  /**
+   * Record this controller's searches, new records, and navigation through {@link #goNext()} and the other go
+   * methods, so the session can be replayed later. To record the Dao calls too, the controller should be built on a
+   * Dao that was {@linkplain SessionRecorder#wrap(Dao) wrapped} by the same recorder.
+   * @param sessionRecorder The recorder, or null to stop recording
+   */
+  public void setSessionRecorder(@Nullable SessionRecorder sessionRecorder) {
+    recorder = sessionRecorder;
+  }
+
   private void loadNewRecord(@NonNull R record) {
     saveCurrentRecord();
+    final RecordPrefetcher<R, ?> recordPrefetcher = prefetcher;
+    if (recordPrefetcher != null) {
+      if (SwingUtilities.isEventDispatchThread()) {
+        hydrate(recordPrefetcher, record, false);
+      } else {
+        // The searches call this on their own threads, but the prefetcher must be used on the event dispatch thread.
+        SwingUtilities.invokeLater(() -> hydrate(recordPrefetcher, record, true));
+      }
+    }
     MasterEventBus.postChangeRecordEvent(record);
   }
 
+  /**
+   * Apply the full data to a record. This must be called on the event dispatch thread.
+   * @param recordPrefetcher The prefetcher
+   * @param record The record
+   * @param shown True if the record may have been shown before this was called, so it must be shown again once its
+   *              data is applied, even if the data was already prefetched.
+   */
+  private void hydrate(RecordPrefetcher<R, ?> recordPrefetcher, @NonNull R record, boolean shown) {
+    CompletableFuture<R> hydrated = recordPrefetcher.hydrate(record);
+    if (shown || !hydrated.isDone()) {
+      // Show the record again when its data arrives, unless the user has moved on or started editing it.
+      hydrated.whenCompleteAsync((loaded, failure) -> {
+        if (failure == null) {
+          if ((model.getFoundRecord() == loaded) && !recordSelectionModel.isRecordDataModified()) {
+            MasterEventBus.postChangeRecordEvent(loaded);
+          }
+        } else if (!(failure instanceof CancellationException)) {
+          ErrorReport.reportException("Load", failure);
+        }
+      }, SwingUtilities::invokeLater);
+    }
+  }
+
   void saveCurrentRecord() {
     R currentRecord = recordSelectionModel.getCurrentRecord(); // Move this back to where the comment is
 
@@ -105,16 +252,74 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
       try {
         MasterEventBus.postLoadUserData();
         dao.insertOrUpdate(currentRecord);
+        invalidateCaches(currentRecord); // Its sort keys and prefetched data may be out of date.
+        if (journal != null) {
+          journal.truncate(); // The edits are safe in the database now.
+        }
       } catch (SQLException e) {
         ErrorReport.reportException("Insert", e);
       }
     }
   }
 
+  /**
+   * Write the user's unsaved edits to a journal after every short pause in typing, so they can be recovered after a 
+   * crash. The journal is truncated each time the current record is saved. Any edits left in the journal at startup
+   * should be recovered with {@link EditJournal#replayInto(Dao, java.util.function.IntFunction, 
+   * java.util.function.BiConsumer)} before this is called.
+   * @param editJournal The journal
+   * @param editedValues Gets the edited values of the current record from the user interface, by field name. This
+   *                     is called on the event dispatch thread, and only when the record has been modified.
+   */
+  @SuppressWarnings("methodref.receiver.bound.invalid")
+  public void engageJournal(EditJournal editJournal, Function<? super R, Map<String, @Nullable String>> editedValues) {
+    journal = editJournal;
+    // The timer runs on its own thread, but the edits must be read from the components on the event dispatch thread.
+    // Appending to the journal only takes microseconds, so it's done there too.
+    AutoSave.engageJournal(() -> SwingUtilities.invokeLater(() -> journalCurrentRecord(editJournal, editedValues)));
+  }
+
+  /**
+   * Copy the edited values of the current record, and append them to the journal. This must be called on the event
+   * dispatch thread.
+   */
+  private void journalCurrentRecord(
+      EditJournal editJournal,
+      Function<? super R, Map<String, @Nullable String>> editedValues
+  ) {
+    if (recordSelectionModel.isRecordDataModified()) {
+      R currentRecord = recordSelectionModel.getCurrentRecord();
+      int id = idFunction.applyAsInt(currentRecord);
+      if ((id == 0) && (currentRecord != draftRecord)) {
+        draftRecord = currentRecord; // Each new record gets its own draft number, so their edits don't get merged.
+        draftNumber++;
+      }
+      try {
+        editJournal.append(id, draftNumber, new LinkedHashMap<>(editedValues.apply(currentRecord)));
+      } catch (IOException e) {
+        ErrorReport.reportException("Journal", e);
+      }
+    }
+  }
+
   /**
    * And a new, blank record to the end of the model.
    */
   public void addBlankRecord() {
+    final SessionRecorder sessionRecorder = recorder;
+    if (sessionRecorder == null) {
+      addBlankRecordNow();
+      return;
+    }
+    long start = sessionRecorder.begin();
+    try {
+      addBlankRecordNow();
+    } finally {
+      sessionRecorder.end(start, "addBlankRecord");
+    }
+  }
+
+  private void addBlankRecordNow() {
     // If the last record is already blank, just go to it
     final int lastIndex = model.getSize() - 1;
     @NonNull R lastRecord = model.getRecordAt(lastIndex);
@@ -159,7 +364,12 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
    * @param theFoundItems
    */
   public void setFoundRecords(final Collection<@NonNull ? extends R> theFoundItems) {
-    model.setNewList(theFoundItems);
+    FoundSetSorter<R, F> foundSetSorter = sorter;
+    if ((foundSetSorter != null) && (sortFields.size() > 1)) {
+      model.setNewList(theFoundItems, foundSetSorter, sortFields); // The query only sorted by the first field.
+    } else {
+      model.setNewList(theFoundItems);
+    }
     if (model.getSize() > 0) {
       final R selectedRecord = model.getFoundRecord();
       if (!selectedRecord.equals(recordSelectionModel.getCurrentRecord())) {
@@ -168,6 +378,81 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
     }
   }
 
+  /**
+   * Shows the found set saved in a snapshot, if the snapshot is still current. This is meant to be called at startup,
+   * before the first query runs, so the first screen can be shown right away. The real query should still run, and
+   * when its results arrive, the same record will stay selected.
+   * @param snapshotPath The snapshot file, written by {@link #saveFoundSet(Path, long, Map)}
+   * @param changeStamp The database's current change stamp
+   * @param factory Builds the placeholder records from the snapshot
+   * @return true if the snapshot was restored, false if there was no current snapshot.
+   */
+  public boolean restoreFoundSet(
+      Path snapshotPath,
+      long changeStamp,
+      FoundSetSnapshot.RecordFactory<? extends R> factory
+  ) {
+    final FoundSetSnapshot snapshot = FoundSetSnapshot.open(snapshotPath, changeStamp);
+    if (snapshot == null) {
+      return false;
+    }
+    model.restoreSnapshot(snapshot, factory);
+    MasterEventBus.postChangeRecordEvent(model.getFoundRecord());
+    return true;
+  }
+
+  /**
+   * Saves the found set and the selected record to a snapshot, for {@link #restoreFoundSet(Path, long,
+   * FoundSetSnapshot.RecordFactory)} to show at the next startup.
+   * @param snapshotPath The snapshot file
+   * @param changeStamp The database's current change stamp, from {@link DatabaseInfo#getChangeStamp()}
+   * @param displayColumns The values needed to show the first screen, by column name
+   * @throws IOException If the snapshot can't be written
+   */
+  public void saveFoundSet(
+      Path snapshotPath,
+      long changeStamp,
+      Map<String, ? extends Function<? super R, ?>> displayColumns
+  ) throws IOException {
+    model.writeSnapshot(snapshotPath, changeStamp, displayColumns);
+  }
+
+  /**
+   * Saves the found set to a snapshot when the application exits. The change stamp is read at exit, so it covers
+   * every change made while the application ran. Only the ids and the display values of records that are already
+   * loaded are saved, so nothing is read from the database, which may already be shut down. Calling this again
+   * replaces the earlier settings.
+   * @param snapshotPath The snapshot file
+   * @param info The database, which supplies the change stamp
+   * @param displayColumns The values needed to show the first screen, by column name
+   */
+  public void saveFoundSetOnExit(
+      Path snapshotPath,
+      DatabaseInfo info,
+      Map<String, ? extends Function<? super R, ?>> displayColumns
+  ) {
+    exitSave = () -> {
+      try {
+        saveFoundSet(snapshotPath, info.getChangeStamp(), displayColumns);
+      } catch (IOException e) {
+        // It's too late to show a dialog. The next startup will just run the query.
+        //noinspection UseOfSystemOutOrSystemErr
+        System.err.printf("Can't save the found set: %s%n", e);
+      }
+    };
+    synchronized (this) {
+      if (!exitHookAdded) {
+        exitHookAdded = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          Runnable save = exitSave;
+          if (save != null) {
+            save.run();
+          }
+        }, "Save found set"));
+      }
+    }
+  }
+
   /**
    * Finds the specified text in the specified field, and display them in the user interface.
    * @param dirtyText The text to find, uncleaned
@@ -177,11 +462,17 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
   public void findTextInField(String dirtyText, final F field, SearchOption searchOption) {
     //noinspection TooBroadScope
     String text = dirtyText.trim();
+    final SessionRecorder sessionRecorder = recorder;
+    long start = (sessionRecorder == null) ? 0L : sessionRecorder.begin();
     try {
       Collection<@NonNull R> foundItems = findRecordsInField(text, field, searchOption);
       setFoundRecords(foundItems);
     } catch (SQLException e) {
       ErrorReport.reportException(String.format("Find Text in Field %s with %s", field, searchOption), e);
+    } finally {
+      if (sessionRecorder != null) {
+        sessionRecorder.end(start, "findTextInField", dirtyText, field, searchOption);
+      }
     }
   }
 
@@ -214,11 +505,17 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
   public void findTextAnywhere(String dirtyText, SearchOption searchOption) {
     //noinspection TooBroadScope
     String text = dirtyText.trim();
+    final SessionRecorder sessionRecorder = recorder;
+    long start = (sessionRecorder == null) ? 0L : sessionRecorder.begin();
     try {
       Collection<@NonNull R> foundItems = findRecordsAnywhere(text, searchOption);
       setFoundRecords(foundItems);
     } catch (SQLException e) {
       ErrorReport.reportException("Find Text anywhere", e);
+    } finally {
+      if (sessionRecorder != null) {
+        sessionRecorder.end(start, "findTextAnywhere", dirtyText, searchOption);
+      }
     }
   }
   
@@ -268,11 +565,247 @@ public final class RecordController<R, PK, F extends DBField> implements RecordM
     }
   }
 
+  /**
+   * Specify the service used by {@link #retrieveLatest(DBField, SearchOption, String)}. The controller's Dao should
+   * get its connections from the service's {@link CancellableSearchService#getConnectionSource() connection source},
+   * or its searches can't be cancelled.
+   * @param service The search service
+   */
+  public void setSearchService(CancellableSearchService service) {
+    searchService = service;
+  }
+
+  /**
+   * Cancel the search that's running in {@link #retrieveLatest(DBField, SearchOption, String)}, if any. Call this as
+   * soon as the user changes the search text, before the new search gets launched.
+   */
+  public void cancelSearch() {
+    if (searchService != null) {
+      searchService.cancel(this);
+    }
+  }
+
+  /**
+   * Like {@link #retrieveNow(DBField, SearchOption, String)}, but the search gets cancelled in the database if a
+   * newer search starts, or if {@link #cancelSearch()} is called, before it finishes.
+   * @param searchField The field in which to search, which could be all fields
+   * @param searchOption The user-selected search option
+   * @param searchText The text to search for
+   * @return The found records, or a superseded result, which should be ignored.
+   * @throws IllegalStateException if no search service was specified
+   */
+  public CancellableSearchService.SearchResult<Collection<@NonNull R>> retrieveLatest(
+      final F searchField,
+      final SearchOption searchOption,
+      final String searchText
+  ) {
+    CancellableSearchService service = searchService;
+    if (service == null) {
+      throw new IllegalStateException("setSearchService() must be called before retrieveLatest()");
+    }
+    try {
+      return service.search(this, () -> searchField.isField()
+          ? findRecordsInField(searchText, searchField, searchOption)
+          : findRecordsAnywhere(searchText, searchOption));
+    } catch (SQLException e) {
+      SwingUtilities.invokeLater(() -> ErrorReport.reportException("Search", e)); // This runs on a search thread.
+      return CancellableSearchService.SearchResult.of(new LinkedList<>());
+    }
+  }
+
   @Override
   public void indexChanged(final int index, int prior) {
     loadNewRecord(model.getFoundRecord());
   }
 
+  /**
+   * Show the next record, or the first one after the last. Navigation controls should call this, rather than the
+   * model's method, so it gets recorded.
+   */
+  public void goNext() {
+    navigate("goNext", model::goNext);
+  }
+
+  /**
+   * Show the previous record, or the last one before the first.
+   */
+  public void goPrev() {
+    navigate("goPrev", model::goPrev);
+  }
+
+  /**
+   * Show the first record.
+   */
+  public void goFirst() {
+    navigate("goFirst", model::goFirst);
+  }
+
+  /**
+   * Show the last record.
+   */
+  public void goLast() {
+    navigate("goLast", model::goLast);
+  }
+
+  /**
+   * Show the record with the specified id, if it's in the found set.
+   * @param recordId The id of the record
+   * @return true if the record was found, false otherwise
+   */
+  public boolean goToId(int recordId) {
+    final SessionRecorder sessionRecorder = recorder;
+    if (sessionRecorder == null) {
+      return model.goToId(recordId);
+    }
+    long start = sessionRecorder.begin();
+    try {
+      return model.goToId(recordId);
+    } finally {
+      sessionRecorder.end(start, "goToId", recordId);
+    }
+  }
+
+  private void navigate(String operation, Runnable move) {
+    final SessionRecorder sessionRecorder = recorder;
+    if (sessionRecorder == null) {
+      move.run();
+      return;
+    }
+    long start = sessionRecorder.begin();
+    try {
+      move.run();
+    } finally {
+      sessionRecorder.end(start, operation);
+    }
+  }
+
+  /**
+   * Delete all the selected records, from the database and from the model, as one bulk operation.
+   * @return The number of records deleted
+   * @throws SQLException If the records couldn't all be deleted. Unless the Dao deletes them in one transaction,
+   * some of them may be gone anyway. Those are removed from the model, and the rest are kept.
+   */
+  public int deleteSelectedRecords() throws SQLException {
+    List<@NonNull R> selected = model.getSelectedRecords();
+    if (selected.isEmpty()) {
+      return 0;
+    }
+    saveCurrentRecord();
+    try {
+      dao.deleteAll(selected);
+    } catch (SQLException e) {
+      try {
+        keepSelectedIfStillSaved();
+        removeSelectedRecords(model.getSelectedRecords());
+      } catch (SQLException reloadFailure) {
+        e.addSuppressed(reloadFailure); // We can't tell which ones are gone, so the model is unchanged.
+      }
+      throw e;
+    }
+    return removeSelectedRecords(selected);
+  }
+
+  private int removeSelectedRecords(List<@NonNull R> deleted) {
+    for (R record : deleted) {
+      invalidateCaches(record);
+    }
+    int count = model.removeSelected();
+    if (count > 0) {
+      MasterEventBus.postChangeRecordEvent(model.getFoundRecord());
+    }
+    return count;
+  }
+
+  /**
+   * Reload the primary keys from the database, and deselect the selected records that are still there, so only the
+   * ones that are gone stay selected.
+   */
+  private void keepSelectedIfStillSaved() throws SQLException {
+    Set<PK> savedKeys = new HashSet<>();
+    for (R record : dao.getAll(null)) {
+      savedKeys.add(dao.getPrimaryKey(record));
+    }
+    BitSet selection = model.getSnapshot().getSelection();
+    for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+      if (savedKeys.contains(dao.getPrimaryKey(model.getRecordAt(i)))) {
+        model.setSelected(i, false);
+      }
+    }
+  }
+
+  /**
+   * Change a field of every selected record to the same value, and save them as one bulk operation.
+   * @param binding The field's binding
+   * @param value The new value
+   * @param <V> The type of the field
+   * @throws SQLException If the records couldn't be saved
+   */
+  public <V> void setFieldOfSelected(FieldBinding.EditableFieldBinding<R, V, ?> binding, V value) throws SQLException {
+    updateSelected(record -> binding.setValue(record, value));
+  }
+
+  /**
+   * Change every selected record, and save them as one bulk operation.
+   * @param change Changes a record
+   * @throws SQLException If the records couldn't be saved
+   */
+  public void updateSelected(Consumer<? super R> change) throws SQLException {
+    List<@NonNull R> selected = model.getSelectedRecords();
+    if (selected.isEmpty()) {
+      return;
+    }
+    saveCurrentRecord(); // Otherwise, the user's unsaved edits would be overwritten when the current record is shown.
+    for (R record : selected) {
+      change.accept(record);
+    }
+    dao.updateAll(selected);
+    for (R record : selected) {
+      invalidateCaches(record);
+    }
+    model.selectedRecordsChanged();
+    MasterEventBus.postChangeRecordEvent(model.getFoundRecord());
+  }
+
+  /**
+   * Copy the specified fields of each selected record into new records, insert them as one bulk operation, and add
+   * them to the end of the found set.
+   * @param fieldsToCopy The bindings of the fields to copy
+   * @throws SQLException If the new records couldn't be inserted
+   * @see #copyCurrentRecord(Collection)
+   */
+  public void copySelected(Collection<FieldBinding.EditableFieldBinding<R, ?, ?>> fieldsToCopy) throws SQLException {
+    List<@NonNull R> selected = model.getSelectedRecords();
+    if (selected.isEmpty()) {
+      return;
+    }
+    saveCurrentRecord();
+    List<@NonNull R> copies = new ArrayList<>(selected.size());
+    for (R original : selected) {
+      R copy = model.createNewEmptyRecord();
+      for (FieldBinding.EditableFieldBinding<R, ?, ?> binding : fieldsToCopy) {
+        copyField(original, copy, binding);
+      }
+      copies.add(copy);
+    }
+    dao.insertAll(copies);
+    model.appendAll(copies);
+    MasterEventBus.postChangeRecordEvent(model.getFoundRecord());
+  }
+
+  private <V> void copyField(R original, R copy, FieldBinding.EditableFieldBinding<R, V, ?> binding) {
+    binding.setValue(copy, binding.getValue(original));
+  }
+
+  private void invalidateCaches(R record) {
+    int id = idFunction.applyAsInt(record);
+    if (sorter != null) {
+      sorter.invalidate(id);
+    }
+    if (prefetcher != null) {
+      prefetcher.invalidate(id);
+    }
+  }
+
   /**
    * Delete the specified record
    * @param selectedRecord The record to delete
@@ -0,0 +1,165 @@
+package com.neptunedreams.framework.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 1:40 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class BulkTransferTest {
+  @Test
+  public void testBinaryRoundTrip() throws IOException, SQLException {
+    roundTrip(BulkTransfer.Format.BINARY);
+  }
+
+  @Test
+  public void testCsvRoundTrip() throws IOException, SQLException {
+    roundTrip(BulkTransfer.Format.CSV);
+  }
+
+  private void roundTrip(BulkTransfer.Format format) throws IOException, SQLException {
+    List<Note> notes = new ArrayList<>();
+    notes.add(new Note(1, "plain", "text"));
+    notes.add(new Note(2, "", null));
+    notes.add(new Note(3, "comma, \"quote\"", "line 1\r\nline 2\n"));
+    notes.add(new Note(4, "ñandú 日本", repeat('x', 3000)));
+    File file = File.createTempFile("transfer", ".dat");
+    file.deleteOnExit();
+
+    long[] lastProgress = new long[1];
+    long written = BulkTransfer.exportRecords(notes, CODEC, file.toPath(), format, (r, b) -> lastProgress[0] = r);
+    assertEquals(4L, written);
+    assertEquals(4L, lastProgress[0]);
+
+    int[] batches = new int[1];
+    InMemoryDao<Note, DBField> dao = new InMemoryDao<Note, DBField>(n -> n.id, (n, id) -> n.id = id,
+        (n, f) -> n.title, new ArrayList<>()) {
+      @Override
+      public synchronized void insertAll(Collection<? extends Note> entities) throws SQLException {
+        batches[0]++;
+        super.insertAll(entities);
+      }
+    };
+    long read = BulkTransfer.importRecords(file.toPath(), CODEC, dao, format, 3, null, null);
+    assertEquals(4L, read);
+    assertEquals(2, batches[0]);
+    List<Note> imported = new ArrayList<>(dao.getAll(null));
+    assertEquals(notes.size(), imported.size());
+    for (int i = 0; i < notes.size(); ++i) {
+      assertEquals(notes.get(i).id, imported.get(i).id);
+      assertEquals(notes.get(i).title, imported.get(i).title);
+      assertEquals(notes.get(i).body, imported.get(i).body);
+    }
+  }
+
+  @Test
+  public void testCsvProgressCountsBufferedBytes() throws IOException {
+    List<Note> notes = new ArrayList<>();
+    for (int i = 1; i <= 1000; ++i) {
+      notes.add(new Note(i, "ñ title", "body"));
+    }
+    File file = File.createTempFile("transfer", ".csv");
+    file.deleteOnExit();
+    List<Long> bytes = new ArrayList<>();
+    BulkTransfer.exportRecords(notes, CODEC, file.toPath(), BulkTransfer.Format.CSV, (r, b) -> bytes.add(b));
+    assertEquals(2, bytes.size()); // once at 1000 records, while still buffered, and once when done
+    assertEquals(file.length(), bytes.get(0).longValue());
+    assertEquals(file.length(), bytes.get(1).longValue());
+  }
+
+  @Test
+  public void testCsvImportCountsParsedBytes() throws IOException, SQLException {
+    List<Note> notes = new ArrayList<>();
+    for (int i = 1; i <= 20000; ++i) {
+      notes.add(new Note(i, "ñ title " + i, "日本"));
+    }
+    File file = File.createTempFile("transfer", ".csv");
+    file.deleteOnExit();
+    BulkTransfer.exportRecords(notes, CODEC, file.toPath(), BulkTransfer.Format.CSV, null);
+
+    // The whole file fits in the read buffer, but the reader can't get more than a queue's length ahead.
+    List<Long> bytes = new ArrayList<>();
+    InMemoryDao<Note, DBField> dao = new InMemoryDao<>(n -> n.id, (n, id) -> n.id = id, (n, f) -> n.title,
+        new ArrayList<>());
+    BulkTransfer.importRecords(file.toPath(), CODEC, dao, BulkTransfer.Format.CSV, 1000, null, (r, b) -> bytes.add(b));
+    assertTrue(bytes.get(0) < (file.length() / 2));
+    assertEquals(file.length(), bytes.get(bytes.size() - 1).longValue());
+  }
+
+  @Test
+  public void testCorruptBinaryRecordIsRejected() throws IOException, SQLException {
+    File file = File.createTempFile("transfer", ".dat");
+    file.deleteOnExit();
+    BulkTransfer.exportRecords(Arrays.asList(new Note(1, "one", "first"), new Note(2, "two", "second")), CODEC,
+        file.toPath(), BulkTransfer.Format.BINARY, null);
+
+    // The first record's length follows the header: magic, version, column count and the column names record.
+    final int firstRecord = Integer.BYTES + Short.BYTES + 1 + Integer.BYTES + (1 + 2) + (1 + 5) + (1 + 4);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(firstRecord);
+      int length = raf.readInt();
+      raf.seek(firstRecord);
+      raf.writeInt(length + 1);
+    }
+    InMemoryDao<Note, DBField> dao = new InMemoryDao<>(n -> n.id, (n, id) -> n.id = id, (n, f) -> n.title,
+        new ArrayList<>());
+    try {
+      BulkTransfer.importRecords(file.toPath(), CODEC, dao, BulkTransfer.Format.BINARY, 10, null, null);
+      fail("Corrupt record");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt record"));
+    }
+    assertEquals(0, dao.getTotal());
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static final RecordCodec<Note> CODEC = new RecordCodec<Note>() {
+    @Override
+    public String[] getColumnNames() {
+      return new String[] {"id", "title", "body"};
+    }
+
+    @Override
+    public void flatten(Note record, @Nullable String[] row) {
+      row[0] = String.valueOf(record.id);
+      row[1] = record.title;
+      row[2] = record.body;
+    }
+
+    @Override
+    public Note restore(@Nullable String[] row) {
+      return new Note(Integer.parseInt(String.valueOf(row[0])), String.valueOf(row[1]), row[2]);
+    }
+  };
+
+  private static final class Note {
+    private int id;
+    private final String title;
+    private final @Nullable String body;
+
+    Note(int id, String title, @Nullable String body) {
+      this.id = id;
+      this.title = title;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.neptunedreams.framework.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 2:30 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class EditJournalTest {
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int FRAME_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File file = makeFile();
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      journal.append(5, values("title", "first"));
+      journal.append(0, 1, values("title", "draft one"));
+      journal.append(0, 2, values("title", "draft two"));
+      journal.append(5, values("title", "second", "body", null));
+    }
+
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      Map<Integer, Map<String, @Nullable String>> pending = journal.getPendingEdits();
+      assertEquals(Arrays.asList(5, -1, -2), new ArrayList<>(pending.keySet()));
+      assertEquals(values("title", "second", "body", null), pending.get(5));
+      assertEquals(values("title", "draft one"), pending.get(-1));
+      assertEquals(values("title", "draft two"), pending.get(-2));
+
+      List<EditJournal.Entry> entries = journal.readEntries();
+      assertEquals(0, entries.get(1).getRecordId());
+      assertEquals(1, entries.get(1).getDraftNumber());
+
+      journal.truncate();
+      assertTrue(journal.isEmpty());
+    }
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      assertTrue(journal.getPendingEdits().isEmpty());
+    }
+  }
+
+  @Test
+  public void testTornEntryIsIgnored() throws IOException {
+    File file = makeFile();
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      journal.append(1, values("a", "x"));
+      journal.append(2, values("b", "y"));
+    }
+
+    // Damage the second entry's payload. The first payload is the id, the count, and two Strings of one byte each.
+    final int firstPayload = Integer.BYTES + Integer.BYTES + (2 * (Integer.BYTES + 1));
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(HEADER_SIZE + FRAME_SIZE + firstPayload + FRAME_SIZE + Integer.BYTES);
+      raf.writeInt(7);
+    }
+
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      assertEquals(Collections.singleton(1), journal.getPendingEdits().keySet());
+
+      // New entries overwrite the damaged one.
+      journal.append(3, values("c", "z"));
+      assertEquals(Arrays.asList(1, 3), new ArrayList<>(journal.getPendingEdits().keySet()));
+    }
+  }
+
+  @Test
+  public void testFailedReplayResumes() throws IOException, SQLException {
+    List<String> failures = new ArrayList<>(Collections.singletonList("draft two"));
+    InMemoryDao<Note, DBField> dao = new InMemoryDao<Note, DBField>(n -> n.id, (n, id) -> n.id = id,
+        (n, f) -> n.title, new ArrayList<>()) {
+      @Override
+      public synchronized void insertOrUpdate(Note entity) {
+        if (failures.remove(entity.title)) {
+          throw new IllegalStateException("Can't save " + entity.title);
+        }
+        super.insertOrUpdate(entity);
+      }
+    };
+    dao.insert(new Note(0, "saved"));
+
+    File file = makeFile();
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      journal.append(1, values("title", "edited"));
+      journal.append(0, 1, values("title", "draft one"));
+      journal.append(0, 2, values("title", "draft two"));
+      try {
+        replay(journal, dao);
+        fail("The second draft fails");
+      } catch (IllegalStateException ignored) { }
+      assertEquals(2, dao.getTotal());
+    }
+
+    // Only the record that failed is saved the second time, so the first draft isn't inserted twice.
+    try (EditJournal journal = new EditJournal(file.toPath())) {
+      assertEquals(Collections.singleton(-2), journal.getPendingEdits().keySet());
+      assertEquals(1, replay(journal, dao));
+      assertTrue(journal.isEmpty());
+    }
+    List<String> titles = new ArrayList<>();
+    for (Note note : dao.getAll(null)) {
+      titles.add(note.title);
+    }
+    assertEquals(Arrays.asList("edited", "draft one", "draft two"), titles);
+  }
+
+  private static int replay(EditJournal journal, InMemoryDao<Note, DBField> dao) throws SQLException, IOException {
+    return journal.replayInto(dao, id -> {
+      Note note = dao.getById(id);
+      return (note == null) ? new Note(0, "") : note;
+    }, (note, values) -> note.title = String.valueOf(values.get("title")));
+  }
+
+  private static File makeFile() throws IOException {
+    File file = File.createTempFile("journal", ".dat");
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static Map<String, @Nullable String> values(@Nullable String... namesAndValues) {
+    Map<String, @Nullable String> values = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      values.put(String.valueOf(namesAndValues[i]), namesAndValues[i + 1]);
+    }
+    return values;
+  }
+
+  private static final class Note {
+    private int id;
+    private String title;
+
+    Note(int id, String title) {
+      this.id = id;
+      this.title = title;
+    }
+  }
+}
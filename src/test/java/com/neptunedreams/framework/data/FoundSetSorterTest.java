@@ -0,0 +1,69 @@
+package com.neptunedreams.framework.data;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/21/26
+ * <p>Time: 10:40 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class FoundSetSorterTest {
+  @Test
+  public void testMixedKindsSortInBands() {
+    List<Item> items = Arrays.asList(
+        new Item(1, "beta"),
+        new Item(2, 3.5),
+        new Item(3, 7L),
+        new Item(4, null),
+        new Item(5, new Date(1000L)),
+        new Item(6, Long.MIN_VALUE),
+        new Item(7, "\u0000"), // A collation key that may start with zero bytes
+        new Item(8, 2.5),
+        new Item(9, "alpha")
+    );
+    FoundSetSorter<Item, ItemField> sorter
+        = new FoundSetSorter<>((item, field) -> item.value, item -> item.id, Collator.getInstance(Locale.US));
+    int[] order = sorter.sortOrder(items, Collections.singletonList(ItemField.Value));
+    List<Integer> ids = new ArrayList<>();
+    for (int index : order) {
+      ids.add(items.get(index).id);
+    }
+
+    // Null, then whole numbers, then other Comparables by class name, so Double before Date, then text.
+    assertEquals(4, ids.get(0).intValue());
+    assertEquals(Arrays.asList(6, 3), ids.subList(1, 3));
+    assertEquals(Arrays.asList(8, 2, 5), ids.subList(3, 6));
+    assertEquals(Arrays.asList(7, 9, 1), ids.subList(6, 9));
+  }
+
+  private enum ItemField implements DBField {
+    Value;
+
+    @Override
+    public boolean isField() {
+      return true;
+    }
+  }
+
+  private static final class Item {
+    private final int id;
+    private final @Nullable Object value;
+
+    Item(int id, @Nullable Object value) {
+      this.id = id;
+      this.value = value;
+    }
+  }
+}
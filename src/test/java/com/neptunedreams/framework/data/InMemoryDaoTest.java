@@ -0,0 +1,207 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/19/26
+ * <p>Time: 10:02 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class InMemoryDaoTest {
+  @Test
+  public void testSearch() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = makeDao();
+    assertEquals(4, dao.getTotal());
+    assertEquals(5, dao.getNextId().intValue());
+
+    assertEquals(Arrays.asList(1, 2, 3, 4), ids(dao.getAll(null)));
+    assertEquals(Arrays.asList(3, 1, 2, 4), ids(dao.getAll(SiteField.Source)));
+    assertEquals(Arrays.asList(1, 2), ids(dao.find("alpha", null)));
+    assertEquals(Arrays.asList(1, 2), ids(dao.findInField("ALPHA", SiteField.Source, null)));
+    assertEquals(Arrays.asList(1, 2, 4), ids(dao.findAny(SiteField.Password, "alpha", "gamma")));
+    assertEquals(Arrays.asList(1), ids(dao.findAll(null, "alpha", "pw1")));
+    assertEquals(Arrays.asList(4), ids(dao.findAllInField(SiteField.Source, null, "gamma", "ma")));
+    assertEquals(Arrays.asList(3, 4), ids(dao.findAnyInField(SiteField.Password, SiteField.Source, "pw3", "pw4")));
+  }
+
+  @Test
+  public void testWrites() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = makeDao();
+    Site added = new Site(0, "delta", "pw5");
+    dao.insertOrUpdate(added);
+    assertEquals(5, added.id);
+    assertEquals(5, dao.getTotal());
+    try {
+      dao.insert(new Site(3, "duplicate", ""));
+      fail("Duplicate key");
+    } catch (SQLException ignored) { }
+
+    // Changes aren't seen until the record is saved.
+    added.source = "epsilon";
+    assertTrue(dao.find("epsilon", null).isEmpty());
+    dao.update(added);
+    assertEquals(Arrays.asList(5), ids(dao.find("epsilon", null)));
+
+    List<Site> all = new ArrayList<>(dao.getAll(SiteField.Source));
+    dao.delete(all.get(0));
+    assertEquals(Arrays.asList(1, 2, 5, 4), ids(dao.getAll(SiteField.Source)));
+  }
+
+  @Test
+  public void testBulkWrites() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = makeDao();
+    List<Site> all = new ArrayList<>(dao.getAll(null));
+    for (Site site : all) {
+      site.source = "delta";
+    }
+    Site added = new Site(0, "delta", "pw5");
+    dao.updateAll(Arrays.asList(all.get(0), all.get(2), added));
+    assertEquals(5, added.id);
+    assertEquals(Arrays.asList(1, 3, 5), ids(dao.find("delta", null)));
+
+    dao.deleteAll(Arrays.asList(all.get(0), all.get(1), all.get(3), new Site(99, "missing", "")));
+    assertEquals(Arrays.asList(3, 5), ids(dao.getAll(null)));
+  }
+
+  @Test
+  public void testInsertAll() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = makeDao();
+    Site first = new Site(0, "delta", "pw5");
+    Site second = new Site(0, "epsilon", "pw6");
+    dao.insertAll(Arrays.asList(first, new Site(10, "zeta", "pw10"), second, new Site(7, "eta", "pw7")));
+    assertEquals(11, first.id);
+    assertEquals(12, second.id);
+    assertEquals(Arrays.asList(1, 2, 3, 4, 7, 10, 11, 12), ids(dao.getAll(null)));
+    assertEquals(Arrays.asList(11), ids(dao.find("delta", null)));
+    assertEquals(13, dao.getNextId().intValue());
+
+    // A duplicate id rejects the whole batch.
+    Site unsaved = new Site(0, "theta", "pw8");
+    try {
+      dao.insertAll(Arrays.asList(unsaved, new Site(20, "iota", ""), new Site(20, "kappa", "")));
+      fail("Duplicate key");
+    } catch (SQLException ignored) { }
+    try {
+      dao.insertAll(Arrays.asList(unsaved, new Site(3, "duplicate", "")));
+      fail("Duplicate key");
+    } catch (SQLException ignored) { }
+    assertEquals(0, unsaved.id);
+    assertEquals(8, dao.getTotal());
+  }
+
+  @Test
+  public void testManyWrites() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = new InMemoryDao<>(s -> s.id, (s, id) -> s.id = id, Site::getValue,
+        Arrays.asList(SiteField.values()));
+    Map<Integer, String> expected = new TreeMap<>();
+    Random random = new Random(17L);
+    for (int i = 0; i < 5000; ++i) {
+      int id = random.nextInt(300) + 1;
+      String source = "s" + i;
+      switch (random.nextInt(3)) {
+        case 0:
+          dao.insertOrUpdate(new Site(id, source, ""));
+          expected.put(id, source);
+          break;
+        case 1:
+          dao.delete(new Site(id, "", ""));
+          expected.remove(id);
+          break;
+        default:
+          Site site = dao.getById(id);
+          assertEquals(expected.get(id), (site == null) ? null : site.source);
+          break;
+      }
+      if ((i % 500) == 0) {
+        assertEquals(new ArrayList<>(expected.keySet()), ids(dao.getAll(null)));
+      }
+    }
+    assertEquals(expected.size(), dao.getTotal());
+    List<String> sources = new ArrayList<>();
+    for (Site site : dao.getAll(null)) {
+      sources.add(site.source);
+    }
+    assertEquals(new ArrayList<>(expected.values()), sources);
+  }
+
+  @Test
+  public void testMixedTypesAreOrderedByType() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = new InMemoryDao<>(s -> s.id, (s, id) -> s.id = id,
+        (s, f) -> s.source.matches("\\d+") ? Integer.valueOf(s.source) : s.source, Arrays.asList(SiteField.values()));
+    dao.insert(new Site(1, "8a", ""));
+    dao.insert(new Site(2, "10", ""));
+    dao.insert(new Site(3, "9", ""));
+    dao.insert(new Site(4, "7b", ""));
+    assertEquals(Arrays.asList(3, 2, 4, 1), ids(dao.getAll(SiteField.Source)));
+  }
+
+  @Test
+  public void testFindInNonField() throws SQLException {
+    try {
+      makeDao().findInField("alpha", SiteField.All, null);
+      fail("Not a field");
+    } catch (IllegalArgumentException ignored) { }
+  }
+
+  private static InMemoryDao<Site, SiteField> makeDao() throws SQLException {
+    InMemoryDao<Site, SiteField> dao = new InMemoryDao<>(s -> s.id, (s, id) -> s.id = id, Site::getValue,
+        Arrays.asList(SiteField.values()));
+    dao.insert(new Site(2, "Beta Alpha", "pw2"));
+    dao.insert(new Site(1, "Alpha", "pw1"));
+    dao.insert(new Site(3, "aardvark", "pw3"));
+    dao.insert(new Site(4, "Gamma", "pw4"));
+    return dao;
+  }
+
+  private static List<Integer> ids(Collection<Site> sites) {
+    List<Integer> ids = new ArrayList<>();
+    for (Site site : sites) {
+      ids.add(site.id);
+    }
+    return ids;
+  }
+
+  private enum SiteField implements DBField {
+    Source, Password, All;
+
+    @Override
+    public boolean isField() {
+      return this != All;
+    }
+  }
+
+  private static final class Site {
+    private int id;
+    private String source;
+    private final String password;
+
+    Site(int id, String source, String password) {
+      this.id = id;
+      this.source = source;
+      this.password = password;
+    }
+
+    Object getValue(SiteField field) {
+      switch (field) {
+        case Source:
+          return source;
+        case Password:
+          return password;
+        default:
+          throw new AssertionError(field);
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.neptunedreams.framework.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Each test applies the events of a diff to a copy of the old list, and checks that the result is the new list.
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 11:50 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class RecordListDiffTest {
+
+  @Test
+  public void testAppend() {
+    List<Item> oldList = items(1, 2, 3);
+    List<Item> newList = items(1, 2, 3, 4, 5);
+    assertEquals(Collections.singletonList("inserted 3-4"), apply(oldList, newList));
+  }
+
+  @Test
+  public void testMiddleOfCommonPrefixAndSuffix() {
+    List<Item> oldList = items(1, 2, 3, 4, 5, 6);
+    List<Item> newList = items(1, 2, 7, 8, 5, 6);
+    assertEquals(Arrays.asList("removed 2-3", "inserted 2-3"), apply(oldList, newList));
+  }
+
+  @Test
+  public void testReorder() {
+    List<Item> oldList = items(1, 2, 3, 4, 5, 6);
+    List<Item> newList = items(6, 2, 1, 3, 5, 4);
+    List<String> events = apply(oldList, newList);
+    for (String event : events) {
+      assertTrue(event, event.startsWith("moved"));
+    }
+    assertTrue(events.toString(), events.size() <= 3); // 2, 3, 5 can stay
+  }
+
+  @Test
+  public void testRemoveInsertAndMove() {
+    List<Item> oldList = items(1, 2, 3, 4, 5, 6, 7, 8);
+    List<Item> newList = items(1, 9, 6, 3, 4, 10, 11, 2, 8);
+    apply(oldList, newList);
+  }
+
+  @Test
+  public void testChangedContent() {
+    List<Item> oldList = items(1, 2, 3, 4);
+    List<Item> newList = items(1, 2, 3, 4);
+    newList.set(1, new Item(2, "edited"));
+    newList.set(2, new Item(3, "edited"));
+    assertEquals(Collections.singletonList("changed 1-2"), apply(oldList, newList));
+  }
+
+  @Test
+  public void testNoChange() {
+    assertEquals(Collections.emptyList(), apply(items(1, 2, 3), items(1, 2, 3)));
+  }
+
+  @Test
+  public void testRepeatedIdsFallBack() {
+    assertNull(RecordListDiff.compute(items(1, 2, 4), items(1, 3, 3, 4), Item::getId, Objects::equals));
+    assertNull(RecordListDiff.compute(items(5, 1, 2, 1), items(1, 2), Item::getId, Objects::equals));
+
+    // Only the part between the common prefix and suffix has to be matched by id.
+    assertEquals(Arrays.asList("removed 1-1", "inserted 1-1"), apply(items(1, 2, 3), items(1, 3, 3)));
+  }
+
+  /**
+   * Apply the diff of the two lists to a copy of the old list, and check that it matches the new list.
+   * @return The events
+   */
+  private static List<String> apply(List<Item> oldList, List<Item> newList) {
+    RecordListDiff diff = RecordListDiff.compute(oldList, newList, Item::getId, Objects::equals);
+    assertNotNull(diff);
+    Replica replica = new Replica(oldList, newList);
+    diff.dispatch(replica);
+    assertEquals(newList, replica.list);
+    return replica.events;
+  }
+
+  private static List<Item> items(int... ids) {
+    List<Item> items = new ArrayList<>();
+    for (int id : ids) {
+      items.add(new Item(id, "item " + id));
+    }
+    return items;
+  }
+
+  /**
+   * A copy of the old list, updated by the events, taking new records from the new list.
+   */
+  private static final class Replica implements RecordListChangeListener {
+    private final List<Item> list;
+    private final List<Item> newList;
+    private final List<String> events = new ArrayList<>();
+
+    Replica(List<Item> oldList, List<Item> newList) {
+      list = new ArrayList<>(oldList);
+      this.newList = newList;
+    }
+
+    @Override
+    public void recordsInserted(int first, int last) {
+      events.add("inserted " + first + '-' + last);
+      for (int i = first; i <= last; ++i) {
+        list.add(i, newList.get(i));
+      }
+    }
+
+    @Override
+    public void recordsRemoved(int first, int last) {
+      events.add("removed " + first + '-' + last);
+      list.subList(first, last + 1).clear();
+    }
+
+    @Override
+    public void recordMoved(int from, int to) {
+      events.add("moved " + from + '>' + to);
+      list.add(to, list.remove(from));
+    }
+
+    @Override
+    public void recordsChanged(int first, int last) {
+      events.add("changed " + first + '-' + last);
+      for (int i = first; i <= last; ++i) {
+        list.set(i, newList.get(i));
+      }
+    }
+
+    @Override
+    public void modelListChanged(int newSize) {
+      fail("A diff never asks for a full refresh");
+    }
+
+    @Override
+    public void indexChanged(int index, int prior) { }
+  }
+
+  private static final class Item {
+    private final int id;
+    private final String name;
+
+    Item(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    int getId() {
+      return id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return (obj instanceof Item) && (((Item) obj).id == id) && ((Item) obj).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return id + ":" + name;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package com.neptunedreams.framework.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 9:10 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class RecordModelTest {
+  private static final String[] NAMES = {"", "delta", "alpha", "charlie", "bravo"};
+
+  @Test
+  public void testSelectionFollowsSort() {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    model.setNewList(Arrays.asList(new Item(1, "delta"), new Item(2, "alpha"), new Item(3, "charlie")));
+    model.setSelected(0, true); // delta
+    model.setSelected(2, true); // charlie
+    model.sort(makeSorter(), Collections.singletonList(ItemField.Name));
+    assertEquals(Arrays.asList("alpha", "charlie", "delta"), names(model.getSnapshot().getRecords()));
+    assertEquals(Arrays.asList("charlie", "delta"), names(model.getSelectedRecords()));
+  }
+
+  @Test
+  public void testAppendedSelectionStaysInPlaceAfterLazySort() {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    model.setNewIds(new int[]{1, 2, 3, 4}, id -> new Item(id, NAMES[id]));
+    model.appendAll(Arrays.asList(new Item(0, "zulu"), new Item(0, "yankee")));
+
+    // Select one sorted record and the second appended record.
+    model.setSelected(0, true); // delta
+    model.setSelected(5, true); // yankee
+    model.sort(makeSorter(), Collections.singletonList(ItemField.Name));
+
+    List<Item> records = model.getSnapshot().getRecords();
+    assertEquals(Arrays.asList("alpha", "bravo", "charlie", "delta", "zulu", "yankee"), names(records));
+    assertEquals(Arrays.asList("delta", "yankee"), names(model.getSelectedRecords()));
+    assertTrue(model.isSelected(3));
+    assertTrue(model.isSelected(5));
+    assertEquals(2, model.getSelectionCount());
+  }
+
+  @Test
+  public void testSortedFoundSetIsAnnouncedOnce() throws InterruptedException, InvocationTargetException {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    List<Integer> sizes = new CopyOnWriteArrayList<>();
+    model.addModelListener(new RecordModelListener() {
+      @Override
+      public void modelListChanged(int newSize) {
+        sizes.add(newSize);
+      }
+
+      @Override
+      public void indexChanged(int index, int prior) { }
+    });
+    model.setNewList(
+        Arrays.asList(new Item(1, "delta"), new Item(2, "alpha"), new Item(3, "charlie")),
+        makeSorter(),
+        Collections.singletonList(ItemField.Name)
+    );
+    SwingUtilities.invokeAndWait(() -> { });
+    assertEquals(Arrays.asList("alpha", "charlie", "delta"), names(model.getSnapshot().getRecords()));
+    assertEquals(Collections.singletonList(3), sizes);
+  }
+
+  @Test
+  public void testListenersHearChangesInOrder() throws InterruptedException, InvocationTargetException {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    model.setNewList(Arrays.asList(new Item(1, "delta"), new Item(2, "alpha"), new Item(3, "charlie")));
+    SwingUtilities.invokeAndWait(() -> { }); // Deliver the setNewList() events.
+    List<Integer> indexes = new CopyOnWriteArrayList<>();
+    model.addModelListener(new RecordModelListener() {
+      @Override
+      public void modelListChanged(int newSize) { }
+
+      @Override
+      public void indexChanged(int index, int prior) {
+        indexes.add(index);
+      }
+    });
+
+    SwingUtilities.invokeAndWait(() -> {
+      // The background change can't be delivered until this finishes, but it must still be delivered first.
+      Thread background = new Thread(model::goLast);
+      background.start();
+      try {
+        background.join();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      model.goFirst();
+      assertEquals(Arrays.asList(2, 0), indexes);
+    });
+    SwingUtilities.invokeAndWait(() -> { });
+    assertEquals(Arrays.asList(2, 0), indexes);
+  }
+
+  @Test
+  public void testChangesMadeByListenersAreHeardInOrder() throws InterruptedException, InvocationTargetException {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    model.setNewList(Arrays.asList(new Item(1, "delta"), new Item(2, "alpha"), new Item(3, "charlie")));
+    SwingUtilities.invokeAndWait(() -> { });
+    model.addModelListener(new RecordModelListener() {
+      @Override
+      public void modelListChanged(int newSize) { }
+
+      @Override
+      public void indexChanged(int index, int prior) {
+        if (index == 2) {
+          model.goFirst();
+        }
+      }
+    });
+    List<Integer> indexes = new CopyOnWriteArrayList<>();
+    model.addModelListener(new RecordModelListener() {
+      @Override
+      public void modelListChanged(int newSize) { }
+
+      @Override
+      public void indexChanged(int index, int prior) {
+        indexes.add(index);
+      }
+    });
+
+    SwingUtilities.invokeAndWait(model::goLast);
+    assertEquals(Arrays.asList(2, 0), indexes);
+    assertEquals(0, model.getRecordIndex());
+  }
+
+  @Test
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    RecordModel<Item> model = RecordModel.withIntIds(
+        (Supplier<Item> & Serializable) () -> new Item(0, ""),
+        (ToIntFunction<Item> & Serializable) item -> item.id
+    );
+    model.setNewList(Arrays.asList(new Item(1, "delta"), new Item(2, "alpha"), new Item(3, "charlie")));
+    model.goNext();
+    model.setSelected(2, true);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(model);
+    }
+    @SuppressWarnings("unchecked")
+    RecordModel<Item> copy;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      //noinspection unchecked
+      copy = (RecordModel<Item>) in.readObject();
+    }
+
+    assertEquals(Arrays.asList("delta", "alpha", "charlie"), names(copy.getSnapshot().getRecords()));
+    assertEquals(1, copy.getRecordIndex());
+    assertEquals(Collections.singletonList("charlie"), names(copy.getSelectedRecords()));
+    assertEquals(2, copy.indexOf(3));
+
+    // The copy still works.
+    copy.append(new Item(0, "echo"));
+    assertEquals(4, copy.getSize());
+  }
+
+  @Test
+  public void testSnapshotDoesNotLoadRecords() throws IOException {
+    RecordModel<Item> model = RecordModel.withIntIds(() -> new Item(0, ""), item -> item.id);
+    List<Integer> loaded = new ArrayList<>();
+    model.setNewIds(new int[]{1, 2, 3, 4}, id -> {
+      loaded.add(id);
+      return new Item(id, NAMES[id]);
+    });
+    model.goNext();
+    assertEquals("alpha", model.getFoundRecord().name); // Load one record.
+    loaded.clear();
+
+    File file = File.createTempFile("foundSet", ".snapshot");
+    file.deleteOnExit();
+    model.writeSnapshot(file.toPath(), 17L, Collections.singletonMap("name", item -> item.name));
+    assertEquals(Collections.emptyList(), loaded);
+
+    FoundSetSnapshot snapshot = FoundSetSnapshot.open(file.toPath(), 17L);
+    assertNotNull(snapshot);
+    assertEquals(4, snapshot.getSize());
+    assertEquals(1, snapshot.getRecordIndex());
+    assertEquals(3, snapshot.getId(2));
+    assertEquals("alpha", snapshot.getValue(0, 1));
+    assertEquals("", snapshot.getValue(0, 2));
+  }
+
+  private static FoundSetSorter<Item, ItemField> makeSorter() {
+    return new FoundSetSorter<>((item, field) -> item.name, item -> item.id);
+  }
+
+  private static List<String> names(List<Item> items) {
+    List<String> names = new ArrayList<>();
+    for (Item item : items) {
+      names.add(item.name);
+    }
+    return names;
+  }
+
+  private enum ItemField implements DBField {
+    Name;
+
+    @Override
+    public boolean isField() {
+      return true;
+    }
+  }
+
+  private static final class Item implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int id;
+    private final String name;
+
+    Item(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+}
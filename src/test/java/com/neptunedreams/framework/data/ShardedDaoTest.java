@@ -0,0 +1,194 @@
+package com.neptunedreams.framework.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/21/26
+ * <p>Time: 4:15 PM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class ShardedDaoTest {
+  private static final Executor executor = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r);
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @Test
+  public void testIdsAreUniqueAcrossShards() throws SQLException {
+    List<InMemoryDao<Item, Field>> shards = makeShards(3, -1);
+    shards.get(1).insert(new Item(40, "saved"));
+    ShardedDao<Item, Field> dao = makeDao(shards);
+
+    List<Item> items = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Item item = new Item(0, "single " + i);
+      dao.insert(item);
+      items.add(item);
+    }
+    List<Item> batch = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      batch.add(new Item(0, "batch " + i));
+    }
+    dao.insertAll(batch);
+    items.addAll(batch);
+
+    Set<Integer> ids = new HashSet<>();
+    int lowest = Integer.MAX_VALUE;
+    for (Item item : items) {
+      assertTrue(ids.add(item.id));
+      lowest = Math.min(lowest, item.id);
+      assertEquals(1, shardsHolding(shards, item.id).size());
+    }
+    assertEquals(41, lowest);
+    assertEquals(51, dao.getTotal());
+    int used = 0;
+    for (InMemoryDao<Item, Field> shard : shards) {
+      if (shard.getTotal() > 0) {
+        used++;
+      }
+    }
+    assertTrue(used > 1);
+  }
+
+  @Test
+  public void testWritesGoToTheOwningShard() throws SQLException {
+    List<InMemoryDao<Item, Field>> shards = makeShards(3, -1);
+    ShardedDao<Item, Field> dao = makeDao(shards);
+    List<Item> items = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      items.add(new Item(0, "item " + i));
+    }
+    dao.insertAll(items);
+
+    Item item = items.get(5);
+    List<InMemoryDao<Item, Field>> holding = shardsHolding(shards, item.id);
+    assertEquals(1, holding.size());
+    InMemoryDao<Item, Field> owner = holding.get(0);
+
+    dao.update(new Item(item.id, "changed"));
+    Item saved = owner.getById(item.id);
+    assertNotNull(saved);
+    assertEquals("changed", saved.name);
+    assertEquals(Arrays.asList(owner), shardsHolding(shards, item.id));
+
+    int[] totals = totals(shards);
+    dao.delete(new Item(item.id, "changed"));
+    assertTrue(shardsHolding(shards, item.id).isEmpty());
+    int[] after = totals(shards);
+    for (int i = 0; i < shards.size(); i++) {
+      assertEquals((shards.get(i) == owner) ? (totals[i] - 1) : totals[i], after[i]);
+    }
+    assertEquals(11, dao.getTotal());
+  }
+
+  @Test
+  public void testCrossShardBatchIsNotAtomic() throws SQLException {
+    List<InMemoryDao<Item, Field>> shards = makeShards(3, 2);
+    ShardedDao<Item, Field> dao = makeDao(shards);
+    List<Item> items = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      items.add(new Item(0, "item " + i));
+    }
+    try {
+      dao.insertAll(items);
+      fail("The last shard fails");
+    } catch (SQLException ignored) { }
+
+    // The healthy shards keep their records. The failing shard has none.
+    int written = 0;
+    for (Item item : items) {
+      List<InMemoryDao<Item, Field>> holding = shardsHolding(shards, item.id);
+      if (!holding.isEmpty()) {
+        assertNotSame(shards.get(2), holding.get(0));
+        written++;
+      }
+    }
+    assertEquals(0, shards.get(2).getTotal());
+    assertEquals(shards.get(0).getTotal() + shards.get(1).getTotal(), written);
+    assertTrue(written > 0);
+    assertTrue(written < items.size());
+    assertEquals(written, dao.getTotal());
+  }
+
+  /**
+   * Make the shards
+   * @param count The number of shards
+   * @param failing The index of a shard whose batch inserts fail, or -1 for none
+   * @return The shards
+   */
+  private static List<InMemoryDao<Item, Field>> makeShards(int count, int failing) {
+    List<InMemoryDao<Item, Field>> shards = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      if (i == failing) {
+        shards.add(new InMemoryDao<Item, Field>(r -> r.id, (r, id) -> r.id = id, (r, f) -> r.name,
+            Arrays.asList(Field.values())) {
+          @Override
+          public synchronized void insertAll(Collection<? extends Item> entities) throws SQLException {
+            throw new SQLException("Shard is down");
+          }
+        });
+      } else {
+        shards.add(new InMemoryDao<>(r -> r.id, (r, id) -> r.id = id, (r, f) -> r.name, Arrays.asList(Field.values())));
+      }
+    }
+    return shards;
+  }
+
+  private static ShardedDao<Item, Field> makeDao(List<InMemoryDao<Item, Field>> shards) {
+    return new ShardedDao<>(shards, executor, f -> Comparator.comparing((Item r) -> r.name));
+  }
+
+  private static List<InMemoryDao<Item, Field>> shardsHolding(List<InMemoryDao<Item, Field>> shards, int id) {
+    List<InMemoryDao<Item, Field>> holding = new ArrayList<>();
+    for (InMemoryDao<Item, Field> shard : shards) {
+      @Nullable Item item = shard.getById(id);
+      if (item != null) {
+        holding.add(shard);
+      }
+    }
+    return holding;
+  }
+
+  private static int[] totals(List<InMemoryDao<Item, Field>> shards) {
+    int[] totals = new int[shards.size()];
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] = shards.get(i).getTotal();
+    }
+    return totals;
+  }
+
+  private enum Field implements DBField {
+    NAME;
+
+    @Override
+    public boolean isField() {
+      return true;
+    }
+  }
+
+  private static final class Item {
+    private int id;
+    private String name;
+
+    Item(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+}
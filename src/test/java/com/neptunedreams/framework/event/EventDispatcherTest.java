@@ -0,0 +1,353 @@
+package com.neptunedreams.framework.event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.Subscribe;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 11:20 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class EventDispatcherTest {
+  private static final int THREADS = 4;
+
+  @Test
+  public void testEventsPostedBySubscribersWaitTheirTurn() {
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    List<String> log = new ArrayList<>();
+    dispatcher.register(new IntegerHandler(dispatcher, log), null);
+    dispatcher.register(new NumberHandler(log), null);
+    dispatcher.post(1);
+
+    // The String and the 2 posted while handling the 1 wait until every subscriber has seen the 1.
+    assertEquals(Arrays.asList("Integer 1", "Number 1", "String s", "Integer 2", "Number 2"), log);
+  }
+
+  @Test
+  public void testSubscribersAreSerializedUnlessAnnotated() throws InterruptedException {
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    SerialHandler serial = new SerialHandler();
+    dispatcher.register(serial, null);
+    postFromThreads(dispatcher, 200, "event");
+    assertEquals(THREADS * 200, serial.calls.get());
+    assertEquals(1, serial.maxActive.get());
+
+    // Every post waits at the barrier for the others, which only works if they're delivered at the same time.
+    EventDispatcher concurrentDispatcher = new EventDispatcher(this);
+    ConcurrentHandler concurrent = new ConcurrentHandler();
+    concurrentDispatcher.register(concurrent, null);
+    postFromThreads(concurrentDispatcher, 1, 1L);
+    assertFalse(concurrent.failed.get());
+    assertEquals(THREADS, concurrent.calls.get());
+  }
+
+  @Test
+  public void testEventsPostedWhileSubscriptionsChangeKeepTheirSubscribers() {
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    List<String> log = new ArrayList<>();
+    List<Runnable> tasks = new ArrayList<>();
+    Executor executor = tasks::add;
+    BarHandler synchronousBar = new BarHandler("sync", log);
+    dispatcher.register(new FooHandler(dispatcher, synchronousBar, log), null);
+    dispatcher.register(synchronousBar, null);
+    dispatcher.register(new BarHandler("async", log), executor);
+    dispatcher.post(new Foo());
+    runAll(tasks);
+
+    // The Bar waited until the Foo was done, but still went to the subscribers it had when it was posted.
+    assertEquals(Arrays.asList("Foo", "sync Bar", "async Bar"), log);
+
+    // Unregistering the only subscriber of a waiting event doesn't lose it, either.
+    EventDispatcher lonely = new EventDispatcher(this);
+    List<String> lonelyLog = new ArrayList<>();
+    BarHandler onlyBar = new BarHandler("only", lonelyLog);
+    lonely.register(new FooHandler(lonely, onlyBar, lonelyLog), null);
+    lonely.register(onlyBar, null);
+    lonely.post(new Foo());
+    assertEquals(Arrays.asList("Foo", "only Bar"), lonelyLog);
+    lonely.post(new Bar());
+    assertEquals(Arrays.asList("Foo", "only Bar"), lonelyLog);
+  }
+
+  @Test
+  public void testEventWithNoSubscribersIsDead() {
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    List<DeadEvent> deadEvents = new ArrayList<>();
+    dispatcher.register(new DeadHandler(deadEvents), null);
+    Object event = "nobody listens";
+    dispatcher.post(event);
+    assertEquals(1, deadEvents.size());
+    assertSame(event, deadEvents.get(0).getEvent());
+    assertSame(this, deadEvents.get(0).getSource());
+
+    // A DeadEvent with nobody to hear it is dropped, rather than wrapped again.
+    new EventDispatcher(this).post("nobody at all");
+  }
+
+  @Test
+  public void testInvokers() throws Throwable {
+    List<String> log = new ArrayList<>();
+    PublicHandler publicHandler = new PublicHandler(log);
+    EventDispatcher.Invoker direct
+        = EventDispatcher.makeInvoker(publicHandler, PublicHandler.class.getMethod("onEvent", PublicEvent.class));
+    assertFalse(capturesMethodHandle(direct));
+    direct.invoke(new PublicEvent());
+
+    // The class generated by the LambdaMetafactory can't call a private method, so a MethodHandle calls it.
+    Method hidden = PrivateHandler.class.getDeclaredMethod("onEvent", PublicEvent.class);
+    hidden.setAccessible(true);
+    EventDispatcher.Invoker fallback = EventDispatcher.makeInvoker(new PrivateHandler(log), hidden);
+    assertTrue(capturesMethodHandle(fallback));
+    fallback.invoke(new PublicEvent());
+    assertEquals(Arrays.asList("public", "private"), log);
+
+    // Either way, a registered method gets its events.
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    dispatcher.register(new PrivateHandler(log), null);
+    dispatcher.post(new PublicEvent());
+    assertEquals(Arrays.asList("public", "private", "private"), log);
+  }
+
+  @Test
+  public void testPostingAllocatesNothing() {
+    EventDispatcher dispatcher = new EventDispatcher(this);
+    PublicHandler handler = new PublicHandler(new ArrayList<>());
+    dispatcher.register(handler, null);
+    dispatcher.register(new PrivateCounter(), null);
+    PublicEvent event = new PublicEvent();
+    final int count = 1_000_000;
+    for (int i = 0; i < count; ++i) {
+      dispatcher.post(event); // warm up
+    }
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < count; ++i) {
+      dispatcher.post(event);
+    }
+    long nanosPerPost = (System.nanoTime() - start) / count;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    assertEquals(count * 2, handler.count);
+    // Allow a little, since reading the allocated bytes may allocate.
+    assertTrue(String.format("%d bytes allocated", allocated), allocated < 1024L);
+    // It takes about 70 ns on a slow core, but a busy test machine gets a wide margin.
+    assertTrue(String.format("%d ns per post", nanosPerPost), nanosPerPost < 1000L);
+  }
+
+  private static void postFromThreads(EventDispatcher dispatcher, int posts, Object event) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; ++t) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < posts; ++i) {
+          dispatcher.post(event);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private static void runAll(List<Runnable> tasks) {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
+  private static boolean capturesMethodHandle(EventDispatcher.Invoker invoker) {
+    for (Field field : invoker.getClass().getDeclaredFields()) {
+      if (field.getType() == MethodHandle.class) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static final class PublicEvent { }
+
+  private static final class Foo { }
+
+  private static final class Bar { }
+
+  /**
+   * Posts a Bar, then unregisters a handler of Bars, while the Bar waits for the Foo to be delivered.
+   */
+  private static final class FooHandler {
+    private final EventDispatcher dispatcher;
+    private final Object barHandler;
+    private final List<String> log;
+
+    FooHandler(EventDispatcher dispatcher, Object barHandler, List<String> log) {
+      this.dispatcher = dispatcher;
+      this.barHandler = barHandler;
+      this.log = log;
+    }
+
+    @Subscribe
+    public void onFoo(Foo event) {
+      log.add("Foo");
+      dispatcher.post(new Bar());
+      dispatcher.unregister(barHandler);
+    }
+  }
+
+  private static final class BarHandler {
+    private final String name;
+    private final List<String> log;
+
+    BarHandler(String name, List<String> log) {
+      this.name = name;
+      this.log = log;
+    }
+
+    @Subscribe
+    public void onBar(Bar event) {
+      log.add(name + " Bar");
+    }
+  }
+
+  public static final class PublicHandler {
+    private final List<String> log;
+    private int count = 0;
+
+    PublicHandler(List<String> log) {
+      this.log = log;
+    }
+
+    @Subscribe
+    public void onEvent(PublicEvent event) {
+      if (count++ == 0) {
+        log.add("public");
+      }
+    }
+  }
+
+  private static final class PrivateHandler {
+    private final List<String> log;
+
+    PrivateHandler(List<String> log) {
+      this.log = log;
+    }
+
+    @Subscribe
+    private void onEvent(PublicEvent event) {
+      log.add("private");
+    }
+  }
+
+  private static final class PrivateCounter {
+    private int count = 0;
+
+    @Subscribe
+    private void onEvent(PublicEvent event) {
+      count++;
+    }
+  }
+
+  private static final class IntegerHandler {
+    private final EventDispatcher dispatcher;
+    private final List<String> log;
+
+    IntegerHandler(EventDispatcher dispatcher, List<String> log) {
+      this.dispatcher = dispatcher;
+      this.log = log;
+    }
+
+    @Subscribe
+    public void onInteger(Integer event) {
+      log.add("Integer " + event);
+      if (event == 1) {
+        dispatcher.post("s");
+        dispatcher.post(2);
+      }
+    }
+
+    @Subscribe
+    public void onString(String event) {
+      log.add("String " + event);
+    }
+  }
+
+  private static final class NumberHandler {
+    private final List<String> log;
+
+    NumberHandler(List<String> log) {
+      this.log = log;
+    }
+
+    @Subscribe
+    public void onNumber(Number event) {
+      log.add("Number " + event);
+    }
+  }
+
+  private static final class SerialHandler {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Subscribe
+    public void onEvent(String event) {
+      int now = active.incrementAndGet();
+      maxActive.accumulateAndGet(now, Math::max);
+      Thread.yield();
+      calls.incrementAndGet();
+      active.decrementAndGet();
+    }
+  }
+
+  private static final class ConcurrentHandler {
+    private final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(Long event) {
+      try {
+        barrier.await(5, TimeUnit.SECONDS);
+        calls.incrementAndGet();
+      } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+        failed.set(true);
+      }
+    }
+  }
+
+  private static final class DeadHandler {
+    private final List<DeadEvent> deadEvents;
+
+    DeadHandler(List<DeadEvent> deadEvents) {
+      this.deadEvents = deadEvents;
+    }
+
+    @Subscribe
+    public void onDeadEvent(DeadEvent event) {
+      deadEvents.add(event);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.neptunedreams.framework.task;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Created by IntelliJ IDEA.
+ * <p>Date: 10/20/26
+ * <p>Time: 5:15 AM
+ *
+ * @author Miguel Mu\u00f1oz
+ */
+public class DebouncerTest {
+  @Test
+  public void testOnlyLatestDataIsProcessed() throws InterruptedException {
+    List<String> results = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(1);
+    Debouncer.Debounced<String> debounced = Debouncer.getShared().debounce(100L, String::toUpperCase, result -> {
+      results.add(result);
+      done.countDown();
+    });
+    for (int i = 0; i < 100; ++i) {
+      debounced.feedData("text" + i);
+    }
+    assertTrue(done.await(5L, TimeUnit.SECONDS));
+    Thread.sleep(300L);
+    assertEquals(1, results.size());
+    assertEquals("TEXT99", results.get(0));
+    assertFalse(debounced.isPending());
+  }
+
+  @Test
+  public void testManyIndependentInputs() throws InterruptedException {
+    final int count = 2000;
+    CountDownLatch done = new CountDownLatch(count);
+    AtomicInteger wrong = new AtomicInteger();
+    for (int i = 0; i < count; ++i) {
+      final Integer expected = i;
+      Debouncer.Debounced<Integer> debounced = Debouncer.getShared().debounce(20L, Function.identity(), result -> {
+        if (!expected.equals(result)) {
+          wrong.incrementAndGet();
+        }
+        done.countDown();
+      });
+      debounced.feedData(-1);
+      debounced.feedData(expected);
+    }
+    assertTrue(done.await(10L, TimeUnit.SECONDS));
+    assertEquals(0, wrong.get());
+  }
+
+  @Test
+  public void testDataFedDuringARunIsProcessedAfterIt() throws InterruptedException {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger overlaps = new AtomicInteger();
+    List<String> results = new CopyOnWriteArrayList<>();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    Debouncer.Debounced<String> debounced = Debouncer.getShared().debounce(20L, input -> {
+      if (running.incrementAndGet() > 1) {
+        overlaps.incrementAndGet();
+      }
+      started.countDown();
+      try {
+        Thread.sleep(200L);
+      } catch (InterruptedException ignored) { }
+      running.decrementAndGet();
+      return input;
+    }, result -> {
+      results.add(result);
+      done.countDown();
+    });
+    debounced.feedData("first");
+    assertTrue(started.await(5L, TimeUnit.SECONDS));
+    debounced.feedData("second");
+    assertTrue(done.await(5L, TimeUnit.SECONDS));
+    assertEquals(0, overlaps.get());
+    assertEquals("first", results.get(0));
+    assertEquals("second", results.get(1));
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    Debouncer.Debounced<String> debounced
+        = Debouncer.getShared().debounce(50L, Function.identity(), result -> calls.incrementAndGet());
+    debounced.feedData("text");
+    assertTrue(debounced.isPending());
+    debounced.cancel();
+    Thread.sleep(200L);
+    assertEquals(0, calls.get());
+  }
+}